@@ -4,6 +4,10 @@ import co.acu.pagetool.crx.Property;
 import co.acu.pagetool.exception.InvalidPropertyException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A container for all the properties of operations that should be performed with the Sling client
@@ -51,6 +55,26 @@ public class OperationProperties {
 
     private boolean propertyCopy = false;
 
+    /**
+     * If true, changes are only written if they differ from the current values of the node
+     */
+    private boolean skipUnchanged = false;
+
+    /**
+     * If true, matching criteria that the query cannot serve from an index are evaluated by the tool on the hits
+     */
+    private boolean localMatch = false;
+
+    /**
+     * If true, multi-value matches compare the values exactly instead of with <code>like %value%</code>
+     */
+    private boolean exactMatch = false;
+
+    /**
+     * If true, nodes match if they have any of the matching properties instead of all of them
+     */
+    private boolean matchAny = false;
+
     /**
      * Get the set list of matching properties
      * @return A list of properties which a page is expected to contain
@@ -65,6 +89,7 @@ public class OperationProperties {
      */
     public void setMatchingProperties(ArrayList<Property> matchingProperties) {
         this.matchingProperties = matchingProperties;
+        applyExactMatch();
     }
 
     /**
@@ -96,7 +121,7 @@ public class OperationProperties {
             }
             propStrings.add(prop);
         }
-        this.matchingProperties = getPropertiesAsList(propStrings.toArray(new String[0]));
+        setMatchingProperties(getPropertiesAsList(propStrings.toArray(new String[0]), true));
     }
 
     public void setSearchValue(String[] searchValues) {
@@ -118,10 +143,10 @@ public class OperationProperties {
         }
 
         try {
-            ArrayList<Property> propList = getPropertiesAsList(properties.toArray(new String[0]));
+            ArrayList<Property> propList = getPropertiesAsList(properties.toArray(new String[0]), true);
             // Mark properties with array syntax (e.g. [value]) as multi-valued
             for (Property prop : propList) {
-                if (prop.getValue() != null && !prop.getValue().isEmpty() && !prop.isMulti()) {
+                if (prop.getValue() != null && !prop.getValue().isEmpty() && !prop.isMulti() && !prop.isRegex()) {
                     prop.setValues(new String[]{prop.getValue()});
                     prop.setMulti(true); // Flag as String[] for search
                 }
@@ -164,7 +189,7 @@ public class OperationProperties {
         if (PageToolApp.verbose) {
             System.out.println("  Properties to update:");
         }
-        this.updateProperties = getPropertiesAsList(properties);
+        this.updateProperties = getPropertiesAsList(properties, false);
         if (this.searchOnly) {
             this.searchOnly = false;
         }
@@ -186,7 +211,7 @@ public class OperationProperties {
     }
 
     public void setPropertyValueReplacement(String[] property, String[] replacement) throws Exception {
-        ArrayList<Property> properties = getPropertiesAsList(property);
+        ArrayList<Property> properties = getPropertiesAsList(property, false);
         Property first = properties.get(0);
         String match = first.getValue();
         String repl = replacement[0];
@@ -268,6 +293,9 @@ public class OperationProperties {
         if (node == null) {
             throw new InvalidPropertyException("Invalid node format: " + nodes[0]);
         }
+        if (node.isRegex()) {
+            throw new InvalidPropertyException(regexNotAllowed(nodes[0]));
+        }
         if (PageToolApp.verbose) {
             System.out.println("    " + node.getName() + " = " + node.getValue());
         }
@@ -294,9 +322,10 @@ public class OperationProperties {
     /**
      * Convert the properties given as options in the command line into a list of <code>Property</code> objects
      * @param propertiesStr The properties given are expected to be in the format <code>property=value</code>
+     * @param allowRegex    Whether <code>property~=regex</code> is accepted, which only makes sense for matching
      * @return ArrayList of Property objects
      */
-    private ArrayList<Property> getPropertiesAsList(String[] propertiesStr) throws InvalidPropertyException {
+    private ArrayList<Property> getPropertiesAsList(String[] propertiesStr, boolean allowRegex) throws InvalidPropertyException {
         ArrayList<Property> propertiesList = new ArrayList<>();
 
         for (String propStr : propertiesStr) {
@@ -304,6 +333,9 @@ public class OperationProperties {
             if (property == null) {
                 throw new InvalidPropertyException("Property is in an invalid format. (property: " + propStr + ")");
             }
+            if (property.isRegex() && !allowRegex) {
+                throw new InvalidPropertyException(regexNotAllowed(propStr));
+            }
             if (PageToolApp.verbose) {
                 System.out.println("    " + property.getName() + " = " + property.getValue());
             }
@@ -313,6 +345,79 @@ public class OperationProperties {
         return propertiesList;
     }
 
+    private static String regexNotAllowed(String propStr) {
+        return "Regular expressions (~=) can only be used to match properties with -m or -f. (property: " + propStr + ")";
+    }
+
+    /**
+     * Get whether performing the operations can change which nodes match the query, e.g. when a queried property is
+     * deleted or its value is replaced. Such queries must be fully read before any node is updated.
+     * @return True if the query results may change while the nodes are updated
+     */
+    public boolean isQueryAffectedByUpdates() {
+        if (deleteProperties != null && !deleteProperties.isEmpty()) {
+            return true;
+        }
+        if (propertyValueReplacement != null) {
+            return true;
+        }
+        if (updateProperties != null && matchingProperties != null) {
+            for (Property update : updateProperties) {
+                for (Property match : matchingProperties) {
+                    if (update.getName().equals(match.getName())) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the properties whose current value is read from each node before it is updated: the sources of a property
+     * copy, the property of a string replacement and multi-value properties that are updated conditionally. If
+     * unchanged values are skipped, all written properties are read as well.
+     * @return The property names (which may be paths relative to the node), without duplicates
+     */
+    public List<String> getReadProperties() {
+        Set<String> names = new LinkedHashSet<>();
+        if (propertyCopy && copyFromProperties != null) {
+            names.addAll(copyFromProperties);
+        }
+        if (propertyValueReplacement != null) {
+            names.add(propertyValueReplacement.getName());
+        }
+        if (skipUnchanged) {
+            // The current values of all written properties are compared with the planned ones
+            if (updateProperties != null) {
+                for (Property update : updateProperties) {
+                    names.add(update.getName());
+                }
+            }
+            if (propertyCopy && copyToProperties != null) {
+                names.addAll(copyToProperties);
+            }
+            if (deleteProperties != null) {
+                names.addAll(deleteProperties);
+            }
+            if (createNode != null) {
+                names.add(createNode.getName() + "/jcr:primaryType");
+            }
+        }
+        if (updateProperties != null && matchingProperties != null) {
+            for (Property update : updateProperties) {
+                for (Property match : matchingProperties) {
+                    if (update.isMulti() && match.isMulti() && update.getName().equals(match.getName())) {
+                        names.add(update.getName());
+                    }
+                }
+            }
+        }
+
+        return new ArrayList<>(names);
+    }
+
     public boolean isPropertyCopy() {
         return propertyCopy;
     }
@@ -324,4 +429,67 @@ public class OperationProperties {
         }
     }
 
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * Set whether changes are only written if they differ from the current values of the node
+     * @param skipUnchanged If true, compare each planned value with the current one before writing it
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    public boolean isLocalMatch() {
+        return localMatch;
+    }
+
+    /**
+     * Set whether matching criteria that Oak cannot serve from a property index (<code>like</code> matches of
+     * multiple values) are evaluated by the tool on the hits of the query instead of by the query
+     * @param localMatch If true, send only index-friendly criteria to the query builder
+     */
+    public void setLocalMatch(boolean localMatch) {
+        this.localMatch = localMatch;
+    }
+
+    public boolean isExactMatch() {
+        return exactMatch;
+    }
+
+    /**
+     * Set whether multi-value matches (<code>prop=[value]</code>, and all <code>-f</code> values) compare the values
+     * exactly, so that the query can use a property index. Values containing <code>%</code> still request a
+     * substring match with <code>like</code>.
+     * @param exactMatch If true, match any value of the node exactly
+     */
+    public void setExactMatch(boolean exactMatch) {
+        this.exactMatch = exactMatch;
+        applyExactMatch();
+    }
+
+    private void applyExactMatch() {
+        if (matchingProperties == null) {
+            return;
+        }
+        for (Property prop : matchingProperties) {
+            if (prop.isMulti() && prop.getValues() != null) {
+                prop.setExactMatch(exactMatch && Arrays.stream(prop.getValues()).noneMatch(value -> value.contains("%")));
+            }
+        }
+    }
+
+    public boolean isMatchAny() {
+        return matchAny;
+    }
+
+    /**
+     * Set whether nodes match if they have any of the matching properties (OR) instead of all of them (AND)
+     * @param matchAny If true, combine the matching properties with OR
+     */
+    public void setMatchAny(boolean matchAny) {
+        this.matchAny = matchAny;
+    }
+
 }
@@ -1,14 +1,40 @@
 package co.acu.pagetool;
 
-import co.acu.pagetool.crx.CrxConnection;
+import co.acu.pagetool.crx.HitIterator;
+import co.acu.pagetool.crx.IndexAdvisor;
+import co.acu.pagetool.crx.NodeFilter;
+import co.acu.pagetool.crx.PagedQuery;
+import co.acu.pagetool.crx.PartitionedQuery;
+import co.acu.pagetool.crx.QueryUrl;
 import co.acu.pagetool.crx.SlingClient;
+import co.acu.pagetool.crx.TreeCrawler;
 import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultSet;
+import co.acu.pagetool.result.ResultPage;
 import co.acu.pagetool.util.Output;
-import com.google.gson.JsonArray;
+import co.acu.pagetool.util.ProgressJournal;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonObject;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 /**
  * Applies operations to pages in AEM using the Sling API client.
@@ -17,10 +43,36 @@ import java.io.IOException;
  */
 public class PageTool {
 
+    private static final String CONTENT_NODE = "jcr:content";
+    private static final String CONTENT_TYPE = "cq:PageContent";
+
     private final String parentNodePath;
     private final SlingClient slingClient;
 
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger skippedWrites = new AtomicInteger();
+    private volatile boolean completed;
+
     private OperationProperties properties;
+    private int threads = 1;
+    private boolean virtualThreads = false;
+    private boolean singlePost = false;
+    private int batchSize = 1;
+    private int partitionDepth = 0;
+    private int partitionThreads = 1;
+    private boolean crawl = false;
+    private int crawlDepth = 0;
+    private Set<String> crawlTypes = Collections.emptySet();
+    private int crawlThreads = 1;
+    private boolean explain = false;
+    private boolean explainExecute = false;
+    private int maxDepth = 0;
+    private int countLimit = 0;
+    private ProgressJournal journal;
+    private NodeFilter nodeFilter;
 
     public PageTool(String parentNodePath, SlingClient slingClient) {
         this.parentNodePath = parentNodePath;
@@ -31,20 +83,195 @@ public class PageTool {
         this.properties = properties;
     }
 
+    /**
+     * Set the number of pages that are processed concurrently
+     * @param threads The number of worker threads; 1 processes the pages one at a time
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set whether the workers should run on virtual threads (requires Java 21 or later)
+     * @param virtualThreads If true, use virtual threads instead of platform threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Set whether all property changes to a page are committed with a single request
+     * @param singlePost If true, use {@link SlingClient#commitPage(String)} instead of one request per operation
+     */
+    public void setSinglePost(boolean singlePost) {
+        this.singlePost = singlePost;
+    }
+
+    /**
+     * Set the number of pages whose changes are committed together with a single request to their common ancestor
+     * @param batchSize The maximum number of pages per batch; 1 commits each page on its own
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set whether the query is split into partitions of the tree that are queried concurrently
+     * @param partitionDepth The number of levels below the parent node at which the tree is partitioned, or 0 to run a
+     *                       single query
+     * @param threads        The number of partitions that are queried concurrently
+     * @see PartitionedQuery
+     */
+    public void setPartitions(int partitionDepth, int threads) {
+        this.partitionDepth = partitionDepth;
+        this.partitionThreads = threads;
+    }
+
+    /**
+     * Find the pages by walking the tree below the parent node instead of a query
+     * @param maxDepth The number of levels below the parent node to visit, or 0 for all levels
+     * @param types    The node types to descend into, or an empty set for all types
+     * @param threads  The number of nodes that are read concurrently
+     * @see TreeCrawler
+     */
+    public void setCrawl(int maxDepth, Set<String> types, int threads) {
+        this.crawl = true;
+        this.crawlDepth = maxDepth;
+        this.crawlTypes = types;
+        this.crawlThreads = threads;
+    }
+
+    /**
+     * Limit the pages to those at most a number of levels below the parent node. Only the nodes down to the limit are
+     * queried, with <code>path.flat=true</code> (see {@link PartitionedQuery#limitedTo}), and a crawl does not descend
+     * below the limit. Page content nodes matched by name are the exception: deeper hits of their query are left out
+     * by the tool.
+     * @param maxDepth The number of levels below the parent node, or 0 for all levels
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Set whether the hits of the query are only counted, instead of performing the operations
+     * @param countLimit The number of hits after which counting stops, or 0 to perform the operations
+     * @see SlingClient#countHits(String, QueryUrl.PathScope, int)
+     */
+    public void setCount(int countLimit) {
+        this.countLimit = countLimit;
+    }
+
+    /**
+     * Set whether the query is only explained, with a recommended index, instead of performing the operations
+     * @param explain If true, explain the query and do not change any page
+     * @param execute If true, the explanation also executes the query to report its execution time and number of
+     *                results; otherwise only its plan is reported
+     * @see IndexAdvisor
+     */
+    public void setExplain(boolean explain, boolean execute) {
+        this.explain = explain;
+        this.explainExecute = execute;
+    }
+
+    /**
+     * Set the journal that records the outcome of each page; pages completed successfully by a previous run are
+     * skipped
+     * @param journal The journal, or null to process all pages
+     */
+    public void setJournal(ProgressJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Whether the last {@link #executeOperation()} ran to the end; false if it was stopped by an error, e.g. because
+     * the query failed
+     * @return True if the operation completed
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getSucceededCount() {
+        return succeeded.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Get the number of succeeded pages for which at least one change was written
+     * @return The number of updated pages
+     */
+    public int getUpdatedCount() {
+        return updated.get();
+    }
+
+    /**
+     * Get the number of succeeded pages which did not need any change
+     * @return The number of unchanged pages
+     */
+    public int getUnchangedCount() {
+        return unchanged.get();
+    }
+
+    /**
+     * Get the number of property changes that were skipped because the page already had the planned value
+     * @return The number of skipped property writes
+     */
+    public int getSkippedCount() {
+        return skippedWrites.get();
+    }
+
     public void executeOperation() {
+        completed = false;
+        nodeFilter = null;
         try {
-            if (properties.isSearchOnly()) {
+            if (explain) {
+                Output.info("Explaining query...");
+                explainQuery();
+            } else if (countLimit > 0) {
+                Output.info("Counting query hits...");
+                countHits();
+            } else if (properties.isSearchOnly()) {
                 Output.info("Performing search operation...");
-                JsonArray hits = queryPages(parentNodePath);
-                Output.hl("Found " + hits.size() + (properties.isCqPageType() ? " page" : " node") + (hits.size() != 1 ? "s" : "") + ".");
-                for (JsonElement hit : hits) {
-                    String path = hit.getAsJsonObject().get("jcr:path").getAsString();
-                    Output.info(path);
+                HitIterator results = openHits(parentNodePath, false);
+                if (results != null) {
+                    int count = 0;
+                    try (results) {
+                        Iterator<ResultPage> matches = filterHits(results);
+                        while (matches.hasNext()) {
+                            Output.info(matches.next().getJcrPath());
+                            count++;
+                        }
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    Output.hl("Found " + describeCount(count) + ".");
+                } else {
+                    try (QueryResultReader hits = streamQuery(parentNodePath)) {
+                        Iterator<ResultPage> matches = filterHits(hits);
+                        if (matches == hits) {
+                            Output.hl("Found " + describeCount(hits.getResultSet().getResults()) + ".");
+                        }
+                        int count = 0;
+                        while (matches.hasNext()) {
+                            Output.info(matches.next().getJcrPath());
+                            count++;
+                        }
+                        if (matches != hits) {
+                            Output.hl("Found " + describeCount(count) + " of " + hits.getCount() + " query hits.");
+                        }
+                        warnIfTruncated(hits);
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
                 }
             } else {
                 Output.info("Performing update operation...");
                 processPages(parentNodePath);
             }
+            completed = true;
         } catch (IOException e) {
             Output.warn("Failed to execute operation: " + (e.getMessage() != null ? e.getMessage() : "Unknown error"));
             if (PageToolApp.verbose) {
@@ -53,69 +280,602 @@ public class PageTool {
         }
     }
 
+    /**
+     * Prints the number of hits of the query, which is a lower bound if counting stopped at the limit.
+     */
+    private void countHits() throws IOException {
+        ResultSet count = slingClient.countHits(parentNodePath, getQueryScope(), countLimit);
+        if (count.isMore() || count.getTotal() >= countLimit) {
+            Output.hl("Found at least " + describeCount(count.getTotal()) + ".");
+        } else {
+            Output.hl("Found " + describeCount(count.getTotal()) + ".");
+        }
+        if (slingClient.createHitFilter() != null || (maxDepth > 0 && getQueryScope() == QueryUrl.PathScope.SUBTREE)) {
+            Output.info("The count may include hits that the criteria matched by the tool (or --max-depth) would leave out.");
+        }
+    }
+
+    /**
+     * Prints the plan of the query as explained by AEM and the definition of an index that serves it. If the query
+     * cannot be explained (e.g. the query performance tool is not available), only the index is recommended.
+     */
+    private void explainQuery() {
+        IndexAdvisor advisor = slingClient.createIndexAdvisor(parentNodePath);
+        String statement = advisor.toXPath();
+        Output.info("XPath statement: " + statement);
+        boolean traversal = true;
+        try {
+            JsonObject explanation = slingClient.explainQuery(statement, explainExecute);
+            JsonObject explain = explanation.has("explain") && explanation.get("explain").isJsonObject()
+                    ? explanation.getAsJsonObject("explain") : new JsonObject();
+            String plan = explain.has("plan") ? explain.get("plan").getAsString() : null;
+            traversal = plan == null || IndexAdvisor.isTraversal(plan);
+            Output.info("Plan: " + (plan != null ? plan : "(not reported)"));
+            if (explain.has("logs") && explain.get("logs").isJsonArray()) {
+                for (JsonElement log : explain.getAsJsonArray("logs")) {
+                    if (log.isJsonPrimitive() && log.getAsString().contains("cost")) {
+                        Output.info("  " + log.getAsString());
+                    }
+                }
+            }
+            JsonObject heuristics = explanation.has("heuristics") && explanation.get("heuristics").isJsonObject()
+                    ? explanation.getAsJsonObject("heuristics") : null;
+            if (heuristics != null && heuristics.has("executionTime")) {
+                Output.info("Execution time: " + heuristics.get("executionTime").getAsString() + " ms"
+                        + (heuristics.has("count") ? ", results: " + heuristics.get("count").getAsString() : ""));
+            }
+            Output.hl(traversal ? "The query traverses the tree." : "The query uses an index.");
+        } catch (IOException e) {
+            Output.warn("Unable to explain the query: " + e.getMessage());
+        }
+        if (!advisor.hasIndexableCriteria()) {
+            Output.info("The query only restricts the path; there is no property to index.");
+        } else if (traversal) {
+            Output.hl("Recommended index (/oak:index/" + IndexAdvisor.INDEX_NAME + "):");
+            Output.info(new GsonBuilder().setPrettyPrinting().create().toJson(advisor.createIndexDefinition()));
+        }
+    }
+
     private void processPages(String path) throws IOException {
-        JsonArray pages = queryPages(path);
-        Output.info("Found " + pages.size() + (properties.isCqPageType() ? " page" : " node") + (pages.size() != 1 ? "s" : "") + ".");
+        int pageSize = slingClient.getQueryPageSize();
+        boolean fetchAll = pageSize > 0 && properties.isQueryAffectedByUpdates() && !PageToolApp.dryRun;
+        if (fetchAll && PageToolApp.verbose) {
+            Output.info("Operations change the query results; fetching all results before updating.");
+        }
+        HitIterator hits = openHits(path, fetchAll);
+        if (hits != null) {
+            try (hits) {
+                processPages(hits);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            try (QueryResultReader pages = streamQuery(path)) {
+                Output.info("Found " + describeCount(pages.getResultSet().getResults()) + ".");
+                processPages(pages);
+                warnIfTruncated(pages);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Starts finding the hits if they are not read from a single query: by crawling the tree, with a partitioned
+     * query or with a paged query.
+     * @param path     The root path
+     * @param fetchAll If true, fetch all windows of a paged query before returning the first hit
+     * @return The hits, or null if the hits are read from a single streamed query
+     * @throws IOException If the first request fails
+     */
+    private HitIterator openHits(String path, boolean fetchAll) throws IOException {
+        int pageSize = slingClient.getQueryPageSize();
+        if (crawl) {
+            int readDepth = 0;
+            for (String property : properties.getReadProperties()) {
+                readDepth = Math.max(readDepth, property.split("/").length - 1);
+            }
+            int depth = maxDepth > 0 && (crawlDepth == 0 || maxDepth < crawlDepth) ? maxDepth : crawlDepth;
+            return new TreeCrawler(slingClient, path, getNodeFilter(), readDepth, depth, crawlTypes, crawlThreads);
+        }
+        QueryUrl.PathScope scope = getQueryScope();
+        if (maxDepth > 0 && scope == QueryUrl.PathScope.SUBTREE && !isDepthFilteredByTool()) {
+            return PartitionedQuery.limitedTo(maxDepth, isPageContent(), slingClient, path, partitionThreads, pageSize, fetchAll);
+        }
+        if (partitionDepth > 0 && scope == QueryUrl.PathScope.SUBTREE) {
+            return new PartitionedQuery(slingClient, path, partitionDepth, partitionThreads, pageSize, fetchAll);
+        }
+        if (pageSize > 0) {
+            return new PagedQuery(slingClient, path, scope, pageSize, fetchAll);
+        }
+        return null;
+    }
+
+    /**
+     * Get the nodes below the parent node that the query searches: only the direct children if that is all that is
+     * needed and the hits are the nodes themselves (the page content hits of child pages are grandchildren).
+     */
+    private QueryUrl.PathScope getQueryScope() {
+        if (maxDepth == 1 && !isPageContent()) {
+            return QueryUrl.PathScope.CHILDREN;
+        }
+        return QueryUrl.PathScope.SUBTREE;
+    }
+
+    private boolean isPageContent() {
+        return CONTENT_TYPE.equals(getNodeFilter().getType());
+    }
+
+    /**
+     * Get the filter of the nodes that the query finds, which is created once per operation
+     */
+    private NodeFilter getNodeFilter() {
+        if (nodeFilter == null) {
+            nodeFilter = slingClient.createNodeFilter();
+        }
+        return nodeFilter;
+    }
+
+    /**
+     * Check whether the depth limit is applied to the hits of a query of the whole tree, because the levels cannot
+     * be queried separately: a query of the child pages cannot match the names of their content nodes.
+     */
+    private boolean isDepthFilteredByTool() {
+        return maxDepth > 0 && !crawl && getQueryScope() == QueryUrl.PathScope.SUBTREE && isPageContent()
+                && properties.getMatchingNodes() != null && !properties.getMatchingNodes().isEmpty();
+    }
+
+    private QueryResultReader streamQuery(String path) throws IOException {
+        QueryUrl.PathScope scope = getQueryScope();
+        return scope == QueryUrl.PathScope.SUBTREE ? slingClient.streamQuery(path) : slingClient.streamQuery(path, scope);
+    }
+
+    private void warnIfTruncated(QueryResultReader hits) {
+        if (hits.getResultSet().getTotal() > hits.getCount()) {
+            Output.hl("Query returned " + hits.getCount() + " of " + hits.getResultSet().getTotal() + " hits; use --page-size to fetch all results.");
+            if (isDepthFilteredByTool()) {
+                Output.warn("--max-depth is applied after the query, so pages within the limit may be missing from the returned hits.");
+            }
+        }
+    }
+
+    /**
+     * Applies the criteria that the query leaves to the tool (see {@link co.acu.pagetool.crx.QueryPlan}) and the
+     * depth limit to its hits. Crawled hits are already matched against all criteria and limited in depth.
+     * @return The matching hits, or the hits themselves if the query applies all criteria
+     */
+    private Iterator<ResultPage> filterHits(Iterator<ResultPage> hits) {
+        if (crawl) {
+            return hits;
+        }
+        Predicate<ResultPage> matches = null;
+        NodeFilter filter = slingClient.createHitFilter();
+        if (filter != null) {
+            matches = hit -> {
+                String path = hit.getJcrPath() != null ? hit.getJcrPath() : "";
+                JsonObject node = hit.getProperties() != null ? hit.getProperties() : new JsonObject();
+                return filter.matches(path.substring(path.lastIndexOf('/') + 1), node);
+            };
+        }
+        if (isDepthFilteredByTool()) {
+            Predicate<ResultPage> withinDepth = hit -> getDepth(hit.getJcrPath()) <= maxDepth;
+            matches = matches != null ? matches.and(withinDepth) : withinDepth;
+        }
+        return matches != null ? new MatchFilter(hits, matches) : hits;
+    }
+
+    /**
+     * Get the number of levels of a hit below the parent node; a page content node is at the level of its page
+     */
+    private int getDepth(String path) {
+        if (path == null || !path.startsWith(parentNodePath)) {
+            return 0;
+        }
+        String relative = path.substring(parentNodePath.length());
+        if (properties.isCqPageType() && relative.endsWith("/" + CONTENT_NODE)) {
+            relative = relative.substring(0, relative.length() - CONTENT_NODE.length() - 1);
+        }
+        int depth = 0;
+        for (String segment : relative.split("/")) {
+            if (!segment.isEmpty()) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private void processPages(Iterator<ResultPage> hits) throws IOException {
+        Iterator<ResultPage> matches = filterHits(hits);
+        JournalFilter pages = new JournalFilter(matches, journal);
+        try {
+            processPages(pages);
+        } finally {
+            if (matches instanceof MatchFilter) {
+                Output.info(describeCount(((MatchFilter) matches).getMatchedCount()) + " matched locally.");
+            }
+            if (pages.getSkippedCount() > 0) {
+                Output.hl("Skipped " + describeCount(pages.getSkippedCount()) + " completed by a previous run.");
+            }
+        }
+    }
+
+    private void processPages(JournalFilter pages) throws IOException {
         if (PageToolApp.dryRun) {
             Output.hl("Dry run enabled - no updates will be performed.");
-            for (JsonElement page : pages) {
-                Output.info(" - " + page.getAsJsonObject().get("jcr:path").getAsString());
+            while (pages.hasNext()) {
+                Output.info(" - " + pages.next().getJcrPath());
             }
             return;
         }
-        for (JsonElement page : pages) {
-            String pagePath = page.getAsJsonObject().get("jcr:path").getAsString();
-            Output.ninfo("Processing " + (properties.isCqPageType() ? "page: " : "node: ") + pagePath);
-            if (properties.getUpdateProperties() != null) {
-                slingClient.updatePage(pagePath);
+        succeeded.set(0);
+        failed.set(0);
+        updated.set(0);
+        unchanged.set(0);
+        skippedWrites.set(0);
+        try {
+            if (batchSize > 1) {
+                Iterator<List<ResultPage>> batches = new BatchIterator(pages, batchSize);
+                if (threads > 1 || virtualThreads) {
+                    processConcurrently(batches, this::processBatch);
+                } else {
+                    while (batches.hasNext()) {
+                        processBatch(slingClient, batches.next());
+                    }
+                }
+            } else if (threads > 1 || virtualThreads) {
+                processConcurrently(pages, this::processPage);
+            } else {
+                while (pages.hasNext()) {
+                    processPage(slingClient, pages.next());
+                }
             }
-            if (properties.getCopyFromProperties() != null && properties.getCopyToProperties() != null) {
-                slingClient.copyProperties(pagePath, properties.isPropertyCopy());
+        } finally {
+            Output.hl("Processed " + describeCount(succeeded.get() + failed.get()) + ": "
+                    + succeeded.get() + " succeeded, " + failed.get() + " failed.");
+            if (properties.isSkipUnchanged()) {
+                Output.hl(updated.get() + " updated, " + unchanged.get() + " unchanged, "
+                        + skippedWrites.get() + " unchanged propert" + (skippedWrites.get() != 1 ? "ies" : "y") + " skipped.");
             }
-            if (properties.getPropertyValueReplacement() != null) {
-                try {
-                    slingClient.replacePropertyValue(pagePath);
-                } catch (SlingClientException e) {
-                    Output.nwarn("Failed to replace property value: " + e.getMessage());
-                }
+        }
+    }
+
+    private String describeCount(int count) {
+        return count + (properties.isCqPageType() ? " page" : " node") + (count != 1 ? "s" : "");
+    }
+
+    /**
+     * Dispatches the pages (or batches of pages) to a bounded pool of workers. Each worker has its own
+     * {@link SlingClient}, and all operations of a single page are performed by the same worker in the usual order.
+     * The output of each task is written as a whole once the task is done.
+     */
+    private <T> void processConcurrently(Iterator<T> tasks, Worker<T> worker) throws IOException {
+        int workers = Math.max(threads, 1);
+        BlockingQueue<SlingClient> idleClients = new ArrayBlockingQueue<>(workers);
+        idleClients.add(slingClient);
+        try {
+            for (int i = 1; i < workers; i++) {
+                idleClients.add(slingClient.newWorker());
+            }
+        } catch (SlingClientException e) {
+            throw new IOException("Unable to create worker clients", e);
+        }
+        if (PageToolApp.verbose) {
+            Output.info("Processing with " + workers + (virtualThreads ? " virtual" : "") + " worker thread" + (workers != 1 ? "s" : ""));
+        }
+
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        ExecutorService executor = createExecutor(workers);
+        try {
+            while (failure.get() == null && tasks.hasNext()) {
+                T task = tasks.next();
+                SlingClient client = idleClients.take();
+                executor.execute(() -> {
+                    Output.startBuffer();
+                    try {
+                        worker.process(client, task);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        Output.warn("Failed to process " + task + ": " + e);
+                    } finally {
+                        Output.flushBuffer();
+                        idleClients.add(client);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing pages", e);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Creates the executor for the workers; virtual threads are used if requested and supported by the JVM (21+).
+     */
+    private ExecutorService createExecutor(int workers) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                Output.warn("Virtual threads require Java 21 or later; using " + workers + " platform threads.");
             }
-            if (properties.getDeleteProperties() != null) {
-                try {
-                    slingClient.deleteProperties(pagePath);
-                } catch (IOException e) {
-                    Output.nwarn("Failed to delete properties: " + e.getMessage());
+        }
+        return Executors.newFixedThreadPool(workers);
+    }
+
+    private void processPage(SlingClient client, ResultPage page) throws IOException {
+        String pagePath = page.getJcrPath();
+        client.setHits(Collections.singletonList(page));
+        int failuresBefore = client.getFailureCount();
+        int postsBefore = client.getPostCount();
+        int skippedBefore = client.getSkippedCount();
+        boolean success = false;
+        Output.ninfo("Processing " + (properties.isCqPageType() ? "page: " : "node: ") + pagePath);
+        try {
+            success = applyOperations(client, pagePath) && client.getFailureCount() == failuresBefore;
+        } finally {
+            Output.line();
+            (success ? succeeded : failed).incrementAndGet();
+            skippedWrites.addAndGet(client.getSkippedCount() - skippedBefore);
+            if (success) {
+                (client.getPostCount() == postsBefore ? unchanged : updated).incrementAndGet();
+            }
+        }
+        record(pagePath, success);
+    }
+
+    /**
+     * Commits the changes of a batch of pages with as few requests as possible (see
+     * {@link SlingClient#commitPages(List)}); node copies still need a request per page.
+     */
+    private void processBatch(SlingClient client, List<ResultPage> pages) throws IOException {
+        List<String> pagePaths = new ArrayList<>(pages.size());
+        for (ResultPage page : pages) {
+            pagePaths.add(page.getJcrPath());
+        }
+        client.setHits(pages);
+        for (String pagePath : pagePaths) {
+            Output.info("Processing " + (properties.isCqPageType() ? "page: " : "node: ") + pagePath);
+        }
+        Set<String> failedPages = new HashSet<>();
+        int unchangedBefore = client.getUnchangedCount();
+        int skippedBefore = client.getSkippedCount();
+        boolean copyNodes = !properties.isPropertyCopy() && properties.getCopyFromProperties() != null && properties.getCopyToProperties() != null;
+        try {
+            failedPages.addAll(client.commitPages(pagePaths));
+            if (copyNodes) {
+                for (String pagePath : pagePaths) {
+                    int failuresBefore = client.getFailureCount();
+                    client.copyProperties(pagePath, false);
+                    if (client.getFailureCount() != failuresBefore) {
+                        failedPages.add(pagePath);
+                    }
                 }
             }
-            if (properties.getCreateNode() != null) {
-                try {
-                    slingClient.createNode(pagePath);
-                } catch (IOException e) {
-                    Output.nwarn("Failed to create node: " + e.getMessage());
+        } catch (IOException e) {
+            failedPages.addAll(pagePaths);
+            throw e;
+        } finally {
+            failed.addAndGet(failedPages.size());
+            succeeded.addAndGet(pagePaths.size() - failedPages.size());
+            skippedWrites.addAndGet(client.getSkippedCount() - skippedBefore);
+            // A node copy is always written, so pages with node copies are never unchanged
+            int unchangedPages = copyNodes ? 0 : client.getUnchangedCount() - unchangedBefore;
+            unchanged.addAndGet(unchangedPages);
+            updated.addAndGet(pagePaths.size() - failedPages.size() - unchangedPages);
+        }
+        for (String pagePath : pagePaths) {
+            record(pagePath, !failedPages.contains(pagePath));
+        }
+    }
+
+    /**
+     * Records the outcome of a page that was processed completely. Pages interrupted by an error that stops the run
+     * are not recorded, so they are processed again when the run is resumed.
+     */
+    private void record(String pagePath, boolean success) throws IOException {
+        if (journal != null) {
+            journal.record(pagePath, success);
+        }
+    }
+
+    /**
+     * Applies all configured operations to a single page.
+     * @return True if none of the operations reported a failure
+     */
+    private boolean applyOperations(SlingClient client, String pagePath) throws IOException {
+        if (singlePost) {
+            return commitOperations(client, pagePath);
+        }
+        boolean success = true;
+        if (properties.getUpdateProperties() != null) {
+            client.updatePage(pagePath);
+        }
+        if (properties.getCopyFromProperties() != null && properties.getCopyToProperties() != null) {
+            client.copyProperties(pagePath, properties.isPropertyCopy());
+        }
+        if (properties.getPropertyValueReplacement() != null) {
+            try {
+                client.replacePropertyValue(pagePath);
+            } catch (SlingClientException e) {
+                Output.nwarn("Failed to replace property value: " + e.getMessage());
+                success = false;
+            }
+        }
+        if (properties.getDeleteProperties() != null) {
+            try {
+                client.deleteProperties(pagePath);
+            } catch (IOException e) {
+                Output.nwarn("Failed to delete properties: " + e.getMessage());
+                success = false;
+            }
+        }
+        if (properties.getCreateNode() != null) {
+            try {
+                client.createNode(pagePath);
+            } catch (IOException e) {
+                Output.nwarn("Failed to create node: " + e.getMessage());
+                success = false;
+            }
+        }
+
+        return success;
+    }
+
+    /**
+     * Applies all configured operations to a single page with one request, plus one for a node copy.
+     * @return True if none of the operations reported a failure
+     */
+    private boolean commitOperations(SlingClient client, String pagePath) throws IOException {
+        boolean success = true;
+        try {
+            client.commitPage(pagePath);
+        } catch (SlingClientException e) {
+            Output.nwarn("Failed to replace property value: " + e.getMessage());
+            success = false;
+        }
+        if (!properties.isPropertyCopy() && properties.getCopyFromProperties() != null && properties.getCopyToProperties() != null) {
+            client.copyProperties(pagePath, false);
+        }
+
+        return success;
+    }
+
+    /**
+     * The processing of a single task by a worker with its own client
+     */
+    private interface Worker<T> {
+        void process(SlingClient client, T task) throws IOException;
+    }
+
+    /**
+     * Groups the hits into batches. Hits are returned in path order (or close to it), so the pages of
+     * a batch are usually close to each other in the tree.
+     */
+    private static class BatchIterator implements Iterator<List<ResultPage>> {
+
+        private final Iterator<ResultPage> pages;
+        private final int batchSize;
+
+        BatchIterator(Iterator<ResultPage> pages, int batchSize) {
+            this.pages = pages;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pages.hasNext();
+        }
+
+        @Override
+        public List<ResultPage> next() {
+            if (!pages.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<ResultPage> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && pages.hasNext()) {
+                batch.add(pages.next());
+            }
+            return batch;
+        }
+
+    }
+
+    /**
+     * Leaves out the hits that do not match the criteria evaluated by the tool.
+     */
+    private static class MatchFilter implements Iterator<ResultPage> {
+
+        private final Iterator<ResultPage> hits;
+        private final Predicate<ResultPage> filter;
+        private ResultPage next;
+        private int matched = 0;
+
+        MatchFilter(Iterator<ResultPage> hits, Predicate<ResultPage> filter) {
+            this.hits = hits;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && hits.hasNext()) {
+                ResultPage hit = hits.next();
+                if (filter.test(hit)) {
+                    matched++;
+                    next = hit;
                 }
             }
-            Output.line();
+            return next != null;
+        }
+
+        @Override
+        public ResultPage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ResultPage hit = next;
+            next = null;
+            return hit;
         }
+
+        int getMatchedCount() {
+            return matched;
+        }
+
     }
 
-    public JsonArray queryPages(String path) throws IOException {
-        slingClient.queryPages(path);
-        String responseText = slingClient.getLastResponseText();
-        if (responseText == null || responseText.isEmpty()) {
-            Output.nwarn("No response from query.");
-            return new JsonArray();
+    /**
+     * Leaves out the pages that the journal lists as completed.
+     */
+    private static class JournalFilter implements Iterator<ResultPage> {
+
+        private final Iterator<ResultPage> pages;
+        private final ProgressJournal journal;
+        private ResultPage next;
+        private int skipped = 0;
+
+        JournalFilter(Iterator<ResultPage> pages, ProgressJournal journal) {
+            this.pages = pages;
+            this.journal = journal;
         }
-        JsonElement jsonResponse = JsonParser.parseString(responseText);
-        if (jsonResponse == null || !jsonResponse.isJsonObject()) {
-            Output.nwarn("Invalid JSON response: " + responseText);
-            return new JsonArray();
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && pages.hasNext()) {
+                ResultPage page = pages.next();
+                if (journal != null && journal.isCompleted(page.getJcrPath())) {
+                    skipped++;
+                } else {
+                    next = page;
+                }
+            }
+            return next != null;
         }
-        JsonArray hits = jsonResponse.getAsJsonObject().getAsJsonArray("hits");
-        if (hits == null) {
-            Output.nwarn("No hits found in response: " + responseText);
-            return new JsonArray();
+
+        @Override
+        public ResultPage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ResultPage page = next;
+            next = null;
+            return page;
+        }
+
+        int getSkippedCount() {
+            return skipped;
         }
 
-        return hits;
     }
 
 }
@@ -2,12 +2,21 @@ package co.acu.pagetool;
 
 import co.acu.pagetool.crx.*;
 import co.acu.pagetool.exception.InvalidPropertyException;
+import co.acu.pagetool.exception.SlingClientException;
 import co.acu.pagetool.util.Output;
+import co.acu.pagetool.util.ProgressJournal;
 import co.acu.pagetool.util.Util;
 import org.apache.commons.cli.*;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Entry point for the PageTool CLI application, which allows mass updates to JCR properties in AEM.
@@ -18,6 +27,9 @@ public class PageToolApp {
     public static boolean verbose = false;
     public static boolean dryRun = false;
 
+    private static final int DEFAULT_QUERY_THREADS = 4;
+    private static final int DEFAULT_COUNT_LIMIT = 10000;
+
     public static void main(String[] args) {
         Options options = buildOptions();
         CommandLine cmd = parseCommandLine(options, args);
@@ -38,11 +50,191 @@ public class PageToolApp {
             return; // Exit if property configuration fails
         }
 
-        SlingClient slingClient = new SlingClient(conn, props, new QueryUrl(conn));
-        PageTool pageTool = new PageTool(parentNodePath, slingClient);
+        if (cmd.hasOption("inventory")) {
+            runInventory(cmd, props, parentNodePath);
+        } else {
+            run(cmd, conn, props, parentNodePath, null);
+        }
+    }
+
+    /**
+     * Applies the operation to every host of the inventory file in parallel. Each host has its own thread, connection
+     * pool, limits and journal, so that a slow or unavailable host does not hold up the others, and its output is
+     * prefixed with its name.
+     *
+     * @param cmd            Parsed command line
+     * @param props          The configured operations
+     * @param parentNodePath The parent node path
+     */
+    private static void runInventory(CommandLine cmd, OperationProperties props, String parentNodePath) {
+        HostInventory inventory;
+        try {
+            inventory = HostInventory.load(Paths.get(cmd.getOptionValue("inventory")));
+        } catch (IOException | IllegalArgumentException e) {
+            Output.warn("Unable to read inventory " + cmd.getOptionValue("inventory") + ": " + e.getMessage());
+            return;
+        }
+        List<HostInventory.Host> hosts = inventory.getHosts();
+        Map<HostInventory.Host, PageTool> results = new ConcurrentHashMap<>();
+        List<Thread> workers = new ArrayList<>();
+        for (HostInventory.Host host : hosts) {
+            Thread worker = new Thread(() -> {
+                Output.setLinePrefix("[" + host.getName() + "] ");
+                PageTool pageTool = run(cmd, host.getConnection(), props, parentNodePath, host.getName());
+                if (pageTool != null) {
+                    results.put(host, pageTool);
+                }
+            }, "host-" + host.getName());
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Output.warn("Interrupted while waiting for the hosts to finish.");
+                return;
+            }
+        }
+
+        Output.line();
+        Output.info("Summary of " + hosts.size() + " host" + (hosts.size() != 1 ? "s" : "") + ":");
+        for (HostInventory.Host host : hosts) {
+            PageTool pageTool = results.get(host);
+            String name = host.getName() + " (" + host.getConnection().getHostname() + ":" + host.getConnection().getPort() + ")";
+            if (pageTool == null) {
+                Output.warn("  " + name + ": failed to connect");
+            } else if (!pageTool.isCompleted()) {
+                Output.warn("  " + name + ": stopped by an error after " + pageTool.getSucceededCount() + " succeeded, "
+                        + pageTool.getFailedCount() + " failed");
+            } else if (props.isSearchOnly()) {
+                Output.note("  " + name + ": search completed");
+            } else if (pageTool.getFailedCount() > 0) {
+                Output.hl("  " + name + ": " + pageTool.getSucceededCount() + " succeeded, " + pageTool.getFailedCount() + " failed");
+            } else {
+                Output.note("  " + name + ": " + pageTool.getSucceededCount() + " succeeded");
+            }
+        }
+    }
+
+    /**
+     * Applies the operation to one host.
+     *
+     * @param cmd            Parsed command line
+     * @param conn           The host and credentials
+     * @param props          The configured operations
+     * @param parentNodePath The parent node path
+     * @param hostName       The name of the host in the inventory, which is appended to the journal file; null if
+     *                       only one host is updated
+     * @return The page tool after the run, or null if the HTTP client could not be set up
+     */
+    private static PageTool run(CommandLine cmd, CrxConnection conn, OperationProperties props, String parentNodePath, String hostName) {
+        int threads = getIntOption(cmd, "threads", 1);
+        try (HttpClientPool pool = new HttpClientPool(conn,
+                getIntOption(cmd, "max-connections", Math.max(HttpClientPool.DEFAULT_MAX_TOTAL, threads)),
+                getIntOption(cmd, "max-per-route", Math.max(HttpClientPool.DEFAULT_MAX_PER_ROUTE, threads)),
+                getIntOption(cmd, "idle-timeout", HttpClientPool.DEFAULT_IDLE_TIMEOUT),
+                getIntOption(cmd, "keep-alive", HttpClientPool.DEFAULT_KEEP_ALIVE));
+             ProgressJournal journal = openJournal(cmd, props, hostName)) {
+            if (cmd.hasOption("no-compression")) {
+                pool.setResponseDecoder(null);
+            }
+            if (cmd.hasOption("http2")) {
+                pool.setTransport(new JavaHttpTransport(conn, pool));
+            }
+            if (cmd.hasOption("token-auth")) {
+                pool.setTokenAuth(true);
+                pool.login();
+            }
+            int retries = getIntOption(cmd, "retries", RetryPolicy.DEFAULT_MAX_RETRIES, 0);
+            if (retries > 0) {
+                pool.setRetryPolicy(new RetryPolicy(retries, getIntOption(cmd, "retry-delay", RetryPolicy.DEFAULT_BASE_DELAY),
+                        RetryPolicy.DEFAULT_MAX_DELAY));
+            }
+            int breakerThreshold = getIntOption(cmd, "circuit-breaker", CircuitBreaker.DEFAULT_THRESHOLD, 0);
+            if (breakerThreshold > 0) {
+                pool.setCircuitBreaker(new CircuitBreaker(breakerThreshold, CircuitBreaker.DEFAULT_WINDOW,
+                        getIntOption(cmd, "circuit-pause", CircuitBreaker.DEFAULT_PAUSE)));
+            }
+            if (cmd.hasOption("max-reads")) {
+                int rate = getIntOption(cmd, "max-reads", 1);
+                pool.setReadLimiter(new RateLimiter(rate, getIntOption(cmd, "read-burst", rate)));
+            }
+            if (cmd.hasOption("max-writes")) {
+                int rate = getIntOption(cmd, "max-writes", 1);
+                pool.setWriteLimiter(new RateLimiter(rate, getIntOption(cmd, "write-burst", rate)));
+            }
+            if (cmd.hasOption("adaptive-concurrency")) {
+                pool.setConcurrencyLimiter(new ConcurrencyLimiter(1, threads));
+            }
+            QueryUrl queryUrl = new QueryUrl(conn);
+            queryUrl.setPageSize(getIntOption(cmd, "page-size", 0));
+            queryUrl.setGuessTotal(cmd.hasOption("guess-total"));
+            SlingClient slingClient = new SlingClient(conn, props, queryUrl, pool);
+            int snapshotCacheSize = getIntOption(cmd, "snapshot-cache", 0);
+            if (snapshotCacheSize > 0) {
+                slingClient.setSnapshotCache(new NodeSnapshotCache(snapshotCacheSize));
+            }
+            PageTool pageTool = new PageTool(parentNodePath, slingClient);
+
+            pageTool.setProperties(props);
+            pageTool.setThreads(threads);
+            pageTool.setVirtualThreads(cmd.hasOption("virtual-threads"));
+            pageTool.setSinglePost(cmd.hasOption("single-post"));
+            pageTool.setBatchSize(getIntOption(cmd, "batch-size", 1));
+            if (cmd.hasOption("crawl")) {
+                pageTool.setCrawl(getIntOption(cmd, "crawl-depth", 0, 0), getCrawlTypes(cmd, props), getIntOption(cmd, "crawl-threads", DEFAULT_QUERY_THREADS));
+            } else {
+                // The threads also query the levels of --max-depth
+                pageTool.setPartitions(cmd.hasOption("partition-depth") ? getIntOption(cmd, "partition-depth", 1) : 0,
+                        getIntOption(cmd, "partition-threads", DEFAULT_QUERY_THREADS));
+            }
+            pageTool.setMaxDepth(cmd.hasOption("flat") ? 1 : getIntOption(cmd, "max-depth", 0));
+            pageTool.setExplain(cmd.hasOption("explain"), cmd.hasOption("explain-execute"));
+            if (cmd.hasOption("count")) {
+                pageTool.setCount(getIntOption(cmd, "count-limit", DEFAULT_COUNT_LIMIT));
+            }
+            pageTool.setJournal(journal);
+            pageTool.executeOperation();
 
-        pageTool.setProperties(props);
-        pageTool.executeOperation();
+            if (verbose) {
+                Output.info(pool.getTransport().getStatistics());
+                ResponseDecoder decoder = pool.getResponseDecoder();
+                if (decoder != null && decoder.getDecodedBytes() > 0) {
+                    Output.info("Response bytes on the wire: " + decoder.getWireBytes() + ", decoded: " + decoder.getDecodedBytes()
+                            + " (" + (100 - decoder.getWireBytes() * 100 / decoder.getDecodedBytes()) + "% saved, "
+                            + decoder.getCompressedCount() + " compressed responses)");
+                }
+                if (pool.getRetryPolicy() != null || pool.getCircuitBreaker() != null) {
+                    Output.info("Retried requests: " + (pool.getRetryPolicy() != null ? pool.getRetryPolicy().getRetryCount() : 0)
+                            + ", pauses while AEM was unavailable: " + (pool.getCircuitBreaker() != null ? pool.getCircuitBreaker().getOpenCount() : 0));
+                }
+                if (pool.getReadLimiter() != null || pool.getWriteLimiter() != null) {
+                    Output.info("Time waited for rate limits: reads " + (pool.getReadLimiter() != null ? pool.getReadLimiter().getWaitMillis() : 0)
+                            + " ms, writes " + (pool.getWriteLimiter() != null ? pool.getWriteLimiter().getWaitMillis() : 0) + " ms (all workers)");
+                }
+                ConcurrencyLimiter limiter = pool.getConcurrencyLimiter();
+                if (limiter != null) {
+                    LatencyHistogram histogram = limiter.getHistogram();
+                    Output.info("Concurrency limit: " + limiter.getLimit() + " (peak: " + limiter.getPeakLimit() + " of " + threads
+                            + "), latency p50: " + formatLatency(histogram.getPercentile(50))
+                            + ", p95: " + formatLatency(histogram.getPercentile(95)));
+                    Output.info("Latency histogram: " + histogram);
+                }
+                if (slingClient.getSnapshotCache() != null) {
+                    Output.info("Node snapshot cache hits: " + slingClient.getSnapshotCache().getHitCount()
+                            + ", misses: " + slingClient.getSnapshotCache().getMissCount());
+                }
+            }
+            return pageTool;
+        } catch (SlingClientException | IOException e) {
+            Output.warn("Failed to set up HTTP client: " + e.getMessage());
+            if (verbose) {
+                e.printStackTrace();
+            }
+            return null;
+        }
     }
 
     private static Options buildOptions() {
@@ -68,7 +260,49 @@ public class PageToolApp {
                 .addOption("d", "delete", true, "Property to delete")
                 .addOption("f", "find", true, "Search criteria (node_name or property=value)")
                 .addOption("y", false, "Perform a dry run (no updates)")
-                .addOption("x", false, "Verbose output");
+                .addOption("x", false, "Verbose output")
+                .addOption(null, "adaptive-concurrency", false, "Adapt the number of concurrent requests (up to --threads) to the latency and errors of AEM")
+                .addOption(null, "batch-size", true, "Commit the changes of up to this many pages with a single request to their common ancestor (default: 1)")
+                .addOption(null, "inventory", true, "Run against all hosts listed in this file in parallel (instead of -h/-t/-s/-c)")
+                .addOption(null, "journal", true, "Append the outcome of each page to this file (suffixed with the host name with --inventory)")
+                .addOption(null, "resume", false, "Skip the pages completed successfully according to the --journal file")
+                .addOption(null, "max-reads", true, "Maximum number of GET requests per second, across all threads (default: no limit)")
+                .addOption(null, "read-burst", true, "Number of GET requests that may be sent at once within --max-reads (default: --max-reads)")
+                .addOption(null, "max-writes", true, "Maximum number of POST requests per second, across all threads (default: no limit)")
+                .addOption(null, "write-burst", true, "Number of POST requests that may be sent at once within --max-writes (default: --max-writes)")
+                .addOption(null, "retries", true, "Number of times a request is retried after a transient error, e.g. 3 (default: " + RetryPolicy.DEFAULT_MAX_RETRIES + ", no retries)")
+                .addOption(null, "retry-delay", true, "Milliseconds before the first retry, doubled for each further retry (default: " + RetryPolicy.DEFAULT_BASE_DELAY + ")")
+                .addOption(null, "circuit-breaker", true, "Pause all requests when this percentage of the last " + CircuitBreaker.DEFAULT_WINDOW + " requests failed, e.g. 50 (default: " + CircuitBreaker.DEFAULT_THRESHOLD + ", never pause)")
+                .addOption(null, "circuit-pause", true, "Seconds to pause before probing whether AEM is available again (default: " + CircuitBreaker.DEFAULT_PAUSE + ")")
+                .addOption(null, "no-compression", false, "Do not ask AEM for compressed (gzip/deflate) responses")
+                .addOption(null, "http2", false, "Send requests with the JDK HTTP client, using HTTP/2 if the server supports it")
+                .addOption(null, "token-auth", false, "Log in once and authenticate with the login token instead of Basic auth for every request")
+                .addOption(null, "crawl", false, "Find the nodes by walking the tree below -n with Sling JSON requests and matching them locally, instead of a query")
+                .addOption(null, "crawl-depth", true, "Number of levels below -n visited with --crawl (default: all)")
+                .addOption(null, "crawl-types", true, "Comma-separated node types that --crawl descends into (default: cq:Page with -P, otherwise all)")
+                .addOption(null, "crawl-threads", true, "Number of nodes read concurrently with --crawl (default: " + DEFAULT_QUERY_THREADS + ")")
+                .addOption(null, "count", false, "Only count the nodes found by the query, without fetching them")
+                .addOption(null, "count-limit", true, "Number of hits after which --count stops counting (default: " + DEFAULT_COUNT_LIMIT + ")")
+                .addOption(null, "guess-total", false, "Let queries estimate their total number of hits instead of counting all of them")
+                .addOption(null, "max-depth", true, "Only process nodes (pages with -P) at most this many levels below -n")
+                .addOption(null, "flat", false, "Only process the direct children of -n (same as --max-depth 1)")
+                .addOption(null, "explain", false, "Explain the query on the instance and recommend an Oak index for it, instead of performing the operations")
+                .addOption(null, "explain-execute", false, "With --explain, also execute the query to report its execution time and number of results (reads every result on the instance)")
+                .addOption(null, "match-any", false, "Match nodes that have any of the -m/-f properties instead of all of them")
+                .addOption(null, "exact-match", false, "Match multiple values exactly instead of as substrings, so that the query can use an index (values with % still match as substrings)")
+                .addOption(null, "local-match", false, "Send only index-friendly matching criteria to the query and match the others (like, multiple values) on its hits")
+                .addOption(null, "partition-depth", true, "Query each node this many levels below -n separately and concurrently, instead of a single query of the whole tree")
+                .addOption(null, "partition-threads", true, "Number of partitions (or levels of --max-depth) queried concurrently with --partition-depth (default: " + DEFAULT_QUERY_THREADS + ")")
+                .addOption(null, "page-size", true, "Fetch query results in windows of this many hits (default: single query of up to 1000 hits)")
+                .addOption(null, "skip-unchanged", false, "Only write properties whose current value differs from the new value")
+                .addOption(null, "snapshot-cache", true, "Read properties from a snapshot of each node, keeping up to this many nodes (default: off)")
+                .addOption(null, "single-post", false, "Commit all property changes to a node with a single request")
+                .addOption(null, "threads", true, "Number of pages to process concurrently (default: 1)")
+                .addOption(null, "virtual-threads", false, "Process pages on virtual threads (Java 21+, use with --threads)")
+                .addOption(null, "max-connections", true, "Maximum number of pooled HTTP connections (default: " + HttpClientPool.DEFAULT_MAX_TOTAL + ")")
+                .addOption(null, "max-per-route", true, "Maximum number of pooled HTTP connections per host (default: " + HttpClientPool.DEFAULT_MAX_PER_ROUTE + ")")
+                .addOption(null, "idle-timeout", true, "Seconds before idle pooled connections are closed (default: " + HttpClientPool.DEFAULT_IDLE_TIMEOUT + ")")
+                .addOption(null, "keep-alive", true, "Seconds to keep connections alive if the server does not say (default: " + HttpClientPool.DEFAULT_KEEP_ALIVE + ")");
 
         return options;
     }
@@ -114,6 +348,14 @@ public class PageToolApp {
             Output.warn("Property copy (-R) requires both 'copy from' (-i) and 'copy to' (-o).");
             return false;
         }
+        if (cmd.hasOption("http2") && cmd.hasOption('C')) {
+            Output.warn("Certificate checking (-C) cannot be turned off for the JDK HTTP client (--http2).");
+            return false;
+        }
+        if (cmd.hasOption("resume") && !cmd.hasOption("journal")) {
+            Output.warn("Resuming a run (--resume) requires its journal (--journal).");
+            return false;
+        }
 
         return true;
     }
@@ -133,6 +375,18 @@ public class PageToolApp {
         if (cmd.hasOption('R')) {
             props.setPropertyCopy(true);
         }
+        if (cmd.hasOption("skip-unchanged")) {
+            props.setSkipUnchanged(true);
+        }
+        if (cmd.hasOption("match-any")) {
+            props.setMatchAny(true);
+        }
+        if (cmd.hasOption("exact-match")) {
+            props.setExactMatch(true);
+        }
+        if (cmd.hasOption("local-match")) {
+            props.setLocalMatch(true);
+        }
 
         try {
             if (cmd.hasOption('m')) {
@@ -202,6 +456,98 @@ public class PageToolApp {
         }
     }
 
+    /**
+     * Get the value of a numeric option, falling back to the default if it is missing or not a positive number.
+     *
+     * @param cmd          Parsed command line
+     * @param option       The option name
+     * @param defaultValue The value to use if the option is not given
+     * @return The option value
+     */
+    private static int getIntOption(CommandLine cmd, String option, int defaultValue) {
+        return getIntOption(cmd, option, defaultValue, 1);
+    }
+
+    /**
+     * Get the value of a numeric option, falling back to the default if it is missing or below the minimum.
+     *
+     * @param cmd          Parsed command line
+     * @param option       The option name
+     * @param defaultValue The value to use if the option is not given
+     * @param minValue     The lowest valid value
+     * @return The option value
+     */
+    private static int getIntOption(CommandLine cmd, String option, int defaultValue, int minValue) {
+        if (!cmd.hasOption(option)) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(cmd.getOptionValue(option).trim());
+            if (value >= minValue) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+            // Handled below
+        }
+        Output.warn("Invalid value for --" + option + ": " + cmd.getOptionValue(option) + " (using " + defaultValue + ")");
+
+        return defaultValue;
+    }
+
+    /**
+     * Opens the progress journal if one was requested; searches are not recorded.
+     *
+     * @param cmd   Parsed command line
+     * @param props    The configured operations
+     * @param hostName The name of the host in the inventory, or null
+     * @return The journal, or null if no journal is kept
+     * @throws IOException If the journal cannot be read or opened
+     */
+    private static ProgressJournal openJournal(CommandLine cmd, OperationProperties props, String hostName) throws IOException {
+        if (!cmd.hasOption("journal") || dryRun || props.isSearchOnly()) {
+            return null;
+        }
+        String file = cmd.getOptionValue("journal") + (hostName != null ? "." + hostName : "");
+        ProgressJournal journal;
+        try {
+            journal = new ProgressJournal(Paths.get(file), cmd.hasOption("resume"));
+        } catch (IOException e) {
+            throw new IOException("Unable to open journal " + file + ": " + e.getMessage(), e);
+        }
+        if (cmd.hasOption("resume")) {
+            Output.info("Resuming run: " + journal.getCompletedCount() + " completed paths in journal.");
+        }
+        return journal;
+    }
+
+    /**
+     * Get the node types that a crawl descends into: the given types, or only pages when working with pages.
+     *
+     * @param cmd   Parsed command line
+     * @param props The configured operations
+     * @return The node types, or an empty set to descend into all nodes
+     */
+    private static Set<String> getCrawlTypes(CommandLine cmd, OperationProperties props) {
+        Set<String> types = new LinkedHashSet<>();
+        if (cmd.hasOption("crawl-types")) {
+            for (String type : cmd.getOptionValue("crawl-types").split(",")) {
+                if (!type.trim().isEmpty()) {
+                    types.add(type.trim());
+                }
+            }
+        } else if (props.isCqPageType()) {
+            types.add("cq:Page");
+        }
+        return types;
+    }
+
+    /**
+     * Formats a percentile of the {@link LatencyHistogram}, which is the upper bound of its bucket
+     */
+    private static String formatLatency(long millis) {
+        return millis == Long.MAX_VALUE ? "> 10000 ms" : "<= " + millis + " ms";
+    }
+
     private static void printHelp(Options options) {
         int cols = 80;
         try {
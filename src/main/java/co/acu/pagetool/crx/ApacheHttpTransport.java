@@ -0,0 +1,115 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The default transport, which sends each request with the blocking, pooled Apache HttpClient of the
+ * {@link HttpClientPool}. Requests are sent on the calling thread, so {@link #sendAsync} returns a completed future.
+ * GET responses are requested compressed if the pool has a {@link ResponseDecoder}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    private final HttpClientPool pool;
+
+    public ApacheHttpTransport(HttpClientPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String method, String url, List<NameValuePair> params) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        try {
+            future.complete(send(method, url, params));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public Response send(String method, String url, List<NameValuePair> params) throws IOException {
+        HttpRequestBase request;
+        if (POST.equals(method)) {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new UrlEncodedFormEntity(params));
+            request = post;
+        } else {
+            request = new HttpGet(url);
+        }
+        ResponseDecoder decoder = pool.getResponseDecoder();
+        if (decoder != null && GET.equals(method)) {
+            request.addHeader("Accept-Encoding", ResponseDecoder.ACCEPT_ENCODING);
+        }
+        return new ApacheResponse(pool.getHttpClient().execute(pool.getHttpHost(), request, pool.createClientContext()), decoder);
+    }
+
+    @Override
+    public String getStatistics() {
+        return "HTTP requests: " + pool.getRequestCount() + ", connections opened: " + pool.getConnectCount()
+                + ", connections reused: " + pool.getReuseCount();
+    }
+
+    /**
+     * The pooled connections are closed by the {@link HttpClientPool}.
+     */
+    @Override
+    public void close() {
+    }
+
+    private static class ApacheResponse implements Response {
+
+        private final CloseableHttpResponse response;
+        private final ResponseDecoder decoder;
+        private InputStream body;
+
+        ApacheResponse(CloseableHttpResponse response, ResponseDecoder decoder) {
+            this.response = response;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            Header header = response.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                if (response.getEntity() == null) {
+                    body = InputStream.nullInputStream();
+                } else if (decoder != null) {
+                    body = decoder.decode(response.getEntity().getContent(), getHeader("Content-Encoding"));
+                } else {
+                    body = response.getEntity().getContent();
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.util.Output;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pauses all workers while AEM is unavailable. The breaker watches the outcome of the last requests; once the
+ * share of failed requests reaches the threshold, it opens and no request is sent for the pause. After the pause a
+ * single probe request is let through: if it succeeds, all workers resume, otherwise the breaker opens again.
+ * <p>
+ * Failed requests are requests that failed with an I/O error or a transient status (see
+ * {@link RetryPolicy#isTransient(int)}); other errors, e.g. a 500 caused by an invalid change, do not count.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class CircuitBreaker {
+
+    // The workers never pause unless the circuit breaker is enabled
+    public static final int DEFAULT_THRESHOLD = 0;
+    public static final int DEFAULT_WINDOW = 20;
+    public static final int DEFAULT_PAUSE = 30;
+
+    private enum State { CLOSED, OPEN, PROBING }
+
+    private final int threshold;
+    private final long pauseNanos;
+    private final boolean[] window;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition closed = lock.newCondition();
+    private State state = State.CLOSED;
+    private int next = 0;
+    private int count = 0;
+    private int failures = 0;
+    private long openUntil = 0;
+    private int openCount = 0;
+
+    /**
+     * @param threshold    The percentage of failed requests that opens the breaker
+     * @param window       The number of recent requests to watch
+     * @param pauseSeconds The number of seconds to pause before a probe request
+     */
+    public CircuitBreaker(int threshold, int window, int pauseSeconds) {
+        if (threshold < 1 || window < 1) {
+            throw new IllegalArgumentException("Circuit breaker threshold and window must be greater than 0");
+        }
+        this.threshold = threshold;
+        this.window = new boolean[window];
+        this.pauseNanos = TimeUnit.SECONDS.toNanos(pauseSeconds);
+    }
+
+    /**
+     * Waits until a request may be sent.
+     * @return True if the request is the probe that decides whether the breaker closes; its outcome must be passed
+     *         to {@link #record(boolean, boolean)}
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public boolean acquire() throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (true) {
+                if (state == State.CLOSED) {
+                    return false;
+                }
+                long wait = openUntil - System.nanoTime();
+                if (state == State.OPEN && wait <= 0) {
+                    state = State.PROBING;
+                    return true;
+                }
+                if (state == State.OPEN) {
+                    closed.awaitNanos(wait);
+                } else {
+                    closed.await();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while the circuit breaker was open");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a request.
+     * @param probe  The value returned by {@link #acquire()} for the request
+     * @param failed True if the request failed with an I/O error or a transient status
+     */
+    public void record(boolean probe, boolean failed) {
+        lock.lock();
+        try {
+            if (probe) {
+                if (failed) {
+                    open("probe request failed");
+                } else {
+                    state = State.CLOSED;
+                    next = 0;
+                    count = 0;
+                    failures = 0;
+                    Output.info("AEM is responding again; resuming.");
+                    closed.signalAll();
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                // Requests that were sent before the breaker opened
+                return;
+            }
+            if (count == window.length) {
+                failures -= window[next] ? 1 : 0;
+            } else {
+                count++;
+            }
+            window[next] = failed;
+            failures += failed ? 1 : 0;
+            next = (next + 1) % window.length;
+            if (count == window.length && failures * 100 >= threshold * count) {
+                open(failures + " of the last " + count + " requests failed");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + pauseNanos;
+        openCount++;
+        Output.warn("AEM seems unavailable (" + reason + "); pausing all requests for "
+                + TimeUnit.NANOSECONDS.toSeconds(pauseNanos) + " s.");
+    }
+
+    /**
+     * Get the number of times the breaker opened
+     * @return The number of pauses
+     */
+    public int getOpenCount() {
+        lock.lock();
+        try {
+            return openCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.util.Output;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests that are in flight at the same time, adjusting the limit to the observed latency
+ * and errors of AEM (additive increase, multiplicative decrease).
+ * <p>
+ * The requests are observed in rounds of at least as many requests as the current limit. After a round, the limit
+ * is increased by one if no request was rejected and the round's 95th percentile latency stayed within the
+ * tolerance of the lowest latency seen so far; otherwise it is reduced to three quarters. Rejected requests are
+ * requests that failed with an I/O error (e.g. a timeout) or a 429 or 503 response.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class ConcurrencyLimiter {
+
+    public static final double DEFAULT_TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.75;
+    private static final int MIN_ROUND = 10;
+    // Lets the baseline follow a server that has become slower for good, by 1% per round
+    private static final double BASELINE_DRIFT = 1.01;
+
+    private final int maxLimit;
+    private final double tolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private int limit;
+    private int inFlight = 0;
+    private long[] round = new long[MIN_ROUND];
+    private int roundSize = 0;
+    private boolean roundRejected = false;
+    private double baseline = -1;
+    private int peakLimit;
+
+    /**
+     * @param initialLimit The number of requests allowed in flight at first
+     * @param maxLimit     The highest limit, e.g. the number of workers
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this(initialLimit, maxLimit, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @param initialLimit The number of requests allowed in flight at first
+     * @param maxLimit     The highest limit, e.g. the number of workers
+     * @param tolerance    The factor by which the latency may rise above the baseline before the limit is reduced
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit, double tolerance) {
+        if (maxLimit < 1 || initialLimit < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be greater than 0");
+        }
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.min(initialLimit, maxLimit);
+        this.peakLimit = limit;
+    }
+
+    /**
+     * Waits until another request may be sent.
+     * @return The start time of the request, to be passed to {@link #release(long, boolean)}
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public long acquire() throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                available.await();
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+        } finally {
+            lock.unlock();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the outcome of a request and lets the next one start.
+     * @param start    The start time returned by {@link #acquire()}
+     * @param rejected True if the request failed in a way that suggests AEM is overloaded
+     */
+    public void release(long start, boolean rejected) {
+        long latency = System.nanoTime() - start;
+        histogram.record(latency);
+        lock.lock();
+        try {
+            inFlight--;
+            if (roundSize == round.length) {
+                round = Arrays.copyOf(round, round.length * 2);
+            }
+            round[roundSize++] = latency;
+            roundRejected |= rejected;
+            if (roundSize >= Math.max(limit, MIN_ROUND)) {
+                adjust();
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust() {
+        Arrays.sort(round, 0, roundSize);
+        long p95 = round[(int) Math.ceil(roundSize * 0.95) - 1];
+        int previous = limit;
+        if (roundRejected || (baseline > 0 && p95 > baseline * tolerance)) {
+            limit = Math.max(1, (int) (limit * BACKOFF));
+        } else {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        baseline = baseline < 0 ? p95 : Math.min(p95, baseline * BASELINE_DRIFT);
+        peakLimit = Math.max(peakLimit, limit);
+        if (PageToolApp.verbose && limit != previous) {
+            Output.info("Concurrency limit: " + previous + " -> " + limit + " (p95: "
+                    + TimeUnit.NANOSECONDS.toMillis(p95) + " ms" + (roundRejected ? ", rejected requests" : "") + ")");
+        }
+        roundSize = 0;
+        roundRejected = false;
+    }
+
+    /**
+     * Check whether a response status shows that AEM is overloaded
+     * @param statusCode The status code of the response
+     * @return True for 429 (Too Many Requests) and 503 (Service Unavailable)
+     */
+    public static boolean isRejected(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the highest limit reached during the run
+     * @return The peak limit
+     */
+    public int getPeakLimit() {
+        lock.lock();
+        try {
+            return peakLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+}
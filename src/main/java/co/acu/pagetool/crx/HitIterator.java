@@ -0,0 +1,20 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.result.ResultPage;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * The hits of a query that are fetched with several requests, possibly in the background. Errors while fetching
+ * are thrown as {@link UncheckedIOException}; closing stops any background requests.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public interface HitIterator extends Iterator<ResultPage>, Closeable {
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,133 @@
+package co.acu.pagetool.crx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A list of AEM hosts that an operation is applied to, read from an inventory file. Each line describes one host
+ * with space-separated <code>key=value</code> pairs; empty lines and lines starting with <code>#</code> are ignored:
+ * <pre>
+ * name=author   host=author.example.com   port=4502 user=admin password=admin
+ * name=publish1 host=publish1.example.com port=443  user=admin password=secret secure=true
+ * </pre>
+ * Missing values default to those of {@link CrxConnection}, and the name defaults to <code>host:port</code>.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class HostInventory {
+
+    private final List<Host> hosts;
+
+    private HostInventory(List<Host> hosts) {
+        this.hosts = Collections.unmodifiableList(hosts);
+    }
+
+    /**
+     * Reads an inventory file.
+     * @param file The inventory file
+     * @return The inventory
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a line is invalid, or the file does not list any host
+     */
+    public static HostInventory load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    static HostInventory parse(List<String> lines) {
+        List<Host> hosts = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Host host = parseHost(line, i + 1);
+            if (!names.add(host.getName())) {
+                throw new IllegalArgumentException("Duplicate host name '" + host.getName() + "' on line " + (i + 1));
+            }
+            hosts.add(host);
+        }
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("Inventory does not list any host");
+        }
+        return new HostInventory(hosts);
+    }
+
+    private static Host parseHost(String line, int lineNumber) {
+        String name = null;
+        String hostname = null;
+        String port = null;
+        String username = null;
+        String password = null;
+        boolean secure = false;
+        for (String pair : line.split("\\s+")) {
+            int index = pair.indexOf('=');
+            if (index < 1) {
+                throw new IllegalArgumentException("Invalid entry '" + pair + "' on line " + lineNumber + "; expected key=value");
+            }
+            String value = pair.substring(index + 1);
+            switch (pair.substring(0, index)) {
+                case "name":
+                    name = value;
+                    break;
+                case "host":
+                    hostname = value;
+                    break;
+                case "port":
+                    port = value;
+                    break;
+                case "user":
+                    username = value;
+                    break;
+                case "password":
+                    password = value;
+                    break;
+                case "secure":
+                    secure = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown key '" + pair.substring(0, index) + "' on line " + lineNumber);
+            }
+        }
+        if (port != null && !port.matches("\\d+")) {
+            throw new IllegalArgumentException("Invalid port '" + port + "' on line " + lineNumber);
+        }
+        CrxConnection conn = new CrxConnection(username, password, hostname, port, secure);
+        return new Host(name != null ? name : conn.getHostname() + ":" + conn.getPort(), conn);
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * A named AEM host with its connection details.
+     */
+    public static class Host {
+
+        private final String name;
+        private final CrxConnection connection;
+
+        Host(String name, CrxConnection connection) {
+            this.name = name;
+            this.connection = connection;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CrxConnection getConnection() {
+            return connection;
+        }
+
+    }
+
+}
@@ -0,0 +1,390 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.exception.SlingClientException;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.NameValuePair;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A run-scoped, pooled HTTP client for a single AEM host. The client, its SSL context and its keep-alive
+ * connections are created once from the {@link CrxConnection} and shared by every {@link SlingClient} request.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class HttpClientPool implements Closeable {
+
+    public static final int DEFAULT_MAX_TOTAL = 20;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final int DEFAULT_IDLE_TIMEOUT = 30;
+    public static final int DEFAULT_KEEP_ALIVE = 30;
+    public static final String LOGIN_PATH = "/libs/granite/core/content/login.html/j_security_check";
+    public static final String LOGIN_TOKEN_COOKIE = "login-token";
+
+    private final HttpHost httpHost;
+    private final CountingConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final AuthCache authCache;
+    private final String username;
+    private final String password;
+    private final CookieStore cookieStore = new BasicCookieStore();
+    private volatile boolean tokenAuth = false;
+    private volatile long loginGeneration = 0;
+    private HttpTransport transport = null;
+    private ResponseDecoder responseDecoder = new ResponseDecoder();
+    private final AtomicLong requestCount = new AtomicLong();
+    private ConcurrencyLimiter concurrencyLimiter = null;
+    private RateLimiter readLimiter = null;
+    private RateLimiter writeLimiter = null;
+    private RetryPolicy retryPolicy = null;
+    private CircuitBreaker circuitBreaker = null;
+
+    public HttpClientPool(CrxConnection conn) throws SlingClientException {
+        this(conn, DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * Creates the pooled client for the host described by the given connection.
+     *
+     * @param conn        The AEM host and credentials
+     * @param maxTotal    Maximum number of open connections in the pool
+     * @param maxPerRoute Maximum number of open connections to the AEM host
+     * @param idleTimeout Seconds after which idle connections are evicted from the pool
+     * @param keepAlive   Seconds to keep a connection alive when the server does not send a Keep-Alive header
+     * @throws SlingClientException If the SSL context cannot be created
+     */
+    public HttpClientPool(CrxConnection conn, int maxTotal, int maxPerRoute, int idleTimeout, int keepAlive) throws SlingClientException {
+        Objects.requireNonNull(conn, "CrxConnection must not be null");
+        String scheme = conn.isSecure() ? SlingClient.SCHEME_SECURE : SlingClient.SCHEME;
+        this.httpHost = new HttpHost(conn.getHostname(), Integer.parseInt(conn.getPort()), scheme);
+        this.username = conn.getUsername();
+        this.password = conn.getPassword();
+
+        this.connectionManager = new CountingConnectionManager(createSocketFactoryRegistry());
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(new AuthScope(httpHost.getHostName(), httpHost.getPort()),
+                new UsernamePasswordCredentials(conn.getUsername(), conn.getPassword()));
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : TimeUnit.SECONDS.toMillis(keepAlive);
+        };
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultCredentialsProvider(credsProvider)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.SECONDS)
+                // Compression is negotiated by the transport, so that the bytes on the wire can be counted
+                .disableContentCompression()
+                .build();
+
+        // Preemptive basic auth, shared by all requests of the run
+        this.authCache = new BasicAuthCache();
+        this.authCache.put(httpHost, new BasicScheme());
+    }
+
+    private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry() throws SlingClientException {
+        SSLConnectionSocketFactory sslSocketFactory;
+        if (PageToolApp.bypassSSL) {
+            try {
+                sslSocketFactory = new SSLConnectionSocketFactory(
+                        new SSLContextBuilder().loadTrustMaterial(null, (chain, authType) -> true).build(),
+                        NoopHostnameVerifier.INSTANCE);
+            } catch (Exception e) {
+                throw new SlingClientException("Failed to create SSL context", e);
+            }
+        } else {
+            sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        }
+
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register(SlingClient.SCHEME, PlainConnectionSocketFactory.getSocketFactory())
+                .register(SlingClient.SCHEME_SECURE, sslSocketFactory)
+                .build();
+    }
+
+    public HttpHost getHttpHost() {
+        return httpHost;
+    }
+
+    /**
+     * Get the shared client. Each call is counted as one request for the connection reuse statistics.
+     * @return The pooled HTTP client
+     */
+    public CloseableHttpClient getHttpClient() {
+        requestCount.incrementAndGet();
+        return httpClient;
+    }
+
+    /**
+     * Creates a new request context that shares the run's authentication cache, or the login token cookie if token
+     * authentication is enabled.
+     * @return A context to be used for a single request
+     */
+    public HttpClientContext createClientContext() {
+        HttpClientContext context = HttpClientContext.create();
+        if (tokenAuth) {
+            context.setCookieStore(cookieStore);
+            // Without credentials, a 401 is returned to the caller, which logs in again instead of using Basic auth
+            context.setCredentialsProvider(new BasicCredentialsProvider());
+        } else {
+            context.setAuthCache(authCache);
+        }
+        return context;
+    }
+
+    /**
+     * Set whether requests authenticate with a login token instead of Basic auth. The token is requested once with
+     * {@link #login()}, so that AEM does not have to check the password for every request.
+     * @param tokenAuth If true, send the login token cookie instead of Basic auth
+     */
+    public void setTokenAuth(boolean tokenAuth) {
+        this.tokenAuth = tokenAuth;
+    }
+
+    public boolean isTokenAuth() {
+        return tokenAuth;
+    }
+
+    /**
+     * Logs in with the credentials of the connection and keeps the <code>login-token</code> cookie for all further
+     * requests.
+     * @throws IOException If the login fails
+     */
+    public synchronized void login() throws IOException {
+        cookieStore.clear();
+        HttpPost post = new HttpPost(LOGIN_PATH);
+        List<NameValuePair> params = Arrays.asList(
+                new BasicNameValuePair("j_username", username),
+                new BasicNameValuePair("j_password", password),
+                new BasicNameValuePair("j_validate", "true"),
+                new BasicNameValuePair("_charset_", "UTF-8"));
+        post.setEntity(new UrlEncodedFormEntity(params, StandardCharsets.UTF_8));
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(cookieStore);
+        context.setCredentialsProvider(new BasicCredentialsProvider());
+        int statusCode;
+        try (CloseableHttpResponse response = getHttpClient().execute(httpHost, post, context)) {
+            statusCode = response.getStatusLine().getStatusCode();
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+        if (statusCode != 200 || !hasLoginToken()) {
+            throw new IOException("Login as " + username + " failed (status code: " + statusCode + ")");
+        }
+        loginGeneration++;
+    }
+
+    /**
+     * Logs in again after a request was rejected, unless another worker already did since the request was sent.
+     * @param generation The value of {@link #getLoginGeneration()} when the rejected request was sent
+     * @throws IOException If the login fails
+     */
+    public synchronized void refreshLogin(long generation) throws IOException {
+        if (generation == loginGeneration) {
+            login();
+        }
+    }
+
+    /**
+     * Get the number of successful logins, which changes whenever the login token is replaced
+     * @return The login generation
+     */
+    public long getLoginGeneration() {
+        return loginGeneration;
+    }
+
+    private boolean hasLoginToken() {
+        return getLoginToken() != null;
+    }
+
+    /**
+     * Get the current login token, e.g. for a transport that does not use the cookie store of the pool
+     * @return The value of the login token cookie, or null if not logged in
+     */
+    public String getLoginToken() {
+        for (Cookie cookie : cookieStore.getCookies()) {
+            if (LOGIN_TOKEN_COOKIE.equals(cookie.getName())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the transport that sends the requests of the run
+     * @return The transport; by default an {@link ApacheHttpTransport} using the pooled client
+     */
+    public synchronized HttpTransport getTransport() {
+        if (transport == null) {
+            transport = new ApacheHttpTransport(this);
+        }
+        return transport;
+    }
+
+    public synchronized void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Set the decoder of compressed responses, which also counts the bytes received
+     * @param responseDecoder The decoder, or null to request uncompressed responses
+     */
+    public void setResponseDecoder(ResponseDecoder responseDecoder) {
+        this.responseDecoder = responseDecoder;
+    }
+
+    public ResponseDecoder getResponseDecoder() {
+        return responseDecoder;
+    }
+
+    /**
+     * Set the limiter that bounds the number of requests in flight to the AEM host
+     * @param concurrencyLimiter The limiter, or null to send requests as soon as a worker is ready
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Set the rate limit of GET requests, shared by all workers
+     * @param readLimiter The limiter, or null for no limit
+     */
+    public void setReadLimiter(RateLimiter readLimiter) {
+        this.readLimiter = readLimiter;
+    }
+
+    public RateLimiter getReadLimiter() {
+        return readLimiter;
+    }
+
+    /**
+     * Set the rate limit of POST requests, shared by all workers
+     * @param writeLimiter The limiter, or null for no limit
+     */
+    public void setWriteLimiter(RateLimiter writeLimiter) {
+        this.writeLimiter = writeLimiter;
+    }
+
+    public RateLimiter getWriteLimiter() {
+        return writeLimiter;
+    }
+
+    /**
+     * Set the policy for sending failed requests again
+     * @param retryPolicy The policy, or null to send each request once
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set the circuit breaker that pauses all workers while AEM is unavailable
+     * @param circuitBreaker The breaker, or null to keep sending requests
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getConnectCount() {
+        return connectionManager.connectCount.get();
+    }
+
+    /**
+     * Get the number of requests that were served over an already open connection.
+     * @return The number of reused connections
+     */
+    public long getReuseCount() {
+        return Math.max(0, getRequestCount() - getConnectCount());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (transport != null) {
+                transport.close();
+            }
+        } finally {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Pooling connection manager which counts how many new connections had to be opened.
+     */
+    private static class CountingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final AtomicLong connectCount = new AtomicLong();
+
+        CountingConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+            super(socketFactoryRegistry);
+        }
+
+        @Override
+        public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+            connectCount.incrementAndGet();
+            super.connect(managedConn, route, connectTimeout, context);
+        }
+
+    }
+
+}
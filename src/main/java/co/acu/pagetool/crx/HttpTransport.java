@@ -0,0 +1,85 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.NameValuePair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends single HTTP requests to the AEM host. Authentication is handled by the transport; retries, rate and
+ * concurrency limits are applied by {@link SlingClient} around each request.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public interface HttpTransport extends Closeable {
+
+    String GET = "GET";
+    String POST = "POST";
+
+    /**
+     * Sends a request without waiting for the response.
+     *
+     * @param method The request method ({@link #GET} or {@link #POST})
+     * @param url    The absolute URL
+     * @param params The form parameters of a POST, or null
+     * @return The response, completed once the response headers are received
+     */
+    CompletableFuture<Response> sendAsync(String method, String url, List<NameValuePair> params);
+
+    /**
+     * Sends a request and waits for the response headers. The calling thread is blocked until they are received
+     * (on a virtual thread, only the virtual thread).
+     *
+     * @param method The request method ({@link #GET} or {@link #POST})
+     * @param url    The absolute URL
+     * @param params The form parameters of a POST, or null
+     * @return The response, which the caller must close
+     * @throws IOException If the request fails
+     */
+    default Response send(String method, String url, List<NameValuePair> params) throws IOException {
+        try {
+            return sendAsync(method, url, params).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(method + " " + url + " failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + method + " " + url);
+        }
+    }
+
+    /**
+     * Get a description of the requests sent, e.g. for verbose output
+     * @return The statistics of the transport
+     */
+    String getStatistics();
+
+    /**
+     * A response whose body is read while it is received.
+     */
+    interface Response extends Closeable {
+
+        int getStatusCode();
+
+        /**
+         * @param name The header name
+         * @return The first value of the header, or null if the response does not have it
+         */
+        String getHeader(String name);
+
+        /**
+         * @return The body, or an empty stream if the response has none
+         * @throws IOException If the body cannot be read
+         */
+        InputStream getBody() throws IOException;
+
+    }
+
+}
@@ -0,0 +1,282 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.OperationProperties;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recommends an Oak index for the query built by {@link QueryUrl} for the same operations. The predicates of the
+ * query are translated to the equivalent XPath statement, which AEM can explain (see
+ * {@link SlingClient#explainQuery(String, boolean)}), and to a Lucene <code>oak:QueryIndexDefinition</code> with a property
+ * rule for each matched property, so that the query does not traverse the tree.
+ * <p>
+ * Criteria that are matched by the tool instead of the query (see {@link QueryPlan}) are not part of the statement.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class IndexAdvisor {
+
+    /** The name of the recommended index below <code>/oak:index</code>, following the custom index naming scheme */
+    public static final String INDEX_NAME = "pagetool-custom-1";
+    private static final String UNSTRUCTURED = "nt:unstructured";
+
+    private final String path;
+    private final String type;
+    private final List<String> conditions = new ArrayList<>();
+    // Indexed property names by the names of their property definition nodes
+    private final Map<String, String> indexedProperties = new LinkedHashMap<>();
+    private boolean indexNodeName = false;
+
+    /**
+     * Builds the recommendation with the same arguments as
+     * {@link QueryUrl#buildUrl(String, List, List, boolean, boolean, OperationProperties)}.
+     *
+     * @param path                The root path of the query
+     * @param properties          The properties matched by the query
+     * @param nodes               The node names, any of which a node must have
+     * @param cqPageType          Whether to match page (content) nodes only
+     * @param isPropertyOperation Whether the operation works on the properties of page content nodes
+     * @param opProps             The operations, for the property copy filter and whether any property matches
+     */
+    public IndexAdvisor(String path, List<Property> properties, List<String> nodes, boolean cqPageType, boolean isPropertyOperation, OperationProperties opProps) {
+        this.path = path;
+        boolean hasPropertyCopyFilter = false;
+        if (opProps != null && opProps.getCopyFromProperties() != null && !opProps.getCopyFromProperties().isEmpty()) {
+            String propName = opProps.getCopyFromProperties().get(0);
+            if (isPropertyOperation) {
+                addProperty(propName, toAttribute(propName));
+            } else {
+                addNodeName(propName);
+            }
+            hasPropertyCopyFilter = true;
+        }
+
+        if (properties != null && !properties.isEmpty() && !hasPropertyCopyFilter) {
+            List<String> propertyConditions = new ArrayList<>();
+            for (Property prop : properties) {
+                String attribute = toAttribute(prop.getName());
+                String condition = null;
+                if (!prop.isMulti()) {
+                    if (prop.getValue() != null && !prop.getValue().isEmpty()) {
+                        condition = attribute + " = " + toLiteral(prop.getValue());
+                    } else {
+                        condition = attribute;
+                    }
+                } else if (prop.getValues() != null && prop.getValues().length > 0 && prop.isExactMatch()) {
+                    List<String> alternatives = new ArrayList<>();
+                    for (String value : prop.getValues()) {
+                        alternatives.add(attribute + " = " + toLiteral(value));
+                    }
+                    condition = toDisjunction(alternatives);
+                } else if (prop.getValues() != null && prop.getValues().length > 0) {
+                    condition = "jcr:like(" + attribute + ", " + toLiteral("%" + prop.getValues()[0] + "%") + ")";
+                }
+                if (condition != null) {
+                    propertyConditions.add(condition);
+                    indexProperty(prop.getName());
+                }
+            }
+            if (opProps != null && opProps.isMatchAny()) {
+                if (!propertyConditions.isEmpty()) {
+                    conditions.add(toDisjunction(propertyConditions));
+                }
+            } else {
+                conditions.addAll(propertyConditions);
+            }
+            isPropertyOperation = true;
+        }
+
+        if (nodes != null && !nodes.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            for (String node : nodes) {
+                names.add(toNameCondition(node));
+            }
+            conditions.add(toDisjunction(names));
+            indexNodeName = true;
+        }
+        if (cqPageType) {
+            type = isPropertyOperation ? "cq:PageContent" : "cq:Page";
+        } else {
+            type = null;
+        }
+    }
+
+    private void addProperty(String name, String condition) {
+        conditions.add(condition);
+        indexProperty(name);
+    }
+
+    /**
+     * Adds a property definition for a property, named after the property with only letters, digits and underscores.
+     * Names that map to the same definition name (e.g. <code>jcr:title</code> and <code>jcr_title</code>) are told
+     * apart by a suffix.
+     */
+    private void indexProperty(String name) {
+        String key = name.replaceAll("[^A-Za-z0-9]", "_");
+        String unique = key;
+        for (int i = 2; indexedProperties.containsKey(unique) && !name.equals(indexedProperties.get(unique)); i++) {
+            unique = key + "_" + i;
+        }
+        indexedProperties.put(unique, name);
+    }
+
+    private void addNodeName(String name) {
+        conditions.add(toNameCondition(name));
+        indexNodeName = true;
+    }
+
+    private static String toNameCondition(String name) {
+        if (name.contains("*") || name.contains("?")) {
+            return "jcr:like(fn:name(), " + toLiteral(name.replace('*', '%').replace('?', '_')) + ")";
+        }
+        return "fn:name() = " + toLiteral(name);
+    }
+
+    private static String toDisjunction(List<String> alternatives) {
+        return alternatives.size() > 1 ? "(" + String.join(" or ", alternatives) + ")" : alternatives.get(0);
+    }
+
+    /**
+     * Converts a property name, which may be a path relative to the node, to an XPath attribute, e.g.
+     * <code>par/title</code> to <code>par/@title</code>
+     */
+    private static String toAttribute(String name) {
+        int index = name.lastIndexOf('/');
+        return (index >= 0 ? encodePath(name.substring(0, index)) + "/" : "") + "@" + encodeName(name.substring(index + 1));
+    }
+
+    private static String encodePath(String path) {
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = encodeName(segments[i]);
+        }
+        return String.join("/", segments);
+    }
+
+    /**
+     * Encodes a JCR name for XPath as defined by ISO 9075: characters that may not appear in an XML name, e.g. a
+     * leading digit or a space, are written as <code>_xHHHH_</code>, so that <code>2024</code> becomes
+     * <code>_x0032_024</code>. The namespace prefix of a name is kept, but a name starting with <code>:</code> has
+     * none, so its colon is encoded.
+     * @param name The name
+     * @return The encoded name
+     */
+    static String encodeName(String name) {
+        int colon = name.indexOf(':');
+        if (colon > 0) {
+            return encodeLocalName(name.substring(0, colon)) + ":" + encodeLocalName(name.substring(colon + 1));
+        }
+        return encodeLocalName(name);
+    }
+
+    private static String encodeLocalName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = Character.isLetter(c) || c == '_'
+                    || (i > 0 && (Character.isDigit(c) || c == '-' || c == '.'));
+            // An underscore that starts an escape sequence is itself escaped, so that decoding restores the name
+            if (!valid || (c == '_' && name.startsWith("_x", i) && name.length() >= i + 7 && name.charAt(i + 6) == '_'
+                    && name.substring(i + 2, i + 6).matches("\\p{XDigit}{4}"))) {
+                sb.append(String.format("_x%04X_", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String toLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /**
+     * Get the node type of the index rule
+     * @return The type of the hits, or <code>nt:base</code> for any type
+     */
+    public String getType() {
+        return type != null ? type : "nt:base";
+    }
+
+    /**
+     * Builds the XPath statement that is equivalent to the query, e.g.
+     * <code>/jcr:root/content/site//element(*, cq:PageContent)[@status = 'done']</code>
+     * @return The statement
+     */
+    public String toXPath() {
+        StringBuilder sb = new StringBuilder("/jcr:root");
+        if (!"/".equals(path)) {
+            sb.append(encodePath(path.endsWith("/") ? path.substring(0, path.length() - 1) : path));
+        }
+        sb.append("//").append(type != null ? "element(*, " + type + ")" : "*");
+        if (!conditions.isEmpty()) {
+            sb.append('[').append(String.join(" and ", conditions)).append(']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check whether the query has criteria that an index can be defined for
+     * @return False if the query only restricts the path (and type)
+     */
+    public boolean hasIndexableCriteria() {
+        return !indexedProperties.isEmpty() || indexNodeName;
+    }
+
+    /**
+     * Builds a Lucene index definition that serves the query, with a rule for the type of the hits that indexes each
+     * matched property (and the node name, if matched), restricted to the query path. It can be imported as
+     * <code>/oak:index/{@value #INDEX_NAME}</code>, e.g. with a content package.
+     * @return The definition as Sling JSON
+     */
+    public JsonObject createIndexDefinition() {
+        JsonObject definition = new JsonObject();
+        definition.addProperty("jcr:primaryType", "oak:QueryIndexDefinition");
+        definition.addProperty("type", "lucene");
+        definition.addProperty("async", "async");
+        definition.addProperty("compatVersion", 2);
+        definition.addProperty("evaluatePathRestrictions", true);
+        JsonArray paths = new JsonArray();
+        paths.add(path);
+        definition.add("includedPaths", paths);
+        definition.add("queryPaths", paths.deepCopy());
+
+        JsonObject propertyDefinitions = newNode();
+        for (Map.Entry<String, String> entry : indexedProperties.entrySet()) {
+            JsonObject property = newNode();
+            property.addProperty("name", entry.getValue());
+            property.addProperty("propertyIndex", true);
+            propertyDefinitions.add(entry.getKey(), property);
+        }
+        JsonObject rule = newNode();
+        if (indexNodeName) {
+            rule.addProperty("indexNodeName", true);
+        }
+        rule.add("properties", propertyDefinitions);
+        JsonObject rules = newNode();
+        rules.add(getType(), rule);
+        definition.add("indexRules", rules);
+        return definition;
+    }
+
+    private static JsonObject newNode() {
+        JsonObject node = new JsonObject();
+        node.addProperty("jcr:primaryType", UNSTRUCTURED);
+        return node;
+    }
+
+    /**
+     * Check whether an Oak query plan traverses the nodes instead of using an index
+     * @param plan The plan, e.g. <code>[cq:PageContent] as [a] /* traverse "/content//*" *&#47;</code>
+     * @return True if the plan traverses
+     */
+    public static boolean isTraversal(String plan) {
+        return plan != null && plan.contains("/* traverse");
+    }
+
+}
@@ -0,0 +1,152 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.exception.SlingClientException;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A transport based on <code>java.net.http.HttpClient</code>. HTTP/2 is used if the server supports it, so that many
+ * concurrent requests share a few multiplexed connections. The client itself does not block a thread while a request
+ * is in flight, but {@link SlingClient} waits for each response on the calling worker (see
+ * {@link HttpTransport#send}); many requests in flight without a platform thread each need virtual worker threads.
+ * <p>
+ * Certificate checking cannot be turned off (<code>-C</code>): the JDK client only supports turning off host name
+ * verification for the whole JVM, which would also affect the other clients of the run.
+ * <p>
+ * Requests authenticate with preemptive Basic auth, or with the login token of the {@link HttpClientPool} if token
+ * authentication is enabled. GET responses are requested compressed if the pool has a {@link ResponseDecoder}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class JavaHttpTransport implements HttpTransport {
+
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final HttpClientPool pool;
+    private final ResponseDecoder decoder;
+    private final String basicAuth;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong http2Count = new AtomicLong();
+
+    /**
+     * @param conn The credentials
+     * @param pool The pool that holds the login token, if token authentication is enabled
+     * @throws SlingClientException If certificate checking is turned off (see {@link PageToolApp#bypassSSL})
+     */
+    public JavaHttpTransport(CrxConnection conn, HttpClientPool pool) throws SlingClientException {
+        if (PageToolApp.bypassSSL) {
+            throw new SlingClientException("Certificate checking cannot be turned off for the JDK HTTP client");
+        }
+        this.pool = pool;
+        this.decoder = pool != null ? pool.getResponseDecoder() : null;
+        this.basicAuth = "Basic " + Base64.getEncoder().encodeToString(
+                (conn.getUsername() + ":" + conn.getPassword()).getBytes(StandardCharsets.UTF_8));
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "http-transport-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String method, String url, List<NameValuePair> params) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+        if (POST.equals(method)) {
+            // Same encoding as the Apache transport, which Sling decodes by default
+            request.header("Content-Type", "application/x-www-form-urlencoded; charset=ISO-8859-1")
+                    .POST(HttpRequest.BodyPublishers.ofString(URLEncodedUtils.format(params, StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1));
+        } else {
+            request.GET();
+            if (decoder != null) {
+                request.header("Accept-Encoding", ResponseDecoder.ACCEPT_ENCODING);
+            }
+        }
+        String loginToken = pool != null && pool.isTokenAuth() ? pool.getLoginToken() : null;
+        if (loginToken != null) {
+            request.header("Cookie", HttpClientPool.LOGIN_TOKEN_COOKIE + "=" + loginToken);
+        } else if (pool == null || !pool.isTokenAuth()) {
+            request.header("Authorization", basicAuth);
+        }
+        requestCount.incrementAndGet();
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    if (response.version() == HttpClient.Version.HTTP_2) {
+                        http2Count.incrementAndGet();
+                    }
+                    return new JavaResponse(response, decoder);
+                });
+    }
+
+    @Override
+    public String getStatistics() {
+        return "HTTP requests: " + requestCount.get() + ", over HTTP/2: " + http2Count.get();
+    }
+
+    /**
+     * Stops the threads that complete the responses. The connections of the JDK client are closed when it is no
+     * longer referenced.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static class JavaResponse implements Response {
+
+        private final HttpResponse<InputStream> response;
+        private final ResponseDecoder decoder;
+        private InputStream body;
+
+        JavaResponse(HttpResponse<InputStream> response, ResponseDecoder decoder) {
+            this.response = response;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = decoder != null ? decoder.decode(response.body(), getHeader("Content-Encoding")) : response.body();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.body().close();
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package co.acu.pagetool.crx;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of request latencies with fixed buckets, from 10 ms to over 10 seconds.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class LatencyHistogram {
+
+    // Upper bounds of the buckets in milliseconds; the last bucket has no upper bound
+    private static final long[] BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final long[] counts = new long[BOUNDS.length + 1];
+    private long total = 0;
+
+    public synchronized void record(long latencyNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        total++;
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Get the upper bound of the bucket that contains the given percentile
+     * @param percentile The percentile, e.g. 95
+     * @return The latency in milliseconds, -1 if nothing was recorded, or {@link Long#MAX_VALUE} if the percentile
+     *         is in the last bucket
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Formats the non-empty buckets, e.g. <code>&lt;=25 ms: 40, &lt;=50 ms: 3</code>
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                sb.append(sb.length() > 0 ? ", " : "")
+                        .append(i < BOUNDS.length ? "<=" + BOUNDS[i] : ">" + BOUNDS[BOUNDS.length - 1])
+                        .append(" ms: ").append(counts[i]);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : "no requests";
+    }
+
+}
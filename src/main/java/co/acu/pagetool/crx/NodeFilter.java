@@ -0,0 +1,236 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.OperationProperties;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Decides on the client whether a node would be a hit of the query built by {@link QueryUrl} for the same
+ * operations, so that nodes found by other means (e.g. by crawling the tree) can be filtered the same way, and
+ * criteria that the query cannot serve from an index (see {@link QueryPlan}) can be applied to its hits. The node
+ * is given as its Sling JSON, including child nodes down to {@link #getPropertyDepth()}.
+ * <p>
+ * Each property criterion is compiled once into a condition: the property exists, any of its values equals a value
+ * (or one of several values), any of its values is <code>like</code> a pattern, or any of its values contains a match of a regular expression.
+ * Node names are matched as globs with <code>*</code> and <code>?</code> wildcards, as by <code>nodename</code>; a node
+ * must have any of the names. The property conditions must all match, or any of them with
+ * {@link OperationProperties#isMatchAny()}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class NodeFilter {
+
+    private static final String PRIMARY_TYPE = "jcr:primaryType";
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Pattern> nodeNames = new ArrayList<>();
+    private boolean matchAny = false;
+    private String type = null;
+    private int propertyDepth = 0;
+
+    /**
+     * Builds the filter with the same arguments as {@link QueryUrl#buildUrl(String, List, List, boolean, boolean, OperationProperties)}.
+     *
+     * @param properties          The properties to match
+     * @param nodes               The node names, any of which a node must have
+     * @param cqPageType          Whether to match page (content) nodes only
+     * @param isPropertyOperation Whether the operation works on the properties of page content nodes
+     * @param opProps             The operations, for the property copy filter and whether any property matches
+     */
+    public NodeFilter(List<Property> properties, List<String> nodes, boolean cqPageType, boolean isPropertyOperation, OperationProperties opProps) {
+        this.matchAny = opProps != null && opProps.isMatchAny();
+        boolean hasPropertyCopyFilter = false;
+        if (opProps != null && opProps.getCopyFromProperties() != null && !opProps.getCopyFromProperties().isEmpty()) {
+            String propName = opProps.getCopyFromProperties().get(0);
+            if (isPropertyOperation) {
+                addCondition(compile(new Property(propName, "")));
+            } else {
+                nodeNames.add(toGlobPattern(propName));
+            }
+            hasPropertyCopyFilter = true;
+        }
+
+        if (properties != null && !properties.isEmpty() && !hasPropertyCopyFilter) {
+            for (Property prop : properties) {
+                Condition condition = compile(prop);
+                if (condition != null) {
+                    addCondition(condition);
+                }
+            }
+            isPropertyOperation = true;
+        }
+
+        if (nodes != null) {
+            for (String node : nodes) {
+                nodeNames.add(toGlobPattern(node));
+            }
+        }
+        if (cqPageType) {
+            type = isPropertyOperation ? "cq:PageContent" : "cq:Page";
+        }
+    }
+
+    private void addCondition(Condition condition) {
+        conditions.add(condition);
+        propertyDepth = Math.max(propertyDepth, condition.names.length - 1);
+    }
+
+    /**
+     * Compiles a property criterion with the same meaning as in the query built by {@link QueryUrl}.
+     * @return The condition, or null if the criterion does not restrict the nodes
+     */
+    private static Condition compile(Property prop) {
+        String value = prop.getValue();
+        if (prop.isRegex()) {
+            Pattern regex = Pattern.compile(value);
+            return new Condition(prop.getName(), actual -> regex.matcher(actual).find());
+        }
+        if (prop.isMulti()) {
+            if (prop.getValues() == null || prop.getValues().length == 0) {
+                return null;
+            }
+            if (prop.isExactMatch()) {
+                List<String> values = List.of(prop.getValues());
+                return new Condition(prop.getName(), values::contains);
+            }
+            Pattern like = toLikePattern("%" + prop.getValues()[0] + "%");
+            return new Condition(prop.getName(), actual -> like.matcher(actual).matches());
+        }
+        if (value == null || value.isEmpty()) {
+            return new Condition(prop.getName(), null);
+        }
+        return new Condition(prop.getName(), value::equals);
+    }
+
+    /**
+     * Converts a glob, in which <code>*</code> and <code>?</code> are wildcards (e.g. a <code>nodename</code>), to a
+     * pattern
+     */
+    private static Pattern toGlobPattern(String name) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : name.split("((?<=[*?])|(?=[*?]))")) {
+            if (part.equals("*")) {
+                regex.append(".*");
+            } else if (part.equals("?")) {
+                regex.append('.');
+            } else if (!part.isEmpty()) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Converts a JCR <code>like</code> value, in which <code>%</code> and <code>_</code> are wildcards, to a pattern
+     */
+    private static Pattern toLikePattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : like.split("((?<=[%_])|(?=[%_]))")) {
+            if (part.equals("%")) {
+                regex.append(".*");
+            } else if (part.equals("_")) {
+                regex.append('.');
+            } else if (!part.isEmpty()) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Set whether a node matches if it matches any of the property conditions instead of all of them
+     * @param matchAny If true, combine the property conditions with OR
+     */
+    public void setMatchAny(boolean matchAny) {
+        this.matchAny = matchAny;
+    }
+
+    /**
+     * Get the node type that hits must have
+     * @return <code>cq:Page</code> or <code>cq:PageContent</code>, or null for any type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the number of child node levels needed to evaluate the properties of a node
+     * @return 0 if all properties are on the node itself
+     */
+    public int getPropertyDepth() {
+        return propertyDepth;
+    }
+
+    /**
+     * Checks whether a node matches all criteria of the query.
+     *
+     * @param name The name of the node
+     * @param node The JSON of the node, including its child nodes down to {@link #getPropertyDepth()}
+     * @return True if the node is a hit
+     */
+    public boolean matches(String name, JsonObject node) {
+        if (type != null && !type.equals(getString(node.get(PRIMARY_TYPE)))) {
+            return false;
+        }
+        if (!nodeNames.isEmpty() && nodeNames.stream().noneMatch(pattern -> pattern.matcher(name).matches())) {
+            return false;
+        }
+        if (matchAny && !conditions.isEmpty()) {
+            return conditions.stream().anyMatch(condition -> condition.matches(node));
+        }
+        return conditions.stream().allMatch(condition -> condition.matches(node));
+    }
+
+    private static String getString(JsonElement value) {
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    /**
+     * A single property condition: the property exists and, unless only its existence is checked, any of its values
+     * matches.
+     */
+    private static class Condition {
+
+        private final String[] names;
+        private final Predicate<String> value;
+
+        Condition(String name, Predicate<String> value) {
+            this.names = name.split("/");
+            this.value = value;
+        }
+
+        boolean matches(JsonObject node) {
+            for (int i = 0; i < names.length - 1; i++) {
+                JsonElement child = node.get(names[i]);
+                if (child == null || !child.isJsonObject()) {
+                    return false;
+                }
+                node = child.getAsJsonObject();
+            }
+            JsonElement property = node.get(names[names.length - 1]);
+            if (property == null || property.isJsonNull() || property.isJsonObject()) {
+                return false;
+            }
+            if (value == null) {
+                return true;
+            }
+            if (property.isJsonArray()) {
+                for (JsonElement element : property.getAsJsonArray()) {
+                    String actual = getString(element);
+                    if (actual != null && value.test(actual)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return value.test(property.getAsString());
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+package co.acu.pagetool.crx;
+
+import com.google.gson.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least-recently-used cache of node snapshots, i.e. the parsed JSON of a node fetched with the depth
+ * needed to read all of its requested properties. Each {@link SlingClient} has its own cache, while the hit and
+ * miss counters are shared by all workers of a run.
+ * <p>
+ * Instances are not thread-safe; use {@link #newWorker()} to create a cache for another worker.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class NodeSnapshotCache {
+
+    private final int capacity;
+    private final Map<String, Snapshot> snapshots;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * @param capacity The maximum number of nodes to keep
+     */
+    public NodeSnapshotCache(int capacity) {
+        this(capacity, new AtomicLong(), new AtomicLong());
+    }
+
+    private NodeSnapshotCache(int capacity, AtomicLong hits, AtomicLong misses) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Snapshot cache capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > NodeSnapshotCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates an empty cache with the same capacity for another worker, sharing the hit and miss counters.
+     * @return The new cache
+     */
+    public NodeSnapshotCache newWorker() {
+        return new NodeSnapshotCache(capacity, hits, misses);
+    }
+
+    /**
+     * Get the snapshot of a node, if it was fetched with at least the given depth. Every call is counted as a hit
+     * or a miss.
+     * @param path  The path of the node
+     * @param depth The depth of the property to read
+     * @return The snapshot, or null if it has to be fetched
+     */
+    public JsonObject get(String path, int depth) {
+        Snapshot snapshot = snapshots.get(path);
+        if (snapshot != null && snapshot.depth >= depth) {
+            hits.incrementAndGet();
+            return snapshot.node;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String path, int depth, JsonObject node) {
+        snapshots.put(path, new Snapshot(depth, node));
+    }
+
+    /**
+     * Removes the snapshot of a node, e.g. after the node has been changed
+     * @param path The path of the node
+     */
+    public void remove(String path) {
+        snapshots.remove(path);
+    }
+
+    public int size() {
+        return snapshots.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Snapshot {
+
+        private final int depth;
+        private final JsonObject node;
+
+        Snapshot(int depth, JsonObject node) {
+            this.depth = depth;
+            this.node = node;
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes to several pages which are committed with a single Sling POST to their nearest common ancestor.
+ * The parameter names of each page are prefixed with the path of its node relative to the ancestor, e.g.
+ * <code>child/jcr:content/prop</code>.
+ * <p>
+ * A batch is limited by the size of the form body and the number of parameters, so that it stays within the
+ * default form limits of the servlet container (Jetty: 200000 bytes and 1000 keys).
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class PageBatch {
+
+    public static final int DEFAULT_MAX_BYTES = 200000;
+    public static final int DEFAULT_MAX_PARAMETERS = 1000;
+
+    private final int maxBytes;
+    private final int maxParameters;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String commonAncestor = null;
+    private int bytes = 0;
+    private int parameters = 0;
+    // Sum of the encoded target path length of each parameter, used to recalculate the prefixes of the ancestor
+    private long targetBytes = 0;
+
+    public PageBatch() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_PARAMETERS);
+    }
+
+    /**
+     * @param maxBytes      Maximum size of the encoded form body
+     * @param maxParameters Maximum number of form parameters
+     */
+    public PageBatch(int maxBytes, int maxParameters) {
+        this.maxBytes = maxBytes;
+        this.maxParameters = maxParameters;
+    }
+
+    /**
+     * Check whether the changes of a page can be added without exceeding the budget of the batch.
+     * An empty batch always accepts a page, so that a single large page is still committed on its own.
+     *
+     * @param pagePath   The path of the page
+     * @param targetPath The path of the node the changes are applied to
+     * @param mutation   The changes
+     * @return True if the page can be added
+     */
+    public boolean fits(String pagePath, String targetPath, PageMutation mutation) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        if (entries.containsKey(pagePath)) {
+            return false;
+        }
+        List<NameValuePair> params = mutation.getParameters();
+        String ancestor = getCommonAncestor(commonAncestor, targetPath);
+        long size = bytes + countBytes(params)
+                + targetBytes + (long) params.size() * encodedLength(targetPath)
+                - (long) (parameters + params.size()) * encodedLength(ancestor);
+        return parameters + params.size() < maxParameters && size <= maxBytes;
+    }
+
+    /**
+     * Add the changes of a page to the batch
+     * @param pagePath   The path of the page
+     * @param targetPath The path of the node the changes are applied to
+     * @param mutation   The changes
+     */
+    public void add(String pagePath, String targetPath, PageMutation mutation) {
+        List<NameValuePair> params = mutation.getParameters();
+        entries.put(pagePath, new Entry(targetPath, mutation));
+        commonAncestor = commonAncestor == null ? targetPath : getCommonAncestor(commonAncestor, targetPath);
+        bytes += countBytes(params);
+        parameters += params.size();
+        targetBytes += (long) params.size() * encodedLength(targetPath);
+    }
+
+    /**
+     * Creates a batch with the same budget and all pages except the given one
+     * @param pagePath The page to leave out
+     * @return The remaining pages
+     */
+    public PageBatch without(String pagePath) {
+        PageBatch batch = new PageBatch(maxBytes, maxParameters);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!entry.getKey().equals(pagePath)) {
+                batch.add(entry.getKey(), entry.getValue().targetPath, entry.getValue().mutation);
+            }
+        }
+        return batch;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public List<String> getPagePaths() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public PageMutation getMutation(String pagePath) {
+        Entry entry = entries.get(pagePath);
+        return entry != null ? entry.mutation : null;
+    }
+
+    /**
+     * Get the deepest node that contains the target nodes of all pages
+     * @return The path of the common ancestor, or null if the batch is empty
+     */
+    public String getCommonAncestor() {
+        return commonAncestor;
+    }
+
+    /**
+     * Get the parameters of all pages, relative to the common ancestor
+     * @return The Sling POST parameters
+     */
+    public List<NameValuePair> getParameters() {
+        List<NameValuePair> params = new ArrayList<>(parameters);
+        for (Entry entry : entries.values()) {
+            String prefix = getRelativePath(commonAncestor, entry.targetPath);
+            for (NameValuePair param : entry.mutation.getParameters()) {
+                params.add(prefix.isEmpty() ? param : new BasicNameValuePair(prefix + "/" + param.getName(), param.getValue()));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Find the page that a message (e.g. the error of a failed request) refers to. If the message contains the
+     * target node of several pages, the most specific one is returned.
+     *
+     * @param message The message to search
+     * @return The path of the page, or null if the message does not contain the target node of any page
+     */
+    public String findPage(String message) {
+        if (message == null) {
+            return null;
+        }
+        String found = null;
+        int foundLength = -1;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String target = entry.getValue().targetPath;
+            if (target.length() > foundLength && containsPath(message, target)) {
+                found = entry.getKey();
+                foundLength = target.length();
+            }
+        }
+        return found;
+    }
+
+    private static boolean containsPath(String message, String path) {
+        int index = message.indexOf(path);
+        while (index >= 0) {
+            int end = index + path.length();
+            if (end == message.length() || !isPathChar(message.charAt(end)) || message.charAt(end) == '/') {
+                return true;
+            }
+            index = message.indexOf(path, index + 1);
+        }
+        return false;
+    }
+
+    private static boolean isPathChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '/' || c == '-' || c == '_' || c == ':';
+    }
+
+    static String getCommonAncestor(String path1, String path2) {
+        String ancestor = path1;
+        while (!path2.equals(ancestor) && !path2.startsWith(ancestor.equals("/") ? "/" : ancestor + "/")) {
+            int index = ancestor.lastIndexOf('/');
+            ancestor = index > 0 ? ancestor.substring(0, index) : "/";
+        }
+        return ancestor;
+    }
+
+    private static String getRelativePath(String ancestor, String path) {
+        if (path.equals(ancestor)) {
+            return "";
+        }
+        return path.substring(ancestor.equals("/") ? 1 : ancestor.length() + 1);
+    }
+
+    private static int countBytes(List<NameValuePair> params) {
+        int count = 0;
+        for (NameValuePair param : params) {
+            // name=value&
+            count += encodedLength(param.getName()) + encodedLength(param.getValue()) + 2;
+        }
+        return count;
+    }
+
+    private static int encodedLength(String value) {
+        return value == null ? 0 : URLEncoder.encode(value, StandardCharsets.UTF_8).length();
+    }
+
+    private static class Entry {
+
+        private final String targetPath;
+        private final PageMutation mutation;
+
+        Entry(String targetPath, PageMutation mutation) {
+            this.targetPath = targetPath;
+            this.mutation = mutation;
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.sling.servlets.post.SlingPostConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Sling POST parameters of all changes to a single node, so that they can be committed in one request.
+ * Names are relative to the node and may contain a path to a descendant (e.g. <code>par/subpar/prop</code>).
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class PageMutation {
+
+    private final List<NameValuePair> deletes = new ArrayList<>();
+    private final List<NameValuePair> updates = new ArrayList<>();
+
+    /**
+     * Delete a property. Deletions are always sent before updates, so a property can be deleted and set again.
+     * @param name The property name
+     */
+    public void delete(String name) {
+        deletes.add(new BasicNameValuePair(name + SlingPostConstants.SUFFIX_DELETE, "true"));
+    }
+
+    /**
+     * Set a single-value property
+     * @param name  The property name
+     * @param value The new value
+     */
+    public void set(String name, String value) {
+        updates.add(new BasicNameValuePair(name, value));
+    }
+
+    /**
+     * Set a multi-value String property
+     * @param name   The property name
+     * @param values The new values
+     */
+    public void setMulti(String name, String... values) {
+        updates.add(new BasicNameValuePair(name + SlingPostConstants.TYPE_HINT_SUFFIX, "String[]"));
+        for (String value : values) {
+            updates.add(new BasicNameValuePair(name, value));
+        }
+    }
+
+    /**
+     * Create a child node (or change the type of an existing one)
+     * @param name        The node name
+     * @param primaryType The jcr:primaryType of the node
+     */
+    public void createNode(String name, String primaryType) {
+        updates.add(new BasicNameValuePair(name + "/jcr:primaryType", primaryType));
+    }
+
+    public boolean isEmpty() {
+        return deletes.isEmpty() && updates.isEmpty();
+    }
+
+    /**
+     * Get the request parameters with all deletions first
+     * @return The Sling POST parameters
+     */
+    public List<NameValuePair> getParameters() {
+        List<NameValuePair> params = new ArrayList<>(deletes);
+        params.addAll(updates);
+        return params;
+    }
+
+}
@@ -0,0 +1,194 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.ResultPage;
+import co.acu.pagetool.result.ResultSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over all hits of a query by fetching it in <code>p.offset</code>/<code>p.limit</code> windows sorted by
+ * path. While the hits of one window are being processed, the next window is already fetched in the background.
+ * <p>
+ * If the operations change whether a node matches the query (e.g. deleting the queried property), the windows would
+ * shift while they are being processed. In that case all windows are fetched before the first hit is returned.
+ * <p>
+ * Errors while fetching a window are thrown as {@link UncheckedIOException}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class PagedQuery implements HitIterator {
+
+    private final SlingClient fetchClient;
+    private final String path;
+    private final QueryUrl.PathScope scope;
+    private final int pageSize;
+    private final ExecutorService prefetcher;
+
+    private Iterator<ResultPage> current;
+    private Set<String> previousPaths = Collections.emptySet();
+    private Set<String> currentPaths = Collections.emptySet();
+    private Future<ResultSet> next = null;
+    private int offset = 0;
+    private ResultPage lookahead = null;
+
+    /**
+     * Fetches the first window of the query and starts fetching the next one.
+     *
+     * @param slingClient  The client used to fetch the first window; the remaining windows are fetched by a worker
+     * @param path         The root path of the query
+     * @param pageSize     The number of hits per window
+     * @param fetchAll     If true, fetch all windows before returning the first hit
+     * @throws IOException If the first window cannot be fetched
+     */
+    public PagedQuery(SlingClient slingClient, String path, int pageSize, boolean fetchAll) throws IOException {
+        this(slingClient, path, QueryUrl.PathScope.SUBTREE, pageSize, fetchAll);
+    }
+
+    /**
+     * Fetches the first window of a query over part of the nodes below the path and starts fetching the next one.
+     *
+     * @param slingClient  The client used to fetch the first window; the remaining windows are fetched by a worker
+     * @param path         The root path of the query
+     * @param scope        The nodes below the path to search
+     * @param pageSize     The number of hits per window
+     * @param fetchAll     If true, fetch all windows before returning the first hit
+     * @throws IOException If the first window cannot be fetched
+     */
+    public PagedQuery(SlingClient slingClient, String path, QueryUrl.PathScope scope, int pageSize, boolean fetchAll) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        this.path = path;
+        this.scope = scope;
+        this.pageSize = pageSize;
+
+        // The first window is fetched by the calling client, so that its URL builder knows the query settings
+        ResultSet first = slingClient.queryWindow(path, scope, 0);
+        try {
+            this.fetchClient = slingClient.newWorker();
+        } catch (SlingClientException e) {
+            throw new IOException("Unable to create query client", e);
+        }
+
+        if (fetchAll) {
+            this.prefetcher = null;
+            this.current = fetchAll(first).iterator();
+        } else {
+            this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "query-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+            this.current = startWindow(first);
+        }
+    }
+
+    private List<ResultPage> fetchAll(ResultSet first) throws IOException {
+        Map<String, ResultPage> hits = new LinkedHashMap<>();
+        ResultSet window = first;
+        while (true) {
+            List<ResultPage> windowHits = getHits(window);
+            for (ResultPage hit : windowHits) {
+                if (hit.getJcrPath() != null) {
+                    hits.putIfAbsent(hit.getJcrPath(), hit);
+                }
+            }
+            if (windowHits.size() < pageSize) {
+                break;
+            }
+            offset += pageSize;
+            window = fetchClient.queryWindow(path, scope, offset);
+        }
+
+        return new ArrayList<>(hits.values());
+    }
+
+    /**
+     * Makes the given window the current one and, if it was full, starts fetching the next window.
+     */
+    private Iterator<ResultPage> startWindow(ResultSet window) {
+        List<ResultPage> hits = getHits(window);
+        previousPaths = currentPaths;
+        currentPaths = new HashSet<>();
+        for (ResultPage hit : hits) {
+            currentPaths.add(hit.getJcrPath());
+        }
+        if (hits.size() < pageSize) {
+            next = null;
+        } else {
+            offset += pageSize;
+            int nextOffset = offset;
+            next = prefetcher.submit(() -> fetchClient.queryWindow(path, scope, nextOffset));
+        }
+
+        return hits.iterator();
+    }
+
+    private static List<ResultPage> getHits(ResultSet window) {
+        return window.getHits() != null ? window.getHits() : Collections.emptyList();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (lookahead == null) {
+            if (current.hasNext()) {
+                ResultPage hit = current.next();
+                // Skip hits that moved into this window because nodes were added before it
+                if (hit.getJcrPath() != null && !previousPaths.contains(hit.getJcrPath())) {
+                    lookahead = hit;
+                }
+            } else if (next != null) {
+                current = startWindow(awaitNext());
+            } else {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private ResultSet awaitNext() {
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while fetching query results", e));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new UncheckedIOException(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+        }
+    }
+
+    @Override
+    public ResultPage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ResultPage hit = lookahead;
+        lookahead = null;
+        return hit;
+    }
+
+    @Override
+    public void close() {
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultPage;
+import co.acu.pagetool.util.Output;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Iterates over all hits of a query by splitting the tree below the query path into partitions that are queried
+ * concurrently, so that a huge tree is searched by several smaller queries on the server and read in parallel.
+ * <p>
+ * The nodes at the partition depth below the root (e.g. the children of the root for depth 1) are listed with
+ * <code>.1.json</code> requests, and the query is run once for each of them with <code>path.self=true</code>. Nodes
+ * above the partition depth are found with <code>path.flat=true</code> queries of their parents, so that together
+ * the partitions return the same hits as a single query of the root. Hits are returned in the order in which the
+ * partitions deliver them, and each path is returned only once.
+ * <p>
+ * A query limited in depth (see {@link #limitedTo(int, boolean, SlingClient, String, int, int, boolean)}) does not
+ * search any subtree: each node above the limit is queried with <code>path.flat=true</code>, so that nothing below
+ * the limit is searched.
+ * <p>
+ * Errors while listing or querying a partition are thrown as {@link UncheckedIOException}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class PartitionedQuery implements HitIterator {
+
+    private static final int QUEUE_CAPACITY = 1000;
+    // Marks the end of the hits in the queue
+    private static final ResultPage END = new ResultPage();
+
+    private final int depth;
+    private final boolean limited;
+    private final boolean pageContent;
+    private final int pageSize;
+    private final boolean fetchAll;
+    private final ExecutorService executor;
+    private final BlockingQueue<SlingClient> idleClients;
+    private final BlockingQueue<ResultPage> hits = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger partitionCount = new AtomicInteger();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final Set<String> returnedPaths = new HashSet<>();
+
+    private ResultPage lookahead = null;
+    private boolean done = false;
+
+    /**
+     * Starts listing the partitions and querying them in the background.
+     *
+     * @param slingClient The client from which the query clients are created
+     * @param path        The root path of the query
+     * @param depth       The number of levels below the root at which the tree is partitioned
+     * @param threads     The number of partitions that are listed and queried concurrently
+     * @param pageSize    The number of hits per query window, or 0 to query each partition with a single request
+     * @param fetchAll    If true, fetch all windows of a partition before returning its hits (see {@link PagedQuery})
+     * @throws IOException If the query clients cannot be created
+     */
+    public PartitionedQuery(SlingClient slingClient, String path, int depth, int threads, int pageSize, boolean fetchAll) throws IOException {
+        this(slingClient, path, depth, false, false, threads, pageSize, fetchAll);
+    }
+
+    /**
+     * Starts querying the nodes at most a number of levels below the root in the background. The nodes above the
+     * limit are listed with <code>.1.json</code> requests and their children are queried with
+     * <code>path.flat=true</code>.
+     *
+     * @param maxDepth    The number of levels below the root
+     * @param pageContent If true, the hits are the <code>jcr:content</code> nodes of the pages at most maxDepth levels
+     *                    below the root, which are found by querying the child pages of each node (see
+     *                    {@link QueryUrl.PathScope#CHILD_PAGE_CONTENT}) and the root page itself
+     * @see #PartitionedQuery(SlingClient, String, int, int, int, boolean)
+     */
+    public static PartitionedQuery limitedTo(int maxDepth, boolean pageContent, SlingClient slingClient, String path, int threads, int pageSize, boolean fetchAll) throws IOException {
+        return new PartitionedQuery(slingClient, path, maxDepth, true, pageContent, threads, pageSize, fetchAll);
+    }
+
+    private PartitionedQuery(SlingClient slingClient, String path, int depth, boolean limited, boolean pageContent, int threads, int pageSize, boolean fetchAll) throws IOException {
+        if (depth < 1) {
+            throw new IllegalArgumentException((limited ? "Maximum" : "Partition") + " depth must be greater than 0");
+        }
+        this.depth = depth;
+        this.limited = limited;
+        this.pageContent = pageContent;
+        this.pageSize = pageSize;
+        this.fetchAll = fetchAll;
+        int workers = Math.max(threads, 1);
+        this.idleClients = new ArrayBlockingQueue<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                idleClients.add(slingClient.newWorker());
+            }
+        } catch (SlingClientException e) {
+            throw new IOException("Unable to create query clients", e);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "query-partition-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        submit(path, 0);
+    }
+
+    /**
+     * Queues the work for a node of the tree: a node at the partition depth is queried with its subtree, a node
+     * above it is listed, and the direct children of the node are queried unless they are partitions themselves.
+     */
+    private void submit(String path, int level) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    SlingClient client = idleClients.take();
+                    try {
+                        if (limited) {
+                            queryLevel(client, path, level);
+                        } else if (level == depth) {
+                            partitionCount.incrementAndGet();
+                            query(client, path, QueryUrl.PathScope.SELF_AND_SUBTREE);
+                        } else {
+                            for (String child : client.getChildPaths(path)) {
+                                submit(child, level + 1);
+                            }
+                            if (level < depth - 1) {
+                                query(client, path, QueryUrl.PathScope.CHILDREN);
+                            }
+                        }
+                    } finally {
+                        idleClients.add(client);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    fail(e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finish();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed or failed; the remaining partitions are not needed
+            finish();
+        }
+    }
+
+    /**
+     * Queues the children of a node above the last level of a query limited in depth and queries the children of
+     * the node, or the content nodes of its child pages.
+     */
+    private void queryLevel(SlingClient client, String path, int level) throws IOException, InterruptedException {
+        if (level < depth - 1) {
+            for (String child : client.getChildPaths(path)) {
+                // A content node does not contain pages
+                if (!pageContent || !child.endsWith("/jcr:content")) {
+                    submit(child, level + 1);
+                }
+            }
+        }
+        if (level == 0 && pageContent) {
+            // The content node of the root page is its only child of the page content type
+            query(client, path, QueryUrl.PathScope.CHILDREN);
+        }
+        query(client, path, pageContent ? QueryUrl.PathScope.CHILD_PAGE_CONTENT : QueryUrl.PathScope.CHILDREN);
+    }
+
+    private void query(SlingClient client, String path, QueryUrl.PathScope scope) throws IOException, InterruptedException {
+        int count = 0;
+        if (pageSize > 0) {
+            try (PagedQuery query = new PagedQuery(client, path, scope, pageSize, fetchAll)) {
+                while (query.hasNext()) {
+                    hits.put(toHit(query.next(), scope));
+                    count++;
+                }
+            }
+        } else {
+            try (QueryResultReader query = client.streamQuery(path, scope)) {
+                while (query.hasNext()) {
+                    hits.put(toHit(query.next(), scope));
+                    count++;
+                }
+                if (query.getResultSet().getTotal() > query.getCount()) {
+                    Output.hl("Query of " + path + " returned " + query.getCount() + " of " + query.getResultSet().getTotal()
+                            + " hits; use --page-size to fetch all results.");
+                }
+            }
+        }
+        if (PageToolApp.verbose) {
+            Output.info("Partition " + path + (scope == QueryUrl.PathScope.SELF_AND_SUBTREE ? "" : " (direct children)") + ": " + count + " hits");
+        }
+    }
+
+    /**
+     * Get the hit for the configured query from a hit of a scope: a page found for the content nodes of the child
+     * pages stands for its content node, with the properties selected below it.
+     */
+    private static ResultPage toHit(ResultPage hit, QueryUrl.PathScope scope) {
+        if (scope != QueryUrl.PathScope.CHILD_PAGE_CONTENT || hit.getJcrPath() == null) {
+            return hit;
+        }
+        ResultPage content = new ResultPage();
+        content.setJcrPath(hit.getJcrPath() + "/jcr:content");
+        JsonElement node = hit.getProperties() != null ? hit.getProperties().get("jcr:content") : null;
+        if (node != null && node.isJsonObject()) {
+            JsonObject properties = node.getAsJsonObject().deepCopy();
+            properties.addProperty("jcr:path", content.getJcrPath());
+            content.setProperties(properties);
+        }
+        return content;
+    }
+
+    private void fail(IOException e) {
+        if (failure.compareAndSet(null, e)) {
+            executor.shutdownNow();
+            hits.clear();
+            hits.offer(END);
+        }
+    }
+
+    private void finish() {
+        if (pending.decrementAndGet() == 0) {
+            executor.shutdown();
+            try {
+                hits.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the number of partitions that were queried with their subtree
+     * @return The number of partitions so far
+     */
+    public int getPartitionCount() {
+        return partitionCount.get();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (lookahead == null && !done) {
+            ResultPage hit;
+            try {
+                hit = hits.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while querying partitions", e));
+            }
+            if (failure.get() != null) {
+                done = true;
+                throw new UncheckedIOException(failure.get());
+            }
+            if (hit == END) {
+                done = true;
+            } else if (hit.getJcrPath() != null && returnedPaths.add(hit.getJcrPath())) {
+                lookahead = hit;
+            }
+        }
+
+        return lookahead != null;
+    }
+
+    @Override
+    public ResultPage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ResultPage hit = lookahead;
+        lookahead = null;
+        return hit;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
@@ -2,6 +2,9 @@ package co.acu.pagetool.crx;
 
 import co.acu.pagetool.exception.InvalidPropertyException;
 
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
  * Simple representation of a node property
  * @author Greg Kaczmarczyk
@@ -12,11 +15,29 @@ public class Property {
     private String value;
     private String[] values;
     private boolean isMulti = false;
+    private boolean isRegex = false;
+    private boolean isExactMatch = false;
 
     public static Property getProperty(String keyVal) throws InvalidPropertyException {
         if (keyVal == null || keyVal.trim().isEmpty()) {
             return null;
         }
+        int regexIndex = keyVal.indexOf('=') - 1;
+        if (regexIndex >= 0 && keyVal.charAt(regexIndex) == '~') { // Handle regular expressions: property~=regex
+            String name = keyVal.substring(0, regexIndex).trim();
+            String regex = keyVal.substring(regexIndex + 2).trim();
+            if (name.isEmpty()) {
+                throw new InvalidPropertyException("Property name cannot be empty: " + keyVal);
+            }
+            try {
+                Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new InvalidPropertyException("Invalid regular expression: " + keyVal + " (" + e.getDescription() + ")");
+            }
+            Property property = new Property(name, regex);
+            property.setRegex(true);
+            return property;
+        }
         int lastEqualsIndex = keyVal.lastIndexOf('=');
         if (lastEqualsIndex == -1) {
             throw new InvalidPropertyException("Property must contain '=': " + keyVal);
@@ -83,4 +104,31 @@ public class Property {
         this.isMulti = isMulti;
     }
 
+    /**
+     * Get whether the value is a regular expression that the value of a node must contain a match of
+     * (<code>property~=regex</code>). Regular expressions are only evaluated by the tool, not by the query.
+     * @return True if the value is a regular expression
+     */
+    public boolean isRegex() {
+        return isRegex;
+    }
+
+    public void setRegex(boolean isRegex) {
+        this.isRegex = isRegex;
+    }
+
+    /**
+     * Get whether the values are matched exactly, i.e. any value of the node equals one of them, instead of the
+     * node containing the first value as a substring (<code>like %value%</code>). Exact matches can use a property
+     * index.
+     * @return True if the values are matched exactly
+     */
+    public boolean isExactMatch() {
+        return isExactMatch;
+    }
+
+    public void setExactMatch(boolean isExactMatch) {
+        this.isExactMatch = isExactMatch;
+    }
+
 }
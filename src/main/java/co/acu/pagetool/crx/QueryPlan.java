@@ -0,0 +1,114 @@
+package co.acu.pagetool.crx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the property criteria of a query into those sent to the query builder and those evaluated by the tool on
+ * the hits of the query (with a {@link NodeFilter}). Criteria that Oak can serve from a property index (a property
+ * exists or equals a value) are always sent. Regular expressions cannot be expressed in a query and are always
+ * evaluated locally. <code>like</code> matches of multiple values make Oak traverse the tree and are evaluated
+ * locally if requested, so that a slow traversing query becomes an indexed query plus a cheap filter.
+ * <p>
+ * The properties evaluated locally are selected as hit properties, so that no further request is needed.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class QueryPlan {
+
+    private final List<Property> serverProperties;
+    private final List<Property> localProperties = new ArrayList<>();
+    private final boolean matchAny;
+
+    /**
+     * @param properties The property criteria of the query, or null
+     * @param localMatch If true, also evaluate criteria locally that cannot use an index
+     */
+    public QueryPlan(List<Property> properties, boolean localMatch) {
+        this(properties, localMatch, false);
+    }
+
+    /**
+     * @param properties The property criteria of the query, or null
+     * @param localMatch If true, also evaluate criteria locally that cannot use an index
+     * @param matchAny   If true, a node matches if it matches any criterion; the criteria cannot be split between
+     *                   the query and the tool then, so all are evaluated locally if one of them must be
+     */
+    public QueryPlan(List<Property> properties, boolean localMatch, boolean matchAny) {
+        this.matchAny = matchAny;
+        if (properties == null) {
+            serverProperties = null;
+            return;
+        }
+        serverProperties = new ArrayList<>();
+        for (Property prop : properties) {
+            if (prop.isRegex() || (localMatch && !isIndexFriendly(prop))) {
+                localProperties.add(prop);
+            } else {
+                serverProperties.add(prop);
+            }
+        }
+        if (matchAny && !localProperties.isEmpty()) {
+            localProperties.clear();
+            localProperties.addAll(properties);
+            serverProperties.clear();
+        }
+    }
+
+    /**
+     * Check whether Oak can serve a criterion of the query from a property index
+     * @param prop The criterion
+     * @return True for an existence check or exact values, false for a <code>like</code> match or a regular
+     * expression
+     */
+    public static boolean isIndexFriendly(Property prop) {
+        return !prop.isRegex() && (!prop.isMulti() || prop.isExactMatch());
+    }
+
+    /**
+     * Get the criteria that are sent to the query builder
+     * @return The criteria, or null if the query has no property criteria
+     */
+    public List<Property> getServerProperties() {
+        return serverProperties;
+    }
+
+    /**
+     * Get the criteria that are evaluated on the hits of the query
+     * @return The criteria, empty if all are sent to the query builder
+     */
+    public List<Property> getLocalProperties() {
+        return Collections.unmodifiableList(localProperties);
+    }
+
+    public boolean hasLocalProperties() {
+        return !localProperties.isEmpty();
+    }
+
+    /**
+     * Get the names of the properties evaluated locally, which must be selected as hit properties
+     * @return The property names, which may be paths relative to the hit
+     */
+    public List<String> getLocalPropertyNames() {
+        List<String> names = new ArrayList<>();
+        for (Property prop : localProperties) {
+            names.add(prop.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Creates the filter that applies the local criteria to the hits of the query
+     * @return The filter, or null if all criteria are sent to the query builder
+     */
+    public NodeFilter createLocalFilter() {
+        if (!hasLocalProperties()) {
+            return null;
+        }
+        NodeFilter filter = new NodeFilter(localProperties, null, false, false, null);
+        filter.setMatchAny(matchAny);
+        return filter;
+    }
+
+}
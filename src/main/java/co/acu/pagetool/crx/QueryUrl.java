@@ -6,8 +6,11 @@ import co.acu.pagetool.util.Output;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Utility class for constructing URLs for Sling API queries and updates in AEM.
@@ -17,17 +20,38 @@ import java.util.Objects;
 public class QueryUrl {
 
     private static final String QUERY_PATH = "/bin/querybuilder.json";
+    private static final String EXPLAIN_PATH = "/libs/granite/operations/content/diagnosistools/queryPerformance.explain.json";
     private static final int DEFAULT_LIMIT = 1000;
     private static final int DEFAULT_NODE_DEPTH = 10;
     private static final String DEFAULT_HITS_TYPE = "selective";
     private static final String DEFAULT_HITS_PROPERTIES = "jcr:path";
 
+    /**
+     * The nodes below the query path that a query searches.
+     */
+    public enum PathScope {
+        /** All descendants of the path (the querybuilder default) */
+        SUBTREE,
+        /** The node at the path and all its descendants (<code>path.self=true</code>) */
+        SELF_AND_SUBTREE,
+        /** The direct children of the path only (<code>path.flat=true</code>) */
+        CHILDREN,
+        /**
+         * The <code>jcr:content</code> nodes of the direct child pages of the path: the child pages are queried with
+         * <code>path.flat=true</code> and the criteria relative to their content node, so the hits are the pages
+         */
+        CHILD_PAGE_CONTENT
+    }
+
     private final CrxConnection conn;
     private final int limit;
     private final int nodeDepth;
     private final String hitsType;
     private final String hitsProperties;
     private boolean isCqPageType;
+    private int pageSize = 0;
+    private List<String> filterProperties = null;
+    private boolean guessTotal = false;
 
     public QueryUrl(CrxConnection conn) {
         this.conn = Objects.requireNonNull(conn, "CrxConnection must not be null");
@@ -38,6 +62,52 @@ public class QueryUrl {
         this.isCqPageType = false;
     }
 
+    /**
+     * Creates a copy of this URL builder, including the page type of the last built query, so that it can be used
+     * by another thread.
+     * @return A new URL builder with the same settings
+     */
+    public QueryUrl copy() {
+        QueryUrl copy = new QueryUrl(conn);
+        copy.isCqPageType = isCqPageType;
+        copy.pageSize = pageSize;
+        copy.filterProperties = filterProperties;
+        copy.guessTotal = guessTotal;
+        return copy;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Set the number of hits per query window. If greater than 0, queries are sorted by path and fetched with
+     * <code>p.offset</code>/<code>p.limit</code> windows of this size instead of a single query limited to
+     * {@value #DEFAULT_LIMIT} hits.
+     * @param pageSize The number of hits per window, or 0 to disable paging
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Set the properties that are evaluated by the tool on the hits of a query (see {@link QueryPlan}), so that they
+     * are selected as hit properties in addition to those read by the operations.
+     * @param filterProperties The property names, which may be paths relative to the hit, or null
+     */
+    public void setFilterProperties(List<String> filterProperties) {
+        this.filterProperties = filterProperties;
+    }
+
+    /**
+     * Set whether queries only estimate the total number of hits (<code>p.guessTotal=true</code>), so that Oak stops
+     * reading hits after the requested ones instead of counting all of them.
+     * @param guessTotal If true, the total of a query result is a lower bound
+     */
+    public void setGuessTotal(boolean guessTotal) {
+        this.guessTotal = guessTotal;
+    }
+
     private StringBuilder buildBaseUrl() {
         return new StringBuilder()
                 .append(conn.isSecure() ? SlingClient.SCHEME_SECURE : SlingClient.SCHEME)
@@ -47,14 +117,31 @@ public class QueryUrl {
                 .append(conn.getPort());
     }
 
-    private StringBuilder buildQueryParameters(String path, List<Property> properties, List<String> nodes, boolean isPropertyCopy, OperationProperties opProps) {
+    private StringBuilder buildQueryParameters(String path, PathScope scope, List<Property> properties, List<String> nodes, boolean isPropertyCopy, OperationProperties opProps, int offset, int countLimit) {
         StringBuilder sb = new StringBuilder()
                 .append(QUERY_PATH)
-                .append("?path=").append(path)
-                .append("&p.limit=").append(limit)
-                .append("&p.hits=").append(hitsType)
-                .append("&p.properties=").append(hitsProperties)
-                .append("&p.nodedepth=").append(nodeDepth);
+                .append("?path=").append(path);
+        if (scope == PathScope.SELF_AND_SUBTREE) {
+            sb.append("&path.self=true");
+        } else if (scope == PathScope.CHILDREN || scope == PathScope.CHILD_PAGE_CONTENT) {
+            sb.append("&path.flat=true");
+        }
+        String contentPrefix = scope == PathScope.CHILD_PAGE_CONTENT ? "jcr:content/" : "";
+        if (countLimit > 0) {
+            sb.append("&p.limit=0&p.guessTotal=").append(countLimit);
+        } else {
+            sb.append("&p.limit=").append(pageSize > 0 ? pageSize : limit);
+            if (pageSize > 0) {
+                sb.append("&p.offset=").append(offset)
+                        .append("&orderby=path");
+            }
+            if (guessTotal) {
+                sb.append("&p.guessTotal=true");
+            }
+        }
+        sb.append("&p.hits=").append(hitsType)
+                .append("&p.properties=").append(hitsProperties);
+        appendReadProperties(sb, opProps, contentPrefix);
 
         boolean hasPropertyCopyFilter = false;
         boolean isPropertyOperation = false;
@@ -63,7 +150,7 @@ public class QueryUrl {
         if (opProps != null && opProps.getCopyFromProperties() != null && !opProps.getCopyFromProperties().isEmpty()) {
             String propName = opProps.getCopyFromProperties().get(0);
             if (isPropertyCopy) {
-                sb.append("&property=").append(propName)
+                sb.append("&property=").append(contentPrefix).append(propName)
                         .append("&property.operation=exists");
                 hasPropertyCopyFilter = true;
                 isPropertyOperation = true;
@@ -80,12 +167,21 @@ public class QueryUrl {
             }
         }
 
+        // several node names, or properties of which any must match, are OR-combined in a group
+        boolean groupNodes = nodes != null && nodes.size() > 1;
+        boolean groupProperties = opProps != null && opProps.isMatchAny() && properties != null && properties.size() > 1 && !hasPropertyCopyFilter;
+        String propertyPrefix = groupProperties ? (groupNodes ? "1_group." : "group.") : "";
+        String nodePrefix = groupNodes ? (groupProperties ? "2_group." : "group.") : "";
+
         // match properties for search/update operations
         if (properties != null && !properties.isEmpty() && !hasPropertyCopyFilter) {
+            if (groupProperties) {
+                sb.append('&').append(propertyPrefix).append("p.or=true");
+            }
             int propCtr = 1;
             for (Property prop : properties) {
-                String propKey = propCtr++ + "_property";
-                String searchProperty = prop.getName();
+                String propKey = propertyPrefix + propCtr++ + "_property";
+                String searchProperty = contentPrefix + prop.getName();
                 sb.append('&').append(propKey).append('=').append(searchProperty);
                 isPropertyOperation = true; // This is a property operation
 
@@ -95,6 +191,13 @@ public class QueryUrl {
                     } else {
                         sb.append('&').append(propKey).append(".operation=exists");
                     }
+                } else if (prop.isMulti() && prop.getValues() != null && prop.getValues().length > 0 && prop.isExactMatch()) {
+                    // Oak matches each value against all values of a multi-valued property
+                    String[] values = prop.getValues();
+                    for (int i = 0; i < values.length; i++) {
+                        sb.append('&').append(propKey).append('.').append(values.length > 1 ? (i + 1) + "_value=" : "value=")
+                                .append(URLEncoder.encode(values[i], StandardCharsets.UTF_8));
+                    }
                 } else if (prop.isMulti() && prop.getValues() != null && prop.getValues().length > 0) {
                     String likeValue = "%" + prop.getValues()[0] + "%";
                     sb.append('&').append(propKey).append(".operation=like")
@@ -114,12 +217,17 @@ public class QueryUrl {
             }
         }
 
-        if (nodes != null && !nodes.isEmpty()) {
+        if (groupNodes) {
+            sb.append('&').append(nodePrefix).append("p.or=true");
+            for (int i = 0; i < nodes.size(); i++) {
+                sb.append('&').append(nodePrefix).append(i + 1).append("_nodename=").append(nodes.get(i));
+            }
+        } else if (nodes != null && !nodes.isEmpty()) {
             sb.append("&nodename=").append(nodes.get(0));
         }
 
         if (isCqPageType) {
-            if (isPropertyOperation) {
+            if (isPropertyOperation && scope != PathScope.CHILD_PAGE_CONTENT) {
                 sb.append("&type=cq:PageContent");
             } else {
                 sb.append("&type=cq:Page");
@@ -129,11 +237,52 @@ public class QueryUrl {
         return sb;
     }
 
+    /**
+     * Adds the properties that are read from each node to the selected hit properties, so that they do not need to
+     * be fetched with a separate request per node. A nested property (e.g. <code>par/prop</code>) is selected by
+     * its top-level child node, which is returned with the node depth needed to reach the property. The properties
+     * evaluated on the hits are selected the same way.
+     * @param contentPrefix The path of the node that holds the properties relative to the hits, e.g.
+     *                      <code>jcr:content/</code> if the hits are pages, or an empty string
+     */
+    private void appendReadProperties(StringBuilder sb, OperationProperties opProps, String contentPrefix) {
+        List<String> readProperties = new ArrayList<>();
+        if (opProps != null && opProps.getReadProperties() != null) {
+            for (String property : opProps.getReadProperties()) {
+                readProperties.add(contentPrefix + property);
+            }
+        }
+        if (filterProperties != null) {
+            for (String property : filterProperties) {
+                readProperties.add(contentPrefix + property);
+            }
+        }
+        if (readProperties.isEmpty()) {
+            sb.append("&p.nodedepth=").append(nodeDepth);
+            return;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        int depth = 0;
+        for (String property : readProperties) {
+            String[] segments = property.split("/");
+            names.add(segments[0]);
+            depth = Math.max(depth, segments.length - 1);
+        }
+        for (String name : names) {
+            sb.append("%20").append(URLEncoder.encode(name, StandardCharsets.UTF_8));
+        }
+        sb.append("&p.nodedepth=").append(depth);
+    }
+
     public String buildUrl(String path, List<Property> properties, List<String> nodes, boolean isQuery, boolean cqPageType, String copyProperty, boolean isPropertyCopy, OperationProperties opProps) {
+        return buildUrl(path, PathScope.SUBTREE, properties, nodes, isQuery, cqPageType, copyProperty, isPropertyCopy, opProps, 0, 0);
+    }
+
+    private String buildUrl(String path, PathScope scope, List<Property> properties, List<String> nodes, boolean isQuery, boolean cqPageType, String copyProperty, boolean isPropertyCopy, OperationProperties opProps, int offset, int countLimit) {
         this.isCqPageType = cqPageType;
         StringBuilder sb = buildBaseUrl();
         if (isQuery) {
-            sb.append(buildQueryParameters(path, properties, nodes, isPropertyCopy, opProps));
+            sb.append(buildQueryParameters(path, scope, properties, nodes, isPropertyCopy, opProps, offset, countLimit));
         } else {
             sb.append(path);
             if (cqPageType && !path.endsWith("/jcr:content")) {
@@ -152,6 +301,34 @@ public class QueryUrl {
         return buildUrl(path, properties, nodes, true, cqPageType, null, isPropertyOperation, opProps);
     }
 
+    /**
+     * Build the URL of a single query window when paging is enabled with {@link #setPageSize(int)}.
+     * @param offset The index of the first hit of the window
+     */
+    public String buildUrl(String path, List<Property> properties, List<String> nodes, boolean cqPageType, boolean isPropertyOperation, OperationProperties opProps, int offset) {
+        return buildUrl(path, PathScope.SUBTREE, properties, nodes, true, cqPageType, null, isPropertyOperation, opProps, offset, 0);
+    }
+
+    /**
+     * Build the URL of a query that searches only part of the nodes below the path, e.g. one partition of a large
+     * tree.
+     * @param scope  The nodes below the path to search
+     * @param offset The index of the first hit of the window if paging is enabled, otherwise ignored
+     */
+    public String buildUrl(String path, PathScope scope, List<Property> properties, List<String> nodes, boolean cqPageType, boolean isPropertyOperation, OperationProperties opProps, int offset) {
+        return buildUrl(path, scope, properties, nodes, true, cqPageType, null, isPropertyOperation, opProps, offset, 0);
+    }
+
+    /**
+     * Build the URL of a query that only counts the hits: no hit is returned (<code>p.limit=0</code>), and Oak stops
+     * counting at the given number (<code>p.guessTotal</code>), so that even a large result is counted quickly.
+     * @param scope      The nodes below the path to search
+     * @param countLimit The number of hits after which counting stops
+     */
+    public String buildCountUrl(String path, PathScope scope, List<Property> properties, List<String> nodes, boolean cqPageType, boolean isPropertyOperation, OperationProperties opProps, int countLimit) {
+        return buildUrl(path, scope, properties, nodes, true, cqPageType, null, isPropertyOperation, opProps, 0, countLimit);
+    }
+
     public String buildUrl(boolean isQuery, String path, List<Property> properties) {
         return buildUrl(path, properties, null, isQuery, isCqPageType, null, false, null);
     }
@@ -160,4 +337,70 @@ public class QueryUrl {
         return buildUrl(path, null, null, false, isCqPageType, copyProperty, false, null);
     }
 
+    /**
+     * Get the path of the node that is updated for a page: its <code>jcr:content</code> node when working with
+     * cq:Page nodes, otherwise the node itself.
+     * @param path The path of the page or node
+     * @return The path of the node to update
+     */
+    public String getNodePath(String path) {
+        return isCqPageType && !path.endsWith("/jcr:content") ? path + "/jcr:content" : path;
+    }
+
+    /**
+     * Build the URL of a node exactly as given, regardless of the page type
+     * @param path The path of the node
+     * @return The URL of the node
+     */
+    public String buildNodeUrl(String path) {
+        return buildNodeUrl(path, 0);
+    }
+
+    /**
+     * Build the URL of a node including its children, regardless of the page type
+     * @param path  The path of the node
+     * @param depth The number of child node levels to include
+     * @return The URL of the node, e.g. <code>/content/site/jcr:content.2.json</code>
+     */
+    public String buildNodeUrl(String path, int depth) {
+        StringBuilder sb = buildBaseUrl().append(path);
+        if (depth > 0) {
+            sb.append('.').append(depth);
+        }
+        return sb.append(".json").toString();
+    }
+
+    /**
+     * Build the URL of a query that lists the child nodes of a node with all their properties, one window at a time,
+     * for nodes with more children than Sling renders in a <code>.1.json</code> request
+     * @param path   The path of the node
+     * @param offset The index of the first child of the window
+     * @return The URL of the window, ordered by path so that the windows do not overlap
+     */
+    public String buildChildrenUrl(String path, int offset) {
+        return buildBaseUrl()
+                .append(QUERY_PATH)
+                .append("?path=").append(path)
+                .append("&path.flat=true&p.limit=").append(limit)
+                .append("&p.offset=").append(offset)
+                .append("&orderby=path&p.hits=full&p.nodedepth=0")
+                .toString();
+    }
+
+    /**
+     * Build the URL that explains a query with the query performance tool of AEM
+     * @param statement The XPath statement of the query
+     * @param execute   Whether the query is also executed to report its execution time and number of results, which
+     *                  reads every result on the instance
+     * @return The URL of the explanation
+     */
+    public String buildExplainUrl(String statement, boolean execute) {
+        return buildBaseUrl()
+                .append(EXPLAIN_PATH)
+                .append("?statement=").append(URLEncoder.encode(statement, StandardCharsets.UTF_8))
+                .append("&language=xpath&executionTime=").append(execute)
+                .append("&resultCount=").append(execute)
+                .toString();
+    }
+
 }
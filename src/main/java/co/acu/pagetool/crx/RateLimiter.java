@@ -0,0 +1,80 @@
+package co.acu.pagetool.crx;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket that limits the rate of requests across all workers. The bucket holds up to <code>burst</code>
+ * tokens and is refilled at a fixed rate; each request takes one token, waiting for it if the bucket is empty.
+ * Waiting requests reserve their token in order, so workers are served fairly.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class RateLimiter {
+
+    private final double tokensPerNano;
+    private final int burst;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefill;
+    private long waitNanos = 0;
+
+    /**
+     * @param ratePerSecond The number of requests allowed per second
+     * @param burst         The number of requests that may be sent at once after a pause
+     */
+    public RateLimiter(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, System::nanoTime);
+    }
+
+    RateLimiter(double ratePerSecond, int burst, LongSupplier clock) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be greater than 0");
+        }
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.clock = clock;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Waits until the next request may be sent.
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        long wait = reserve();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+            }
+        }
+    }
+
+    /**
+     * Takes a token, which may leave the bucket in debt to the requests that are already waiting.
+     * @return The nanoseconds to wait until the token is available
+     */
+    synchronized long reserve() {
+        long now = clock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        long wait = tokens < 0 ? (long) Math.ceil(-tokens / tokensPerNano) : 0;
+        waitNanos += wait;
+        return wait;
+    }
+
+    /**
+     * Get the total time that requests had to wait for the rate limit
+     * @return The waiting time in milliseconds, summed over all workers
+     */
+    public synchronized long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    }
+
+}
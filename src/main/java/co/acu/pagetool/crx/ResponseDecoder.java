@@ -0,0 +1,131 @@
+package co.acu.pagetool.crx;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses response bodies while they are read, and counts the bytes received on the wire and the bytes
+ * after decoding. The transports ask for compressed GET responses with {@link #ACCEPT_ENCODING} and decode them
+ * with {@link #decode(InputStream, String)}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class ResponseDecoder {
+
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong compressedCount = new AtomicLong();
+
+    /**
+     * Wraps a response body so that it is decompressed and counted while it is read.
+     *
+     * @param body            The body as received
+     * @param contentEncoding The <code>Content-Encoding</code> header, or null
+     * @return The decoded body
+     * @throws IOException If the encoding is not supported or the compressed header cannot be read
+     */
+    public InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase(Locale.ROOT) : "";
+        if (encoding.isEmpty() || encoding.equals("identity")) {
+            return new CountingInputStream(body, wireBytes, decodedBytes);
+        }
+        PushbackInputStream wire = new PushbackInputStream(new CountingInputStream(body, wireBytes));
+        int first = wire.read();
+        if (first < 0) {
+            // An empty body has no compression header
+            return wire;
+        }
+        wire.unread(first);
+        InputStream decoded;
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            decoded = new GZIPInputStream(wire);
+        } else if (encoding.equals("deflate")) {
+            decoded = new InflaterInputStream(wire);
+        } else {
+            throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+        compressedCount.incrementAndGet();
+        return new CountingInputStream(decoded, decodedBytes);
+    }
+
+    /**
+     * Get the number of bytes received on the wire
+     * @return The size of all response bodies as sent by the server
+     */
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * Get the number of bytes after decompression
+     * @return The size of all response bodies as read by the tool
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /**
+     * Get the number of responses that were compressed by the server
+     * @return The number of compressed responses
+     */
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    /**
+     * Adds the number of bytes read to one or more counters.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong[] counters;
+
+        CountingInputStream(InputStream in, AtomicLong... counters) {
+            super(in);
+            this.counters = counters;
+        }
+
+        private void count(long bytes) {
+            if (bytes > 0) {
+                for (AtomicLong counter : counters) {
+                    counter.addAndGet(bytes);
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            count(b >= 0 ? 1 : 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+}
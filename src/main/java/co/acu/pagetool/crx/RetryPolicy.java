@@ -0,0 +1,128 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a failed request is sent again, and how long to wait before it is. The delay grows
+ * exponentially with each attempt, and half of it is random so that the workers do not retry in lockstep.
+ * <p>
+ * Requests that can safely be applied twice (GETs and POSTs that only set or delete properties) are retried after
+ * an I/O error or a 429, 502, 503 or 504 response. Other requests (e.g. <code>:operation=copy</code>) are only
+ * retried if they cannot have reached Sling: if no connection could be opened or AEM answered with 503.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class RetryPolicy {
+
+    // Failed requests are not sent again unless retries are enabled
+    public static final int DEFAULT_MAX_RETRIES = 0;
+    public static final int DEFAULT_BASE_DELAY = 500;
+    public static final int DEFAULT_MAX_DELAY = 30000;
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * @param maxRetries The number of times a request is sent again
+     * @param baseDelay  The delay before the first retry in milliseconds
+     * @param maxDelay   The longest delay in milliseconds
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Check whether a response status is worth a retry
+     * @param statusCode The status code of the response
+     * @return True for 429 (Too Many Requests), 502, 503 and 504, which AEM or a proxy in front of it return while
+     *         AEM is overloaded, restarting or being deployed
+     */
+    public static boolean isTransient(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Check whether a request should be sent again after a response
+     * @param attempt    The number of retries so far
+     * @param statusCode The status code of the response
+     * @param idempotent True if the request can safely be applied twice
+     * @return True to retry
+     */
+    public boolean shouldRetry(int attempt, int statusCode, boolean idempotent) {
+        return attempt < maxRetries && isTransient(statusCode) && (idempotent || statusCode == 503);
+    }
+
+    /**
+     * Check whether a request should be sent again after an I/O error
+     * @param attempt    The number of retries so far
+     * @param e          The error
+     * @param idempotent True if the request can safely be applied twice
+     * @return True to retry
+     */
+    public boolean shouldRetry(int attempt, IOException e, boolean idempotent) {
+        if (attempt >= maxRetries) {
+            return false;
+        }
+        if (isConnectFailure(e)) {
+            return true;
+        }
+        // Interruptions (e.g. while waiting for a rate limit) stop the run, but read timeouts are retried
+        return idempotent && (!(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException);
+    }
+
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException || e instanceof NoRouteToHostException;
+    }
+
+    /**
+     * Get the delay before a retry
+     * @param attempt    The number of retries so far
+     * @param retryAfter The value of the <code>Retry-After</code> header in seconds, or -1 if there is none
+     * @return The delay in milliseconds
+     */
+    public long getDelay(int attempt, long retryAfter) {
+        long delay = Math.min(maxDelay, baseDelay << Math.min(attempt, 30));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        if (retryAfter >= 0) {
+            delay = Math.max(delay, Math.min(maxDelay, TimeUnit.SECONDS.toMillis(retryAfter)));
+        }
+        return delay;
+    }
+
+    /**
+     * Waits before a retry and counts it.
+     * @param delay The delay in milliseconds
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public void await(long delay) throws InterruptedIOException {
+        retryCount.incrementAndGet();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+}
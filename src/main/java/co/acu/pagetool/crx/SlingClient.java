@@ -3,32 +3,32 @@ package co.acu.pagetool.crx;
 import co.acu.pagetool.OperationProperties;
 import co.acu.pagetool.PageToolApp;
 import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultPage;
+import co.acu.pagetool.result.ResultSet;
 import co.acu.pagetool.util.Output;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import org.apache.http.HttpHost;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.apache.http.util.EntityUtils;
-import org.apache.sling.servlets.post.SlingPostConstants;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -41,143 +41,701 @@ public class SlingClient {
 
     public static final String SCHEME = "http";
     public static final String SCHEME_SECURE = "https";
+    // Request parameter to select the JSON response of the Sling POST servlet instead of the HTML one
+    private static final String HTTP_EQUIV_ACCEPT = ":http-equiv-accept";
 
     private final CrxConnection conn;
     private final QueryUrl queryUrl;
     private final OperationProperties properties;
+    private HttpClientPool httpClientPool;
     private int lastStatusCode = -1;
     private String lastResponseText = null;
+    private int failureCount = 0;
+    private int postCount = 0;
+    private int skippedCount = 0;
+    private int unchangedCount = 0;
+    private final Map<String, JsonObject> hitValues = new HashMap<>();
+    private NodeSnapshotCache snapshotCache = null;
 
     public SlingClient(CrxConnection conn, OperationProperties properties, QueryUrl queryUrl) {
+        this(conn, properties, queryUrl, null);
+    }
+
+    /**
+     * @param conn           The AEM connection details
+     * @param properties     The operations to perform
+     * @param queryUrl       The URL builder
+     * @param httpClientPool The run-scoped HTTP client; if null, one is created from the connection on first use
+     */
+    public SlingClient(CrxConnection conn, OperationProperties properties, QueryUrl queryUrl, HttpClientPool httpClientPool) {
         this.conn = Objects.requireNonNull(conn, "CrxConnection must not be null");
         this.properties = Objects.requireNonNull(properties, "OperationProperties must not be null");
         this.queryUrl = Objects.requireNonNull(queryUrl, "QueryUrl must not be null");
+        this.httpClientPool = httpClientPool;
     }
 
-    private HttpHost createHttpHost() {
-        String scheme = conn.isSecure() ? SCHEME_SECURE : SCHEME;
-        return new HttpHost(conn.getHostname(), Integer.parseInt(conn.getPort()), scheme);
+    /**
+     * Creates a client for another worker thread. The worker shares the connection, the operations and the pooled
+     * HTTP client, but keeps its own response state.
+     * @return A new client for the same AEM host
+     * @throws SlingClientException If the pooled HTTP client cannot be created
+     */
+    public SlingClient newWorker() throws SlingClientException {
+        SlingClient worker = new SlingClient(conn, properties, queryUrl.copy(), getHttpClientPool());
+        if (snapshotCache != null) {
+            worker.setSnapshotCache(snapshotCache.newWorker());
+        }
+        return worker;
     }
 
-    private CloseableHttpClient createHttpClient(HttpHost httpHost) throws SlingClientException {
-        CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        credsProvider.setCredentials(
-                new org.apache.http.auth.AuthScope(httpHost.getHostName(), httpHost.getPort()),
-                new org.apache.http.auth.UsernamePasswordCredentials(conn.getUsername(), conn.getPassword()));
+    /**
+     * Set the cache of node snapshots. If set, property values that are not part of the query hit are read from a
+     * snapshot of the whole node instead of one request per property.
+     * @param snapshotCache The cache, or null to request each property
+     */
+    public void setSnapshotCache(NodeSnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
 
-        try {
-            if (PageToolApp.bypassSSL) {
-                return HttpClients.custom()
-                        .setSSLHostnameVerifier((hostname, session) -> true)
-                        .setSSLContext(new SSLContextBuilder().loadTrustMaterial(null, (chain, authType) -> true).build())
-                        .setDefaultCredentialsProvider(credsProvider)
-                        .build();
-            }
-            return HttpClients.custom()
-                    .setDefaultCredentialsProvider(credsProvider)
-                    .build();
-        } catch (Exception e) {
-            throw new SlingClientException("Failed to create HTTP client", e);
-        }
+    public NodeSnapshotCache getSnapshotCache() {
+        return snapshotCache;
     }
 
-    private HttpClientContext createClientContext(HttpHost httpHost) {
-        AuthCache authCache = new BasicAuthCache();
-        authCache.put(httpHost, new BasicScheme());
-        HttpClientContext context = HttpClientContext.create();
-        context.setAuthCache(authCache);
-        return context;
+    private synchronized HttpClientPool getHttpClientPool() throws SlingClientException {
+        if (httpClientPool == null) {
+            httpClientPool = new HttpClientPool(conn);
+        }
+        return httpClientPool;
     }
 
     protected String executeGet(String url) throws IOException {
-        HttpHost httpHost = createHttpHost();
-        try (CloseableHttpClient client = createHttpClient(httpHost)) {
-            HttpClientContext context = createClientContext(httpHost);
-            HttpGet httpGet = new HttpGet(url);
-            try (CloseableHttpResponse response = client.execute(httpHost, httpGet, context)) {
-                lastStatusCode = response.getStatusLine().getStatusCode();
-                if (lastStatusCode != 200) {
-                    Output.warn("Failed to access URL: " + url + " (status code: " + lastStatusCode + ")");
-                }
-                return EntityUtils.toString(response.getEntity());
+        try (HttpTransport.Response response = openGet(url)) {
+            if (lastStatusCode != 200) {
+                Output.warn("Failed to access URL: " + url + " (status code: " + lastStatusCode + ")");
             }
+            return readText(response);
+        }
+    }
+
+    /**
+     * Executes a GET request without reading the response body. The caller must close the response.
+     */
+    private HttpTransport.Response openGet(String url) throws IOException {
+        try {
+            HttpClientPool pool = getHttpClientPool();
+            return execute(pool, HttpTransport.GET, url, null, pool.getReadLimiter(), true);
         } catch (SlingClientException e) {
             Output.warn("Failed to initialize HTTP client: " + e.getMessage());
             throw new IOException("Unable to execute GET request due to client initialization failure", e);
         }
     }
 
-    protected void executePost(String url, List<NameValuePair> params) throws IOException {
-        HttpHost httpHost = createHttpHost();
-        try (CloseableHttpClient client = createHttpClient(httpHost)) {
-            HttpClientContext context = createClientContext(httpHost);
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setEntity(new UrlEncodedFormEntity(params));
-            try (CloseableHttpResponse response = client.execute(httpPost, context)) {
-                lastStatusCode = response.getStatusLine().getStatusCode();
-                lastResponseText = EntityUtils.toString(response.getEntity());
-                if (lastStatusCode != 200 && lastStatusCode != 201) {
-                    Output.warn("\nFailed to post to " + url + " (status code: " + lastStatusCode + ", response: " + lastResponseText + ")");
-                } else if (PageToolApp.verbose) {
-                    Output.info("Successfully posted to " + url + " (status code: " + lastStatusCode + ")");
+    /**
+     * Sends a request with the transport of the pool, retrying it according to the retry policy of the pool and
+     * logging in again if the login token was rejected. Each attempt waits for the circuit breaker, the rate limit
+     * and the concurrency limit, in that order. The concurrency limit only applies until the response headers are
+     * received, so that a streamed query does not hold on to it while its hits are processed.
+     *
+     * @param pool        The run-scoped HTTP client and its policies
+     * @param method      The request method
+     * @param url         The absolute URL
+     * @param params      The form parameters of a POST, or null
+     * @param rateLimiter The rate limit for the request, or null
+     * @param idempotent  True if the request can safely be applied twice
+     * @return The response of the last attempt, which the caller must close
+     * @throws IOException If the last attempt failed with an I/O error
+     */
+    private HttpTransport.Response execute(HttpClientPool pool, String method, String url, List<NameValuePair> params,
+                                           RateLimiter rateLimiter, boolean idempotent) throws IOException {
+        HttpTransport transport = pool.getTransport();
+        RetryPolicy retryPolicy = pool.getRetryPolicy();
+        CircuitBreaker circuitBreaker = pool.getCircuitBreaker();
+        ConcurrencyLimiter limiter = pool.getConcurrencyLimiter();
+        boolean reauthenticated = false;
+        for (int attempt = 0; ; attempt++) {
+            long loginGeneration = pool.getLoginGeneration();
+            boolean probe = circuitBreaker != null && circuitBreaker.acquire();
+            boolean failed = true;
+            HttpTransport.Response response;
+            try {
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                long start = limiter != null ? limiter.acquire() : 0;
+                boolean rejected = true;
+                try {
+                    response = transport.send(method, url, params);
+                    lastStatusCode = response.getStatusCode();
+                    rejected = ConcurrencyLimiter.isRejected(lastStatusCode);
+                    failed = RetryPolicy.isTransient(lastStatusCode);
+                } finally {
+                    if (limiter != null) {
+                        limiter.release(start, rejected);
+                    }
+                }
+            } catch (IOException e) {
+                if (retryPolicy == null || !retryPolicy.shouldRetry(attempt, e, idempotent)) {
+                    throw e;
+                }
+                retry(retryPolicy, method, url, attempt, -1, e.toString());
+                continue;
+            } finally {
+                if (circuitBreaker != null) {
+                    circuitBreaker.record(probe, failed);
                 }
             }
+            if (lastStatusCode == 401 && pool.isTokenAuth() && !reauthenticated) {
+                // The login token has expired; log in again and resend the request once, without counting it as a retry
+                discard(response);
+                if (PageToolApp.verbose) {
+                    Output.info("Login token rejected; logging in again.");
+                }
+                pool.refreshLogin(loginGeneration);
+                reauthenticated = true;
+                attempt--;
+                continue;
+            }
+            if (retryPolicy == null || !retryPolicy.shouldRetry(attempt, lastStatusCode, idempotent)) {
+                return response;
+            }
+            long retryAfter = getRetryAfter(response);
+            discard(response);
+            retry(retryPolicy, method, url, attempt, retryAfter, "status code: " + lastStatusCode);
+        }
+    }
+
+    private static void retry(RetryPolicy retryPolicy, String method, String url, int attempt, long retryAfter, String reason) throws IOException {
+        long delay = retryPolicy.getDelay(attempt, retryAfter);
+        Output.warn("Retrying " + method + " " + url + " in " + delay + " ms (" + reason
+                + ", retry " + (attempt + 1) + " of " + retryPolicy.getMaxRetries() + ")");
+        retryPolicy.await(delay);
+    }
+
+    /**
+     * Get the number of seconds to wait from the <code>Retry-After</code> header of a 429 or 503 response
+     * @return The seconds, or -1 if the header is missing or not a number of seconds
+     */
+    private static long getRetryAfter(HttpTransport.Response response) {
+        String header = response.getHeader("Retry-After");
+        if (header != null) {
+            try {
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException ignored) {
+                // HTTP dates are not supported
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the rest of a response, so that its connection can be reused, and closes it.
+     */
+    private static void discard(HttpTransport.Response response) {
+        try (response; InputStream body = response.getBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException ignored) {
+            // The connection is not reused
+        }
+    }
+
+    /**
+     * Reads the body of a response as text, in the charset of its content type (default: UTF-8, as used by Sling
+     * for JSON).
+     */
+    private static String readText(HttpTransport.Response response) throws IOException {
+        Charset charset = StandardCharsets.UTF_8;
+        String contentType = response.getHeader("Content-Type");
+        if (contentType != null) {
+            int index = contentType.toLowerCase().indexOf("charset=");
+            if (index >= 0) {
+                try {
+                    charset = Charset.forName(contentType.substring(index + 8).split(";")[0].trim().replace("\"", ""));
+                } catch (IllegalArgumentException ignored) {
+                    // Keep the default
+                }
+            }
+        }
+        try (InputStream body = response.getBody()) {
+            return new String(body.readAllBytes(), charset);
+        }
+    }
+
+    /**
+     * Executes a GET request and fails unless it was successful. The caller must close the response.
+     */
+    private HttpTransport.Response openSuccessfulGet(String url) throws IOException {
+        HttpTransport.Response response = openGet(url);
+        if (lastStatusCode != 200) {
+            discard(response);
+            throw new IOException("Failed to access URL: " + url + " (status code: " + lastStatusCode + ")");
+        }
+        return response;
+    }
+
+    protected void executePost(String url, List<NameValuePair> params) throws IOException {
+        postCount++;
+        try {
+            HttpClientPool pool = getHttpClientPool();
+            try (HttpTransport.Response response = execute(pool, HttpTransport.POST, url, params, pool.getWriteLimiter(), isIdempotent(params))) {
+                lastResponseText = readText(response);
+            }
+            if (lastStatusCode != 200 && lastStatusCode != 201) {
+                failureCount++;
+                Output.warn("\nFailed to post to " + url + " (status code: " + lastStatusCode + ", response: " + lastResponseText + ")");
+            } else if (PageToolApp.verbose) {
+                Output.info("Successfully posted to " + url + " (status code: " + lastStatusCode + ")");
+            }
         } catch (SlingClientException e) {
             Output.warn("Failed to initialize HTTP client: " + e.getMessage());
             throw new IOException("Unable to execute POST request due to client initialization failure", e);
         }
     }
 
-    public void queryPages(String path) throws IOException {
-        List<Property> propertiesList = null;
-        boolean isSimplePropertyUpdate = false;
+    /**
+     * Check whether a Sling POST can safely be applied twice. Setting and deleting properties can; copying or moving
+     * a node cannot, since the second request would create another copy or fail.
+     */
+    private static boolean isIdempotent(List<NameValuePair> params) {
+        for (NameValuePair param : params) {
+            if (":operation".equals(param.getName()) && ("copy".equals(param.getValue()) || "move".equals(param.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the properties that the query matches for the configured operations
+     * @return The properties, or null if nodes are not matched by their properties
+     */
+    private List<Property> getQueryProperties() {
         if (properties.getDeleteProperties() != null && !properties.getDeleteProperties().isEmpty()) {
-            propertiesList = properties.getDeleteProperties().stream()
+            return properties.getDeleteProperties().stream()
                     .map(propName -> new Property(propName, ""))
                     .collect(Collectors.toList());
         } else if (properties.getPropertyValueReplacementAsList() != null) {
-            propertiesList = properties.getPropertyValueReplacementAsList();
+            return properties.getPropertyValueReplacementAsList();
         } else if (properties.getMatchingProperties() != null && !properties.getMatchingProperties().isEmpty()) {
-            propertiesList = properties.getMatchingProperties();
+            return properties.getMatchingProperties();
         } else if (properties.isPropertyCopy() && properties.getCopyFromProperties() != null && !properties.getCopyFromProperties().isEmpty()) {
-            propertiesList = properties.getCopyFromProperties().stream()
-                    .map(propName -> new Property(propName, ""))
-                    .collect(Collectors.toList());
             if (PageToolApp.verbose) {
                 Output.info("Setting properties list for property copy: " + properties.getCopyFromProperties());
             }
-        } else if (properties.getUpdateProperties() != null && !properties.getUpdateProperties().isEmpty() &&
-                (properties.getMatchingProperties() == null || properties.getMatchingProperties().isEmpty())) {
-            isSimplePropertyUpdate = true;
-            if (PageToolApp.verbose) {
-                Output.info("Detected simple property update operation");
+            return properties.getCopyFromProperties().stream()
+                    .map(propName -> new Property(propName, ""))
+                    .collect(Collectors.toList());
+        }
+        return null;
+    }
+
+    /**
+     * Check whether the operations work on the properties of the page content nodes rather than on the nodes
+     */
+    private boolean isPropertyOperation() {
+        if (properties.isPropertyCopy()) {
+            return true;
+        }
+        boolean isSimplePropertyUpdate = (properties.getDeleteProperties() == null || properties.getDeleteProperties().isEmpty())
+                && properties.getPropertyValueReplacementAsList() == null
+                && (properties.getMatchingProperties() == null || properties.getMatchingProperties().isEmpty())
+                && properties.getUpdateProperties() != null && !properties.getUpdateProperties().isEmpty();
+        if (isSimplePropertyUpdate && PageToolApp.verbose) {
+            Output.info("Detected simple property update operation");
+        }
+        return isSimplePropertyUpdate;
+    }
+
+    /**
+     * Creates a filter that matches the same nodes as the query for the configured operations, for nodes that are
+     * found without a query
+     * @return The filter
+     */
+    public NodeFilter createNodeFilter() {
+        return new NodeFilter(getQueryProperties(), properties.getMatchingNodes(), properties.isCqPageType(), isPropertyOperation(), properties);
+    }
+
+    /**
+     * Creates a filter for the criteria that are not sent to the query builder but evaluated on its hits (see
+     * {@link QueryPlan})
+     * @return The filter, or null if the query applies all criteria
+     */
+    public NodeFilter createHitFilter() {
+        return new QueryPlan(getQueryProperties(), properties.isLocalMatch(), properties.isMatchAny()).createLocalFilter();
+    }
+
+    /**
+     * Creates the index recommendation for the query of the configured operations
+     * @param path The root path of the query
+     * @return The recommendation
+     */
+    public IndexAdvisor createIndexAdvisor(String path) {
+        QueryPlan plan = new QueryPlan(getQueryProperties(), properties.isLocalMatch(), properties.isMatchAny());
+        return new IndexAdvisor(path, plan.getServerProperties(), properties.getMatchingNodes(), properties.isCqPageType(),
+                isPropertyOperation() || plan.hasLocalProperties(), properties);
+    }
+
+    /**
+     * Explains a query on the AEM instance: the plan chosen by Oak and its log messages (including the cost of each
+     * index). Only if requested, the query is also executed to report the time it takes.
+     * @param statement The XPath statement of the query
+     * @param execute   Whether to execute the query, which reads all of its results on the instance
+     * @return The explanation, with the <code>explain</code> and <code>heuristics</code> objects of the query
+     * performance tool
+     * @throws IOException If the query cannot be explained, e.g. because the tool is not available
+     */
+    public JsonObject explainQuery(String statement, boolean execute) throws IOException {
+        String url = queryUrl.buildExplainUrl(statement, execute);
+        if (PageToolApp.verbose) {
+            Output.info("Explaining query: " + url);
+        }
+        JsonElement explanation;
+        try (HttpTransport.Response response = openSuccessfulGet(url);
+             Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            explanation = JsonParser.parseReader(reader);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid explain response from " + url + ": " + e.getMessage(), e);
+        }
+        if (!explanation.isJsonObject()) {
+            throw new IOException("Invalid explain response from " + url);
+        }
+        return explanation.getAsJsonObject();
+    }
+
+    /**
+     * Builds the query URL for the configured operations.
+     * @param path   The root path of the query
+     * @param scope  The nodes below the path to search
+     * @param paged  If true, build the URL of a single window of a paged query
+     * @param offset The offset of the window (only used if paged)
+     */
+    private String buildQueryUrl(String path, QueryUrl.PathScope scope, boolean paged, int offset) {
+        return buildQueryUrl(path, scope, paged, offset, 0);
+    }
+
+    /**
+     * Builds the query URL for the configured operations, or the URL that only counts its hits.
+     * @param countLimit The number of hits after which counting stops, or 0 to fetch the hits
+     */
+    private String buildQueryUrl(String path, QueryUrl.PathScope scope, boolean paged, int offset, int countLimit) {
+        QueryPlan plan = new QueryPlan(getQueryProperties(), properties.isLocalMatch(), properties.isMatchAny());
+        List<Property> queryProperties = plan.getServerProperties();
+        // The hits are still page content nodes if all properties are matched locally
+        boolean isPropertyOperation = isPropertyOperation() || plan.hasLocalProperties();
+        queryUrl.setFilterProperties(plan.hasLocalProperties() ? plan.getLocalPropertyNames() : null);
+        if (plan.hasLocalProperties() && PageToolApp.verbose) {
+            Output.info("Matching locally on the query hits: " + plan.getLocalPropertyNames());
+        }
+        if (countLimit > 0) {
+            return queryUrl.buildCountUrl(path, scope, queryProperties, properties.getMatchingNodes(), properties.isCqPageType(), isPropertyOperation, properties, countLimit);
+        }
+        if (scope != QueryUrl.PathScope.SUBTREE) {
+            return queryUrl.buildUrl(path, scope, queryProperties, properties.getMatchingNodes(), properties.isCqPageType(), isPropertyOperation, properties, offset);
+        }
+        if (paged) {
+            return queryUrl.buildUrl(path, queryProperties, properties.getMatchingNodes(), properties.isCqPageType(), isPropertyOperation, properties, offset);
+        }
+        return queryUrl.buildUrl(path, queryProperties, properties.getMatchingNodes(), properties.isCqPageType(), isPropertyOperation, properties);
+    }
+
+    /**
+     * Counts the hits of the query for the configured operations without fetching them. Criteria that are matched
+     * on the hits (see {@link QueryPlan}) are not applied.
+     * @param path       The root path of the query
+     * @param scope      The nodes below the path to search
+     * @param countLimit The number of hits after which counting stops
+     * @return The query result without hits; its total is the count, and {@link ResultSet#isMore()} is true if
+     * counting stopped at the limit
+     * @throws IOException If the query fails
+     */
+    public ResultSet countHits(String path, QueryUrl.PathScope scope, int countLimit) throws IOException {
+        String url = buildQueryUrl(path, scope, false, 0, countLimit);
+        if (PageToolApp.verbose) {
+            Output.ninfo("Querying Sling URL: "); Output.nhl(url); Output.line();
+        }
+        try (HttpTransport.Response response = openSuccessfulGet(url);
+             Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            ResultSet resultSet = new Gson().fromJson(reader, ResultSet.class);
+            if (resultSet == null) {
+                throw new IOException("Empty count response from " + url);
             }
+            return resultSet;
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid count response from " + url + ": " + e.getMessage(), e);
         }
-        String url;
-        if (isSimplePropertyUpdate) {
-            url = queryUrl.buildUrl(path, null, properties.getMatchingNodes(), properties.isCqPageType(), true, properties);
-        } else {
-            url = queryUrl.buildUrl(path, propertiesList, properties.getMatchingNodes(), properties.isCqPageType(), properties.isPropertyCopy(), properties);
+    }
+
+    /**
+     * Fetches a single window of a paged query (see {@link QueryUrl#setPageSize(int)}).
+     * @param path   The root path of the query
+     * @param offset The index of the first hit to fetch
+     * @return The window of hits
+     * @throws IOException If the query fails, so that the remaining windows are not silently skipped
+     */
+    public ResultSet queryWindow(String path, int offset) throws IOException {
+        return queryWindow(path, QueryUrl.PathScope.SUBTREE, offset);
+    }
+
+    /**
+     * Fetches a single window of a paged query over part of the nodes below the path.
+     * @param path   The root path of the query
+     * @param scope  The nodes below the path to search
+     * @param offset The index of the first hit to fetch
+     * @return The window of hits
+     * @throws IOException If the query fails
+     */
+    public ResultSet queryWindow(String path, QueryUrl.PathScope scope, int offset) throws IOException {
+        String url = buildQueryUrl(path, scope, true, offset);
+        if (PageToolApp.verbose) {
+            Output.ninfo("Querying Sling URL: "); Output.nhl(url); Output.line();
+        }
+        try (HttpTransport.Response response = openSuccessfulGet(url);
+             Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            ResultSet resultSet = new Gson().fromJson(reader, ResultSet.class);
+            if (resultSet == null) {
+                throw new IOException("Empty query response at offset " + offset);
+            }
+            if (PageToolApp.verbose) {
+                Output.info("Fetched " + resultSet.getResults() + " hits at offset " + offset);
+            }
+            return resultSet;
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid query response at offset " + offset + ": " + e.getMessage(), e);
         }
+    }
+
+    /**
+     * Runs the query for the configured operations and reads the hits while they are received, without buffering
+     * the response.
+     * @param path The root path of the query
+     * @return A reader over the hits, which must be closed
+     * @throws IOException If the query fails
+     */
+    public QueryResultReader streamQuery(String path) throws IOException {
+        return streamQuery(path, QueryUrl.PathScope.SUBTREE);
+    }
+
+    /**
+     * Runs the query for the configured operations over part of the nodes below the path, see
+     * {@link #streamQuery(String)}.
+     * @param path  The root path of the query
+     * @param scope The nodes below the path to search
+     * @return A reader over the hits, which must be closed
+     * @throws IOException If the query fails
+     */
+    public QueryResultReader streamQuery(String path, QueryUrl.PathScope scope) throws IOException {
+        String url = buildQueryUrl(path, scope, false, 0);
         if (PageToolApp.verbose) {
             Output.ninfo("Querying Sling URL: "); Output.nhl(url); Output.line();
         }
-        lastResponseText = executeGet(url);
+        HttpTransport.Response response = openSuccessfulGet(url);
+        QueryResultReader reader = new QueryResultReader(response.getBody(), response);
         if (PageToolApp.verbose) {
-            Output.info("Status code: " + lastStatusCode);
+            Output.info("Status code: " + lastStatusCode + ", total: " + reader.getResultSet().getTotal());
         }
-        if (PageToolApp.verbose && lastResponseText != null && !lastResponseText.isEmpty()) {
-            JsonElement jsonResponse = JsonParser.parseString(lastResponseText);
-            if (jsonResponse != null && jsonResponse.isJsonObject()) {
-                int total = jsonResponse.getAsJsonObject().get("total").getAsInt();
-                Output.ninfo("Query response (total: " + total + "): "); Output.nhl(lastResponseText); Output.line();
-            } else {
-                Output.ninfo("Query response: "); Output.nhl(lastResponseText); Output.line();
+        return reader;
+    }
+
+    /**
+     * Lists the child nodes of a node with a single request for the node and its direct children.
+     * @param path The path of the node
+     * @return The paths of the child nodes, in repository order
+     * @throws IOException If the node cannot be read
+     */
+    public List<String> getChildPaths(String path) throws IOException {
+        String parent = path.endsWith("/") ? path : path + "/";
+        List<String> children = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : getNode(path, 1).entrySet()) {
+            if (entry.getValue().isJsonObject()) {
+                children.add(parent + entry.getKey());
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Reads a node with its child nodes, regardless of the page type. If Sling refuses to render that many nodes
+     * (300 Multiple Choices, see <code>json.maximumresults</code>), the node is read with its direct children only:
+     * its properties with a request for the node itself and its children with a flat query.
+     * @param path  The path of the node
+     * @param depth The number of child node levels to include
+     * @return The JSON of the node, with a single level of children if the requested levels are too many nodes
+     * @throws IOException If the node cannot be read
+     */
+    public JsonObject getNode(String path, int depth) throws IOException {
+        String url = queryUrl.buildNodeUrl(path, depth);
+        if (PageToolApp.verbose) {
+            Output.info("Fetching node: " + url);
+        }
+        HttpTransport.Response response = openGet(url);
+        if (lastStatusCode == 300 && depth > 0) {
+            discard(response);
+            if (PageToolApp.verbose) {
+                Output.info("Too many nodes at " + url + "; listing the children of " + path + " with a query.");
+            }
+            JsonObject node = getNode(path, 0);
+            for (ResultPage child : getChildren(path)) {
+                JsonObject properties = child.getProperties() != null ? child.getProperties().deepCopy() : new JsonObject();
+                properties.remove("jcr:path");
+                node.add(child.getJcrPath().substring(child.getJcrPath().lastIndexOf('/') + 1), properties);
+            }
+            return node;
+        }
+        if (lastStatusCode != 200) {
+            discard(response);
+            throw new IOException("Failed to access URL: " + url + " (status code: " + lastStatusCode + ")");
+        }
+        JsonElement node;
+        try (response; Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            node = JsonParser.parseReader(reader);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid node response from " + url + ": " + e.getMessage(), e);
+        }
+        if (!node.isJsonObject()) {
+            throw new IOException("Invalid node response from " + url);
+        }
+        return node.getAsJsonObject();
+    }
+
+    /**
+     * Lists the child nodes of a node with a flat query, one window after the other.
+     * @return The children with their properties
+     */
+    private List<ResultPage> getChildren(String path) throws IOException {
+        List<ResultPage> children = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            String url = queryUrl.buildChildrenUrl(path, offset);
+            if (PageToolApp.verbose) {
+                Output.ninfo("Querying Sling URL: "); Output.nhl(url); Output.line();
+            }
+            ResultSet resultSet;
+            try (HttpTransport.Response response = openSuccessfulGet(url);
+                 Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+                resultSet = new Gson().fromJson(reader, ResultSet.class);
+            } catch (JsonParseException e) {
+                throw new IOException("Invalid query response from " + url + ": " + e.getMessage(), e);
+            }
+            if (resultSet == null || resultSet.getHits() == null || resultSet.getHits().isEmpty()) {
+                return children;
+            }
+            for (ResultPage hit : resultSet.getHits()) {
+                if (hit.getJcrPath() != null) {
+                    children.add(hit);
+                }
+            }
+            offset += resultSet.getHits().size();
+            if (!resultSet.isMore() && offset >= resultSet.getTotal()) {
+                return children;
             }
         }
     }
 
+    /**
+     * Set the hits that are about to be processed by this client. Property values selected by the query (see
+     * {@link OperationProperties#getReadProperties()}) are then read from the hits instead of requesting each node,
+     * until the node is changed by one of the single operations.
+     * @param hits The hits, replacing those of the previous call
+     */
+    public void setHits(List<ResultPage> hits) {
+        hitValues.clear();
+        for (ResultPage hit : hits) {
+            // For pages, values are read from the content node, so only hits of content nodes can be used
+            if (hit.getJcrPath() != null && hit.getProperties() != null
+                    && (!properties.isCqPageType() || hit.getJcrPath().endsWith("/jcr:content"))) {
+                hitValues.put(hit.getJcrPath(), hit.getProperties());
+            }
+        }
+    }
+
+    /**
+     * Get a property value from the current hits
+     * @return The value, or null if the value is not part of the hit
+     */
+    private JsonElement getHitValue(String path, String propertyName) {
+        JsonObject node = hitValues.get(path);
+        return node != null ? findValue(node, propertyName) : null;
+    }
+
+    /**
+     * Get the value of a property in the JSON of a node
+     * @param node         The node, including its children down to the property
+     * @param propertyName The property name, which may be a path relative to the node
+     * @return The value, or null if the property is not found
+     */
+    private static JsonElement findValue(JsonObject node, String propertyName) {
+        String[] names = propertyName.split("/");
+        for (int i = 0; i < names.length - 1; i++) {
+            JsonElement child = node.get(names[i]);
+            if (child == null || !child.isJsonObject()) {
+                return null;
+            }
+            node = child.getAsJsonObject();
+        }
+        JsonElement value = node.get(names[names.length - 1]);
+        if (value == null || value.isJsonNull() || value.isJsonObject()) {
+            return null;
+        }
+        return value;
+    }
+
+    private static String toValueString(JsonElement value) {
+        if (value.isJsonArray()) {
+            StringBuilder sb = new StringBuilder();
+            for (JsonElement val : value.getAsJsonArray()) {
+                if (sb.length() > 0) sb.append(",");
+                sb.append(val.getAsString());
+            }
+            return sb.toString();
+        }
+        return value.getAsString();
+    }
+
+    /**
+     * Get the value of a property of a node, from the current hit if the query selected it, otherwise with a
+     * request for the node. Multiple values are joined with commas.
+     * @param path         The path of the node (for pages, the page or its content node)
+     * @param propertyName The property name, which may be a path relative to the node
+     * @return The value, or null if the property does not exist
+     */
     public String getPropertyValue(String path, String propertyName) throws IOException {
+        JsonElement value = getPropertyElement(path, propertyName);
+        return value != null ? toValueString(value) : null;
+    }
+
+    /**
+     * Get the JSON value of a property of a node, see {@link #getPropertyValue(String, String)}
+     * @return The value (a primitive or an array), or null if the property does not exist
+     */
+    private JsonElement getPropertyElement(String path, String propertyName) throws IOException {
+        return getPropertyElement(path, propertyName, false);
+    }
+
+    /**
+     * Get the JSON value of a property of a node, see {@link #getPropertyValue(String, String)}
+     * @param failOnError Whether a failed read throws, so that it is not taken for a missing property; a node that
+     *                    does not exist (404) still has no property
+     * @return The value (a primitive or an array), or null if the property does not exist (or cannot be read, unless
+     *         failOnError is set)
+     */
+    private JsonElement getPropertyElement(String path, String propertyName, boolean failOnError) throws IOException {
+        JsonElement hitValue = getHitValue(path, propertyName);
+        if (hitValue != null) {
+            if (PageToolApp.verbose) {
+                Output.info("\nRead property value for '" + propertyName + "' from query hit " + path);
+            }
+            return hitValue;
+        }
+        if (snapshotCache != null) {
+            String nodePath = getContentPath(path);
+            JsonObject snapshot = getSnapshot(nodePath, getDepth(propertyName));
+            if (snapshot != null) {
+                JsonElement value = findValue(snapshot, propertyName);
+                if (value == null && PageToolApp.verbose) {
+                    Output.nwarn("\nProperty '" + propertyName + "' not found at " + nodePath);
+                }
+                return value;
+            }
+        }
         String lastNode = propertyName.contains("/") ? propertyName.substring(0, propertyName.lastIndexOf("/")) : "";
         String propName = propertyName.contains("/") ? propertyName.substring(propertyName.lastIndexOf("/") + 1) : propertyName;
         if (properties.isCqPageType()) {
@@ -188,56 +746,132 @@ public class SlingClient {
             Output.info("\nFetching property value for '" + propertyName + "' at " + url);
         }
         String responseText = executeGet(url);
+        if (failOnError && lastStatusCode == 404) {
+            return null;
+        }
+        if (failOnError && lastStatusCode != 200) {
+            throw new IOException("Unable to read property '" + propertyName + "' at " + url + " (status code: " + lastStatusCode + ")");
+        }
 
         if (responseText == null || responseText.isEmpty()) {
+            if (failOnError) {
+                throw new IOException("Empty response for property '" + propertyName + "' at " + url);
+            }
             if (PageToolApp.verbose) {
                 Output.nwarn("\nEmpty response for property '" + propertyName + "' at " + url);
             }
             return null;
         }
 
+        JsonElement root;
         try {
-            JsonElement root = JsonParser.parseString(responseText);
-            if (!root.isJsonObject()) {
-                if (PageToolApp.verbose) {
-                    Output.nwarn("Invalid JSON response for property '" + propertyName + "' at " + url + ": " + responseText);
-                }
-                return null;
+            root = JsonParser.parseString(responseText);
+        } catch (JsonParseException e) {
+            if (failOnError) {
+                throw new IOException("Invalid JSON response for property '" + propertyName + "' at " + url + ": " + e.getMessage(), e);
             }
-            JsonElement valueElement = root.getAsJsonObject();
-            if (!lastNode.isEmpty()) {
-                for (String node : lastNode.split("/")) {
-                    valueElement = valueElement.getAsJsonObject().get(node);
-                    if (valueElement == null || !valueElement.isJsonObject()) {
-                        if (PageToolApp.verbose) {
-                            Output.nwarn("Node '" + node + "' not found in path for property '" + propertyName + "' at " + url);
-                        }
-                        return null;
+            if (PageToolApp.verbose) {
+                Output.nwarn("Failed to parse property '" + propertyName + "' from response at " + url + ": " + e.getMessage());
+            }
+            return null;
+        }
+        if (!root.isJsonObject()) {
+            if (failOnError) {
+                throw new IOException("Invalid JSON response for property '" + propertyName + "' at " + url);
+            }
+            if (PageToolApp.verbose) {
+                Output.nwarn("Invalid JSON response for property '" + propertyName + "' at " + url + ": " + responseText);
+            }
+            return null;
+        }
+        JsonElement valueElement = root.getAsJsonObject();
+        if (!lastNode.isEmpty()) {
+            for (String node : lastNode.split("/")) {
+                valueElement = valueElement.getAsJsonObject().get(node);
+                if (valueElement == null || !valueElement.isJsonObject()) {
+                    if (PageToolApp.verbose) {
+                        Output.nwarn("Node '" + node + "' not found in path for property '" + propertyName + "' at " + url);
                     }
+                    return null;
                 }
             }
-            valueElement = valueElement.getAsJsonObject().get(propName);
-            if (valueElement == null) {
-                if (PageToolApp.verbose) {
-                    Output.nwarn("Property '" + propName + "' not found at " + url);
-                }
-                return null;
+        }
+        valueElement = valueElement.getAsJsonObject().get(propName);
+        if (valueElement == null) {
+            if (PageToolApp.verbose) {
+                Output.nwarn("Property '" + propName + "' not found at " + url);
             }
-            if (valueElement.isJsonArray()) {
-                StringBuilder sb = new StringBuilder();
-                for (JsonElement val : valueElement.getAsJsonArray()) {
-                    if (sb.length() > 0) sb.append(",");
-                    sb.append(val.getAsString());
-                }
-                return sb.toString();
+            return null;
+        }
+        return valueElement.isJsonObject() ? null : valueElement;
+    }
+
+    /**
+     * Get the snapshot of a node from the cache, or fetch it with the depth needed for all properties that are read
+     * from it (see {@link OperationProperties#getReadProperties()}).
+     * @param nodePath The path of the node
+     * @param depth    The depth of the property to read
+     * @return The node, or null if it cannot be fetched with the required depth
+     */
+    private JsonObject getSnapshot(String nodePath, int depth) throws IOException {
+        JsonObject snapshot = snapshotCache.get(nodePath, depth);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        for (String property : properties.getReadProperties()) {
+            depth = Math.max(depth, getDepth(property));
+        }
+        String url = queryUrl.buildNodeUrl(nodePath, depth);
+        if (PageToolApp.verbose) {
+            Output.info("\nFetching node snapshot at " + url);
+        }
+        String responseText = executeGet(url);
+        // Sling answers with 300 (Multiple Choices) if the tree is too large for the requested depth
+        if (lastStatusCode != 200 || responseText == null) {
+            if (PageToolApp.verbose) {
+                Output.nwarn("\nUnable to fetch node snapshot at " + url + " (status code: " + lastStatusCode + ")");
+            }
+            return null;
+        }
+        try {
+            JsonElement root = JsonParser.parseString(responseText);
+            if (!root.isJsonObject()) {
+                return null;
             }
-            return valueElement.getAsString();
-        } catch (Exception e) {
+            snapshot = root.getAsJsonObject();
+        } catch (JsonParseException e) {
             if (PageToolApp.verbose) {
-                Output.nwarn("Failed to parse property '" + propertyName + "' from response at " + url + ": " + e.getMessage());
+                Output.nwarn("\nInvalid node snapshot at " + url + ": " + e.getMessage());
             }
             return null;
         }
+        snapshotCache.put(nodePath, depth, snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * Get the number of child node levels needed to read a property
+     */
+    private static int getDepth(String propertyName) {
+        return propertyName.split("/").length - 1;
+    }
+
+    /**
+     * Get the path of the node that holds the properties of a page or node
+     */
+    private String getContentPath(String path) {
+        return properties.isCqPageType() && !path.endsWith("/jcr:content") ? path + "/jcr:content" : path;
+    }
+
+    /**
+     * Forgets all values read from a node after it has been changed
+     */
+    private void nodeChanged(String path) {
+        hitValues.remove(path);
+        if (snapshotCache != null) {
+            snapshotCache.remove(getContentPath(path));
+        }
     }
 
     /**
@@ -245,57 +879,318 @@ public class SlingClient {
      */
     public void updatePage(String path) throws IOException {
         String url = queryUrl.buildUrl(false, path, properties.getUpdateProperties());
-        List<NameValuePair> params = new ArrayList<>();
+        PageMutation mutation = new PageMutation();
 
         if (properties.getDeleteProperties() != null) { // Handle deletions
             for (String prop : properties.getDeleteProperties()) {
-                params.add(new BasicNameValuePair(prop + SlingPostConstants.SUFFIX_DELETE, "true"));
-            }
-        }
-
-        // Handle updates with conditional overwrite for multi-valued properties
-        if (properties.getUpdateProperties() != null && properties.getMatchingProperties() != null) {
-            for (Property updateProp : properties.getUpdateProperties()) {
-                if (updateProp.isMulti()) {
-                    // Find matching property from search criteria
-                    Property matchingProp = properties.getMatchingProperties().stream()
-                            .filter(p -> p.getName().equals(updateProp.getName()) && p.isMulti())
-                            .findFirst()
-                            .orElse(null);
-                    if (matchingProp != null) {
-                        String targetValue = matchingProp.getValues()[0];
-                        String currentValue = getPropertyValue(path, updateProp.getName());
-                        if (currentValue != null && currentValue.contains(targetValue)) {
-                            // Overwrite with the single value from updateProp if the search value is present
-                            params.add(new BasicNameValuePair(updateProp.getName() + SlingPostConstants.TYPE_HINT_SUFFIX, "String[]"));
-                            params.add(new BasicNameValuePair(updateProp.getName(), updateProp.getValues()[0]));
-                        }
-                    } else {
-                        params.add(new BasicNameValuePair(updateProp.getName() + SlingPostConstants.TYPE_HINT_SUFFIX, "String[]"));
-                        for (String value : updateProp.getValues()) {
-                            params.add(new BasicNameValuePair(updateProp.getName(), value));
-                        }
-                    }
-                } else {
-                    params.add(new BasicNameValuePair(updateProp.getName(), updateProp.getValue()));
+                addDelete(path, mutation, prop);
+            }
+        }
+        addUpdates(path, mutation);
+
+        if (!mutation.isEmpty()) {
+            executePost(url, mutation.getParameters());
+            nodeChanged(path);
+        }
+    }
+
+    /**
+     * Adds the configured property updates, with conditional overwrite for multi-valued properties: if a
+     * multi-valued property is also a search criterion, it is only overwritten if it contains the searched value.
+     */
+    private void addUpdates(String path, PageMutation mutation) throws IOException {
+        if (properties.getUpdateProperties() == null) {
+            return;
+        }
+        for (Property updateProp : properties.getUpdateProperties()) {
+            if (!updateProp.isMulti()) {
+                addSet(path, mutation, updateProp.getName(), updateProp.getValue());
+                continue;
+            }
+            // Find matching property from search criteria
+            Property matchingProp = properties.getMatchingProperties() == null ? null : properties.getMatchingProperties().stream()
+                    .filter(p -> p.getName().equals(updateProp.getName()) && p.isMulti())
+                    .findFirst()
+                    .orElse(null);
+            if (matchingProp != null) {
+                String targetValue = matchingProp.getValues()[0];
+                String currentValue = getPropertyValue(path, updateProp.getName());
+                if (currentValue != null && currentValue.contains(targetValue)) {
+                    // Overwrite with the single value from updateProp if the search value is present
+                    addSetMulti(path, mutation, updateProp.getName(), updateProp.getValues()[0]);
                 }
+            } else {
+                addSetMulti(path, mutation, updateProp.getName(), updateProp.getValues());
             }
-        } else if (properties.getUpdateProperties() != null) {
-            // Fallback for non-conditional updates
-            for (Property prop : properties.getUpdateProperties()) {
-                if (prop.isMulti()) {
-                    params.add(new BasicNameValuePair(prop.getName() + SlingPostConstants.TYPE_HINT_SUFFIX, "String[]"));
-                    for (String value : prop.getValues()) {
-                        params.add(new BasicNameValuePair(prop.getName(), value));
-                    }
-                } else {
-                    params.add(new BasicNameValuePair(prop.getName(), prop.getValue()));
+        }
+    }
+
+    /**
+     * Adds the deletion of a property, unless unchanged values are skipped and the property does not exist. If the
+     * property cannot be read, it is deleted anyway, since deleting a property that does not exist changes nothing.
+     */
+    private void addDelete(String path, PageMutation mutation, String name) throws IOException {
+        if (properties.isSkipUnchanged() && !hasProperty(path, name)) {
+            skipped(path, name);
+            return;
+        }
+        mutation.delete(name);
+    }
+
+    private boolean hasProperty(String path, String name) {
+        try {
+            return getPropertyElement(path, name, true) != null;
+        } catch (IOException e) {
+            Output.nwarn("\n" + e.getMessage() + "; deleting it anyway");
+            return true;
+        }
+    }
+
+    /**
+     * Adds a single-value property, unless unchanged values are skipped and the property already has the value.
+     */
+    private void addSet(String path, PageMutation mutation, String name, String value) throws IOException {
+        if (properties.isSkipUnchanged()) {
+            JsonElement current = getPropertyElement(path, name);
+            if (current != null && current.isJsonPrimitive() && current.getAsString().equals(value)) {
+                skipped(path, name);
+                return;
+            }
+        }
+        mutation.set(name, value);
+    }
+
+    /**
+     * Adds a multi-value property, unless unchanged values are skipped and the property already has the values.
+     */
+    private void addSetMulti(String path, PageMutation mutation, String name, String... values) throws IOException {
+        if (properties.isSkipUnchanged() && hasValues(getPropertyElement(path, name), values)) {
+            skipped(path, name);
+            return;
+        }
+        mutation.setMulti(name, values);
+    }
+
+    private static boolean hasValues(JsonElement current, String[] values) {
+        if (current == null || !current.isJsonArray() || current.getAsJsonArray().size() != values.length) {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++) {
+            JsonElement value = current.getAsJsonArray().get(i);
+            if (!value.isJsonPrimitive() || !value.getAsString().equals(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipped(String path, String name) {
+        skippedCount++;
+        if (PageToolApp.verbose) {
+            Output.info("\nSkipping unchanged property '" + name + "' at " + path);
+        }
+    }
+
+    /**
+     * Performs all configured property operations on a page with a single POST request: deletions, updates,
+     * property copies, string replacement and node creation. Node copies (<code>:operation=copy</code>) cannot be
+     * combined with other changes and must be done with {@link #copyProperties(String, boolean)}.
+     *
+     * @param path The path of the page
+     * @throws SlingClientException If the value to replace cannot be read; all other changes are still committed
+     * @throws IOException          If the request fails
+     */
+    public void commitPage(String path) throws SlingClientException, IOException {
+        PageMutation mutation = new PageMutation();
+        SlingClientException replacementFailure = null;
+        try {
+            addChanges(path, mutation);
+        } catch (SlingClientException e) {
+            replacementFailure = e;
+        }
+
+        if (!mutation.isEmpty()) {
+            executePost(queryUrl.buildUrl(path, ""), mutation.getParameters());
+            nodeChanged(path);
+        }
+        if (replacementFailure != null) {
+            throw replacementFailure;
+        }
+    }
+
+    /**
+     * Adds all configured property operations of a page to the mutation. The string replacement is added last, so
+     * that all other changes are added even if the value to replace cannot be read.
+     */
+    private void addChanges(String path, PageMutation mutation) throws SlingClientException, IOException {
+        if (properties.getDeleteProperties() != null) {
+            for (String prop : properties.getDeleteProperties()) {
+                addDelete(path, mutation, prop);
+            }
+        }
+        addUpdates(path, mutation);
+        if (properties.isPropertyCopy()) {
+            addPropertyCopies(path, mutation);
+        }
+        if (properties.getCreateNode() != null) {
+            addCreateNode(path, mutation);
+        }
+        if (properties.getPropertyValueReplacement() != null) {
+            addReplacement(path, mutation);
+        }
+    }
+
+    /**
+     * Adds the configured node, unless unchanged values are skipped and the node already exists with its type.
+     */
+    private void addCreateNode(String path, PageMutation mutation) throws IOException {
+        Property node = properties.getCreateNode();
+        if (properties.isSkipUnchanged()) {
+            JsonElement current = getPropertyElement(path, node.getName() + "/jcr:primaryType");
+            if (current != null && current.isJsonPrimitive() && current.getAsString().equals(node.getValue())) {
+                skipped(path, node.getName());
+                return;
+            }
+        }
+        mutation.createNode(node.getName(), node.getValue());
+    }
+
+    /**
+     * Performs the operations of {@link #commitPage(String)} on several pages with as few requests as possible.
+     * The changes are sent to the nearest common ancestor of the pages (see {@link PageBatch}), split into several
+     * requests if they exceed the size of a single form.
+     * <p>
+     * Sling commits a request as a whole, so if a request fails, none of its pages are updated. The page named in
+     * the error of the response is marked as failed and the remaining pages are sent again; if the error does not
+     * name a page, each page is sent with its own request.
+     *
+     * @param paths The paths of the pages
+     * @return The paths of the pages that could not be updated
+     * @throws IOException If a request fails
+     */
+    public Set<String> commitPages(List<String> paths) throws IOException {
+        Set<String> failedPages = new LinkedHashSet<>();
+        PageBatch batch = new PageBatch();
+        for (String path : paths) {
+            PageMutation mutation = new PageMutation();
+            try {
+                addChanges(path, mutation);
+            } catch (SlingClientException e) {
+                Output.nwarn("\nFailed to replace property value at " + path + ": " + e.getMessage());
+                failedPages.add(path);
+            }
+            if (mutation.isEmpty()) {
+                if (!failedPages.contains(path)) {
+                    unchangedCount++;
+                }
+                continue;
+            }
+            String targetPath = queryUrl.getNodePath(path);
+            if (!batch.fits(path, targetPath, mutation)) {
+                failedPages.addAll(postBatch(batch));
+                batch = new PageBatch();
+            }
+            batch.add(path, targetPath, mutation);
+        }
+        if (!batch.isEmpty()) {
+            failedPages.addAll(postBatch(batch));
+        }
+        for (String path : paths) {
+            nodeChanged(path);
+        }
+
+        return failedPages;
+    }
+
+    /**
+     * Sends a batch with a single request and maps a failure of the request back to its pages.
+     * @return The paths of the pages that could not be updated
+     */
+    private Set<String> postBatch(PageBatch batch) throws IOException {
+        Set<String> failedPages = new LinkedHashSet<>();
+        if (batch.size() == 1) {
+            String path = batch.getPagePaths().get(0);
+            int failuresBefore = failureCount;
+            executePost(queryUrl.buildUrl(path, ""), batch.getMutation(path).getParameters());
+            if (failureCount != failuresBefore) {
+                failedPages.add(path);
+            }
+            return failedPages;
+        }
+
+        String url = queryUrl.buildNodeUrl(batch.getCommonAncestor());
+        List<NameValuePair> params = batch.getParameters();
+        params.add(new BasicNameValuePair(HTTP_EQUIV_ACCEPT, "application/json"));
+        int failuresBefore = failureCount;
+        executePost(url, params);
+        if (failureCount == failuresBefore) {
+            if (PageToolApp.verbose) {
+                Output.info("Committed " + batch.size() + " pages with a single request to " + url);
+            }
+            return failedPages;
+        }
+        // The failed batch is not counted, only the pages that fail
+        failureCount = failuresBefore;
+
+        String failedPage = batch.findPage(getErrorMessage(lastResponseText));
+        if (failedPage != null) {
+            Output.nwarn("\nFailed to update " + failedPage + "; retrying the remaining pages of the batch.");
+            failedPages.add(failedPage);
+            failureCount++;
+            failedPages.addAll(postBatch(batch.without(failedPage)));
+        } else {
+            Output.nwarn("\nBatch request failed; retrying each page with its own request.");
+            for (String path : batch.getPagePaths()) {
+                int before = failureCount;
+                executePost(queryUrl.buildUrl(path, ""), batch.getMutation(path).getParameters());
+                if (failureCount != before) {
+                    failedPages.add(path);
                 }
             }
         }
 
-        if (!params.isEmpty()) {
-            executePost(url, params);
+        return failedPages;
+    }
+
+    /**
+     * Get the error message of a Sling POST JSON response, or the whole response if it has no JSON error.
+     */
+    private static String getErrorMessage(String responseText) {
+        if (responseText == null) {
+            return null;
+        }
+        try {
+            JsonElement root = JsonParser.parseString(responseText);
+            if (root.isJsonObject() && root.getAsJsonObject().has("error")) {
+                JsonElement error = root.getAsJsonObject().get("error");
+                if (error.isJsonObject() && error.getAsJsonObject().has("message")) {
+                    return error.getAsJsonObject().get("message").getAsString();
+                }
+            }
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            // not a JSON response
+        }
+        return responseText;
+    }
+
+    /**
+     * Adds the values of the configured copy sources to the copy targets.
+     */
+    private void addPropertyCopies(String path, PageMutation mutation) throws IOException {
+        if (properties.getCopyFromProperties() == null || properties.getCopyToProperties() == null) {
+            return;
+        }
+        for (int i = 0; i < properties.getCopyFromProperties().size() && i < properties.getCopyToProperties().size(); i++) {
+            String from = properties.getCopyFromProperties().get(i);
+            String to = properties.getCopyToProperties().get(i);
+            String propValue = getPropertyValue(path, from);
+            if (propValue == null) {
+                if (PageToolApp.verbose) {
+                    Output.nwarn("\nSource property '" + from + "' not found at " + path + "; skipping.");
+                }
+                continue;
+            }
+            addSet(path, mutation, to, propValue);
         }
     }
 
@@ -304,80 +1199,91 @@ public class SlingClient {
             Output.nwarn("Copy properties are not configured.");
             return;
         }
-        HttpHost httpHost = createHttpHost();
-        try (CloseableHttpClient client = createHttpClient(httpHost)) {
-            HttpClientContext context = createClientContext(httpHost);
-            for (int i = 0; i < properties.getCopyFromProperties().size(); i++) {
-                String from = properties.getCopyFromProperties().get(i);
-                String to = properties.getCopyToProperties().get(i);
-                if (to == null) {
+        for (int i = 0; i < properties.getCopyFromProperties().size(); i++) {
+            String from = properties.getCopyFromProperties().get(i);
+            String to = properties.getCopyToProperties().get(i);
+            if (to == null) {
+                if (PageToolApp.verbose) {
+                    Output.nwarn("No target property specified for source '" + from + "'; skipping.");
+                }
+                break;
+            }
+            if (isPropertyCopy) {
+                String propValue = getPropertyValue(path, from);
+                if (propValue == null) {
                     if (PageToolApp.verbose) {
-                        Output.nwarn("No target property specified for source '" + from + "'; skipping.");
+                        Output.nwarn("\nSource property '" + from + "' not found at " + path + "; skipping.");
                     }
-                    break;
+                    continue;
                 }
-                if (isPropertyCopy) {
-                    String propValue = getPropertyValue(path, from);
-                    if (propValue == null) {
-                        if (PageToolApp.verbose) {
-                            Output.nwarn("\nSource property '" + from + "' not found at " + path + "; skipping.");
-                        }
-                        continue;
-                    }
-                    String targetPath;
-                    if (from.contains("/")) {
-                        String parentPath = from.substring(0, from.lastIndexOf("/"));
-                        String toParentPath = to.substring(0, to.lastIndexOf("/"));
-                        if (!parentPath.equals(toParentPath)) {
-                            if (PageToolApp.verbose) {
-                                Output.nwarn("\nSource and target parent paths do not match ('" + parentPath + "' vs '" + toParentPath + "'); skipping.");
-                            }
-                            continue;
-                        }
-                        targetPath = queryUrl.buildUrl(path, parentPath);
-                    } else {
-                        targetPath = queryUrl.buildUrl(path, "");
-                    }
-                    if (!targetPath.startsWith(conn.isSecure() ? SCHEME_SECURE : SCHEME)) {
+                if (properties.isSkipUnchanged() && propValue.equals(getPropertyValue(path, to))) {
+                    skipped(path, to);
+                    continue;
+                }
+                String targetPath;
+                if (from.contains("/")) {
+                    String parentPath = from.substring(0, from.lastIndexOf("/"));
+                    String toParentPath = to.substring(0, to.lastIndexOf("/"));
+                    if (!parentPath.equals(toParentPath)) {
                         if (PageToolApp.verbose) {
-                            Output.nwarn("\nInvalid target path for property copy: " + targetPath + "; skipping.");
+                            Output.nwarn("\nSource and target parent paths do not match ('" + parentPath + "' vs '" + toParentPath + "'); skipping.");
                         }
                         continue;
                     }
-                    String toPropName = to.contains("/") ? to.substring(to.lastIndexOf("/") + 1) : to;
-                    List<NameValuePair> params = new ArrayList<>();
-                    params.add(new BasicNameValuePair(toPropName, propValue));
-                    executePost(targetPath, params);
-                    if (lastStatusCode != 200 && lastStatusCode != 201) {
-                        Output.nwarn("Failed to copy property from '" + from + "' to '" + to + "' at " + targetPath + " (status code: " + lastStatusCode + ")");
-                        continue;
-                    }
-                    if (PageToolApp.verbose) {
-                        Output.info("Copied property '" + from + "' to '" + to + "' at " + targetPath);
-                    }
+                    targetPath = queryUrl.buildUrl(path, parentPath);
                 } else {
-                    String parentPath = path.substring(0, path.lastIndexOf("/"));
-                    List<NameValuePair> params = new ArrayList<>();
-                    params.add(new BasicNameValuePair(":operation", "copy"));
-                    params.add(new BasicNameValuePair(":dest", parentPath + "/" + to));
-                    String sourcePath = queryUrl.buildUrl(path, null, null, false, false, null, false, properties);
-                    executePost(sourcePath, params);
-                    if (lastStatusCode != 200 && lastStatusCode != 201) {
-                        Output.nwarn("Failed to copy node from '" + from + "' to '" + to + "' at " + parentPath + "/" + to + " (status code: " + lastStatusCode + ")");
-                        continue;
-                    }
+                    targetPath = queryUrl.buildUrl(path, "");
+                }
+                if (!targetPath.startsWith(conn.isSecure() ? SCHEME_SECURE : SCHEME)) {
                     if (PageToolApp.verbose) {
-                        Output.info("\nCopied node from '" + from + "' to '" + to + "' at " + parentPath + "/" + to);
+                        Output.nwarn("\nInvalid target path for property copy: " + targetPath + "; skipping.");
                     }
+                    continue;
+                }
+                String toPropName = to.contains("/") ? to.substring(to.lastIndexOf("/") + 1) : to;
+                List<NameValuePair> params = new ArrayList<>();
+                params.add(new BasicNameValuePair(toPropName, propValue));
+                executePost(targetPath, params);
+                nodeChanged(path);
+                if (lastStatusCode != 200 && lastStatusCode != 201) {
+                    Output.nwarn("Failed to copy property from '" + from + "' to '" + to + "' at " + targetPath + " (status code: " + lastStatusCode + ")");
+                    continue;
+                }
+                if (PageToolApp.verbose) {
+                    Output.info("Copied property '" + from + "' to '" + to + "' at " + targetPath);
+                }
+            } else {
+                String parentPath = path.substring(0, path.lastIndexOf("/"));
+                List<NameValuePair> params = new ArrayList<>();
+                params.add(new BasicNameValuePair(":operation", "copy"));
+                params.add(new BasicNameValuePair(":dest", parentPath + "/" + to));
+                String sourcePath = queryUrl.buildUrl(path, null, null, false, false, null, false, properties);
+                executePost(sourcePath, params);
+                if (lastStatusCode != 200 && lastStatusCode != 201) {
+                    Output.nwarn("Failed to copy node from '" + from + "' to '" + to + "' at " + parentPath + "/" + to + " (status code: " + lastStatusCode + ")");
+                    continue;
+                }
+                if (PageToolApp.verbose) {
+                    Output.info("\nCopied node from '" + from + "' to '" + to + "' at " + parentPath + "/" + to);
                 }
             }
-        } catch (SlingClientException e) {
-            Output.warn("Failed to initialize HTTP client: " + e.getMessage());
-            throw new IOException("Unable to execute copy operation due to client initialization failure", e);
         }
     }
 
     public void replacePropertyValue(String path) throws SlingClientException, IOException {
+        PageMutation mutation = new PageMutation();
+        addReplacement(path, mutation);
+        if (!mutation.isEmpty()) {
+            executePost(queryUrl.buildUrl(path, ""), mutation.getParameters());
+            nodeChanged(path);
+        }
+    }
+
+    /**
+     * Reads the current value of the replacement property and adds the value with the configured string
+     * replacement applied, unless unchanged values are skipped and the value does not contain the search string.
+     */
+    private void addReplacement(String path, PageMutation mutation) throws SlingClientException, IOException {
         Property replacement = properties.getPropertyValueReplacement();
         if (replacement == null || replacement.getValues().length < 2) {
             throw new SlingClientException("Replacement property or values not properly configured");
@@ -387,9 +1293,11 @@ public class SlingClient {
             throw new SlingClientException("Unable to retrieve value for property: " + replacement.getName());
         }
         String updatedValue = currentValue.replace(replacement.getValues()[0], replacement.getValues()[1]);
-        List<NameValuePair> params = new ArrayList<>();
-        params.add(new BasicNameValuePair(replacement.getName(), updatedValue));
-        executePost(queryUrl.buildUrl(path, ""), params);
+        if (properties.isSkipUnchanged() && updatedValue.equals(currentValue)) {
+            skipped(path, replacement.getName());
+            return;
+        }
+        mutation.set(replacement.getName(), updatedValue);
     }
 
     public void deleteProperties(String path) throws IOException {
@@ -398,11 +1306,15 @@ public class SlingClient {
             return;
         }
         String url = queryUrl.buildUrl(path, "");
-        List<NameValuePair> params = new ArrayList<>();
+        PageMutation mutation = new PageMutation();
         for (String prop : properties.getDeleteProperties()) {
-            params.add(new BasicNameValuePair(prop + SlingPostConstants.SUFFIX_DELETE, "true"));
+            addDelete(path, mutation, prop);
         }
-        executePost(url, params);
+        if (mutation.isEmpty()) {
+            return;
+        }
+        executePost(url, mutation.getParameters());
+        nodeChanged(path);
         if (PageToolApp.verbose && lastStatusCode == 200) {
             Output.info("Successfully deleted properties for " + path + " (status code: " + lastStatusCode + ")");
         }
@@ -416,15 +1328,56 @@ public class SlingClient {
         }
         String nodeName = node.getName();
         String primaryType = node.getValue();
+        if (properties.isSkipUnchanged()) {
+            PageMutation mutation = new PageMutation();
+            addCreateNode(parentPath, mutation);
+            if (mutation.isEmpty()) {
+                return;
+            }
+        }
         String url = queryUrl.buildUrl(parentPath, null) + "/" + nodeName;
         List<NameValuePair> params = new ArrayList<>();
         params.add(new BasicNameValuePair("jcr:primaryType", primaryType));
         executePost(url, params);
+        nodeChanged(parentPath);
         if (PageToolApp.verbose && lastStatusCode == 201) {
             Output.info("Successfully created node " + nodeName + " at " + parentPath + "/" + nodeName + " (status code: " + lastStatusCode + ")");
         }
     }
 
+    /**
+     * Get the number of hits per query window
+     * @return The page size, or 0 if queries are not paged
+     */
+    public int getQueryPageSize() {
+        return queryUrl.getPageSize();
+    }
+
+    /**
+     * Get the number of POST requests sent by this client
+     * @return The number of writes
+     */
+    public int getPostCount() {
+        return postCount;
+    }
+
+    /**
+     * Get the number of property changes that were not sent because the node already had the planned value
+     * (see {@link OperationProperties#isSkipUnchanged()})
+     * @return The number of skipped property writes
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Get the number of pages of {@link #commitPages(List)} that did not need any change
+     * @return The number of unchanged pages
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
     public int getLastStatusCode() {
         return lastStatusCode;
     }
@@ -433,4 +1386,12 @@ public class SlingClient {
         return lastResponseText;
     }
 
+    /**
+     * Get the number of POST requests of this client that were not successful.
+     * @return The number of failed updates
+     */
+    public int getFailureCount() {
+        return failureCount;
+    }
+
 }
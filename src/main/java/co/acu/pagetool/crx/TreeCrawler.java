@@ -0,0 +1,243 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.ResultPage;
+import co.acu.pagetool.util.Output;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds the hits of the configured operations by walking the tree below the query path with Sling JSON requests
+ * instead of a query, so that properties without an Oak index can be matched without a traversing query. Each node
+ * is read once with its children (<code>.1.json</code>, or deeper if nested properties are matched) and checked with
+ * a {@link NodeFilter} on the client. The subtrees are walked in parallel on a work-stealing
+ * <code>ForkJoinPool</code>, and matching nodes are returned while the walk continues.
+ * <p>
+ * The walk can be limited to a number of levels below the root, and to descend only into child nodes of some types
+ * (e.g. <code>cq:Page</code>). If the hits are page content nodes, the <code>jcr:content</code> node of each visited
+ * node is checked; each page is listed with <code>.1.json</code>, and its content node is read on its own if nested
+ * properties are needed, so that a page with many child pages does not exceed the number of nodes Sling renders.
+ * A node with more children than that is listed with a query (see {@link SlingClient#getNode(String, int)}). Errors
+ * while reading a node are thrown as {@link UncheckedIOException}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class TreeCrawler implements HitIterator {
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final String CONTENT_NODE = "jcr:content";
+    // Marks the end of the hits in the queue
+    private static final ResultPage END = new ResultPage();
+
+    private final NodeFilter filter;
+    private final int maxDepth;
+    private final Set<String> descendTypes;
+    private final int fetchDepth;
+    private final int contentDepth;
+    private final boolean pageContent;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<SlingClient> clients;
+    private final BlockingQueue<ResultPage> hits = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger visitedCount = new AtomicInteger();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    private ResultPage lookahead = null;
+    private boolean done = false;
+
+    /**
+     * Starts walking the tree in the background.
+     *
+     * @param slingClient  The client from which a client for each crawler thread is created
+     * @param path         The root of the tree; the root itself is not a hit, as in a query
+     * @param filter       The criteria that hits must match
+     * @param readDepth    The number of child node levels needed to read the properties of a hit
+     * @param maxDepth     The number of levels below the root to visit, or 0 for all levels
+     * @param descendTypes The node types to descend into, or an empty set for all types
+     * @param threads      The number of nodes that are read concurrently
+     */
+    public TreeCrawler(SlingClient slingClient, String path, NodeFilter filter, int readDepth, int maxDepth, Set<String> descendTypes, int threads) {
+        this.filter = filter;
+        this.maxDepth = maxDepth;
+        this.descendTypes = descendTypes;
+        this.pageContent = "cq:PageContent".equals(filter.getType());
+        // Children are needed to descend; the properties of page content nodes are read from the content node
+        int propertyDepth = Math.max(filter.getPropertyDepth(), readDepth);
+        this.fetchDepth = pageContent ? 1 : Math.max(1, propertyDepth);
+        this.contentDepth = pageContent ? propertyDepth : 0;
+        this.clients = ThreadLocal.withInitial(() -> {
+            try {
+                return slingClient.newWorker();
+            } catch (SlingClientException e) {
+                throw new UncheckedIOException(new IOException("Unable to create crawler client", e));
+            }
+        });
+        this.pool = new ForkJoinPool(Math.max(threads, 1));
+        pool.execute(() -> {
+            try {
+                new Visit(path, getName(path), 0).invoke();
+            } catch (UncheckedIOException e) {
+                failure.compareAndSet(null, e.getCause());
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new IOException("Crawl of " + path + " failed: " + e, e));
+            }
+            if (failure.get() != null) {
+                // The remaining hits are not needed
+                hits.clear();
+            }
+            try {
+                hits.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Reads a node, returns it (or its content node) if it matches, and visits its children in parallel.
+     */
+    private class Visit extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final String name;
+        private final int level;
+
+        Visit(String path, String name, int level) {
+            this.path = path;
+            this.name = name;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            JsonObject node;
+            JsonObject content = null;
+            try {
+                node = clients.get().getNode(path, fetchDepth);
+                JsonElement listed = pageContent ? node.get(CONTENT_NODE) : null;
+                if (listed != null && listed.isJsonObject()) {
+                    // The listing only includes the properties of the content node itself
+                    content = contentDepth > 0 ? clients.get().getNode(path + "/" + CONTENT_NODE, contentDepth) : listed.getAsJsonObject();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            visitedCount.incrementAndGet();
+            if (pageContent) {
+                if (content != null && filter.matches(CONTENT_NODE, content)) {
+                    addHit(path + "/" + CONTENT_NODE, content);
+                }
+            } else if (level > 0 && filter.matches(name, node)) {
+                addHit(path, node);
+            }
+            if (maxDepth > 0 && level >= maxDepth) {
+                return;
+            }
+            String parent = path.endsWith("/") ? path : path + "/";
+            List<Visit> children = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> entry : node.entrySet()) {
+                if (entry.getValue().isJsonObject() && isDescended(entry.getKey(), entry.getValue().getAsJsonObject())) {
+                    children.add(new Visit(parent + entry.getKey(), entry.getKey(), level + 1));
+                }
+            }
+            ForkJoinTask.invokeAll(children);
+        }
+
+        private void addHit(String hitPath, JsonObject node) {
+            ResultPage hit = new ResultPage();
+            hit.setJcrPath(hitPath);
+            hit.setProperties(node);
+            try {
+                hits.put(hit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while crawling " + hitPath, e));
+            }
+        }
+
+    }
+
+    private boolean isDescended(String name, JsonObject child) {
+        if (pageContent && CONTENT_NODE.equals(name)) {
+            // Already checked as the content node of its page
+            return false;
+        }
+        if (descendTypes.isEmpty()) {
+            return true;
+        }
+        JsonElement type = child.get("jcr:primaryType");
+        return type != null && type.isJsonPrimitive() && descendTypes.contains(type.getAsString());
+    }
+
+    /**
+     * Get the number of nodes read so far
+     * @return The number of visited nodes
+     */
+    public int getVisitedCount() {
+        return visitedCount.get();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (lookahead == null && !done) {
+            ResultPage hit;
+            try {
+                hit = hits.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while crawling", e));
+            }
+            if (failure.get() != null) {
+                done = true;
+                throw new UncheckedIOException(failure.get());
+            }
+            if (hit == END) {
+                done = true;
+                if (PageToolApp.verbose) {
+                    Output.info("Crawled " + visitedCount.get() + " nodes.");
+                }
+            } else {
+                lookahead = hit;
+            }
+        }
+
+        return lookahead != null;
+    }
+
+    @Override
+    public ResultPage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ResultPage hit = lookahead;
+        lookahead = null;
+        return hit;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+}
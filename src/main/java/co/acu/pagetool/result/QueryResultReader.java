@@ -0,0 +1,159 @@
+package co.acu.pagetool.result;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the hits of an AEM query builder response one at a time while the response body is still being received,
+ * so that only a single hit is held in memory regardless of the number of hits.
+ * <p>
+ * The fields before the hits (<code>success</code>, <code>results</code>, <code>total</code>, ...) are available
+ * from {@link #getResultSet()} as soon as the reader is created. Errors while reading the hits are thrown as
+ * {@link UncheckedIOException}.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class QueryResultReader implements Iterator<ResultPage>, Closeable {
+
+    private static final Gson GSON = new Gson();
+
+    private final JsonReader reader;
+    private final Closeable resource;
+    private final ResultSet resultSet = new ResultSet();
+    private boolean inHits = false;
+    private boolean done = false;
+    private int count = 0;
+
+    /**
+     * Starts reading the response up to the first hit.
+     *
+     * @param in       The response body
+     * @param resource The resource to close together with the reader (e.g. the HTTP response), may be null
+     * @throws IOException If the response is not a query builder JSON object
+     */
+    public QueryResultReader(InputStream in, Closeable resource) throws IOException {
+        this.reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.resource = resource;
+        try {
+            reader.beginObject();
+            readFields();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Invalid query response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the top-level fields until the start of the hits array or the end of the response.
+     */
+    private void readFields() throws IOException {
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "success":
+                    resultSet.setSuccess(reader.nextBoolean());
+                    break;
+                case "results":
+                    resultSet.setResults(reader.nextInt());
+                    break;
+                case "total":
+                    resultSet.setTotal(reader.nextInt());
+                    break;
+                case "offset":
+                    resultSet.setOffset(reader.nextInt());
+                    break;
+                case "more":
+                    resultSet.setMore(reader.nextBoolean());
+                    break;
+                case "hits":
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        inHits = true;
+                        return;
+                    }
+                    reader.skipValue();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        done = true;
+    }
+
+    /**
+     * Get the fields of the response read so far. The hits are not included.
+     * @return The result set without hits
+     */
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    /**
+     * Get the number of hits returned so far
+     * @return The hit count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (!done) {
+                if (inHits) {
+                    if (reader.hasNext()) {
+                        return true;
+                    }
+                    reader.endArray();
+                    inHits = false;
+                }
+                readFields();
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ResultPage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            ResultPage hit = GSON.fromJson(reader, ResultPage.class);
+            count++;
+            return hit;
+        } catch (JsonParseException e) {
+            throw new UncheckedIOException(new IOException("Invalid hit in query response: " + e.getMessage(), e));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+
+}
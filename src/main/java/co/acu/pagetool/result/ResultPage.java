@@ -1,15 +1,23 @@
 package co.acu.pagetool.result;
 
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.JsonAdapter;
+
+import java.lang.reflect.Type;
 
 /**
  * Object that's created from the AEM query builder response JSON for each individual AEM Page
  * @author Gregory Kaczmarczyk
  */
+@JsonAdapter(ResultPage.Deserializer.class)
 public class ResultPage {
 
-    @SerializedName("jcr:path")
     private String jcrPath;
+    private JsonObject properties;
 
     public ResultPage() {
     }
@@ -22,4 +30,45 @@ public class ResultPage {
         this.jcrPath = jcrPath;
     }
 
+    /**
+     * Get the properties selected with <code>p.properties</code>, including child nodes selected by name
+     * @return The hit as returned by the query, or null if it has no properties besides the path
+     */
+    public JsonObject getProperties() {
+        return properties;
+    }
+
+    public void setProperties(JsonObject properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public String toString() {
+        return jcrPath;
+    }
+
+    /**
+     * Reads the path of a hit and keeps any other selected properties.
+     */
+    static class Deserializer implements JsonDeserializer<ResultPage> {
+
+        @Override
+        public ResultPage deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+            if (!json.isJsonObject()) {
+                throw new JsonParseException("Expected a hit object but was " + json);
+            }
+            JsonObject hit = json.getAsJsonObject();
+            ResultPage page = new ResultPage();
+            JsonElement path = hit.get("jcr:path");
+            if (path != null && path.isJsonPrimitive()) {
+                page.setJcrPath(path.getAsString());
+            }
+            if (hit.size() > (path != null ? 1 : 0)) {
+                page.setProperties(hit);
+            }
+            return page;
+        }
+
+    }
+
 }
@@ -12,6 +12,7 @@ public class ResultSet {
     int results;
     int total;
     int offset;
+    boolean more;
     ArrayList<ResultPage> hits;
 
     public ResultSet() {
@@ -49,6 +50,19 @@ public class ResultSet {
         this.offset = offset;
     }
 
+    /**
+     * Get whether the query has more hits than counted in the total, which is only an estimate if the query guessed
+     * it (<code>p.guessTotal</code>)
+     * @return True if there are more hits
+     */
+    public boolean isMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+
     public ArrayList<ResultPage> getHits() {
         return hits;
     }
@@ -8,8 +8,95 @@ public class Output {
     public static final String OK = Colors.FG_GREEN + "OK" + Colors.FG_RESET;
     public static final String NOT_OK = Colors.FG_RED + "NOT OK" + Colors.FG_RESET;
 
+    /**
+     * Output written by the current thread while buffering is active; null if writing directly to the console
+     */
+    private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<>();
+
+    /**
+     * Prefix of each line written by the current thread and the threads it starts; null for no prefix
+     */
+    private static final InheritableThreadLocal<String> linePrefix = new InheritableThreadLocal<>();
+    private static final ThreadLocal<Boolean> atLineStart = ThreadLocal.withInitial(() -> Boolean.TRUE);
+    private static final ThreadLocal<StringBuilder> pendingLine = ThreadLocal.withInitial(StringBuilder::new);
+
+    /**
+     * Start each line written by the current thread, and by the threads it starts from now on, with the given
+     * prefix (e.g. the name of the host it works on). Lines with a prefix are written as a whole, so that the lines
+     * of several threads do not mix.
+     * @param prefix The prefix, or null to remove it
+     */
+    public static void setLinePrefix(String prefix) {
+        if (prefix == null) {
+            linePrefix.remove();
+        } else {
+            linePrefix.set(prefix);
+        }
+    }
+
+    /**
+     * Start collecting all output of the current thread instead of writing it to the console, so that the output
+     * of one unit of work can be written as a whole with {@link #flushBuffer()}.
+     */
+    public static void startBuffer() {
+        buffer.set(new StringBuilder());
+    }
+
+    /**
+     * Write all output collected by the current thread to the console at once and stop buffering.
+     */
+    public static void flushBuffer() {
+        StringBuilder sb = buffer.get();
+        buffer.remove();
+        if (sb != null && sb.length() > 0) {
+            synchronized (System.out) {
+                System.out.print(sb);
+                System.out.flush();
+            }
+        }
+    }
+
+    private static void print(String message) {
+        String prefix = linePrefix.get();
+        if (prefix != null) {
+            message = addPrefix(message, prefix);
+        }
+        StringBuilder sb = buffer.get();
+        if (sb != null) {
+            sb.append(message);
+        } else if (prefix != null) {
+            StringBuilder line = pendingLine.get();
+            line.append(message);
+            int end = line.lastIndexOf("\n");
+            if (end >= 0) {
+                synchronized (System.out) {
+                    System.out.print(line.substring(0, end + 1));
+                    System.out.flush();
+                }
+                line.delete(0, end + 1);
+            }
+        } else {
+            System.out.print(message);
+        }
+    }
+
+    private static String addPrefix(String message, String prefix) {
+        StringBuilder sb = new StringBuilder(message.length() + prefix.length());
+        boolean lineStart = atLineStart.get();
+        for (int i = 0; i < message.length(); i++) {
+            if (lineStart) {
+                sb.append(prefix);
+            }
+            char c = message.charAt(i);
+            sb.append(c);
+            lineStart = c == '\n';
+        }
+        atLineStart.set(lineStart);
+        return sb.toString();
+    }
+
     public static void line() {
-        System.out.println();
+        print(System.lineSeparator());
     }
 
     /**
@@ -17,7 +104,7 @@ public class Output {
      * @param message the String to write
      */
     public static void ninfo(String message) {
-        System.out.print(message);
+        print(message);
     }
 
     /**
@@ -34,7 +121,7 @@ public class Output {
      * @param message the String to write
      */
     public static void nnote(String message) {
-        System.out.print(Colors.FG_GREEN + message + Colors.FG_RESET);
+        print(Colors.FG_GREEN + message + Colors.FG_RESET);
     }
 
     /**
@@ -51,7 +138,7 @@ public class Output {
      * @param message the String to write
      */
     public static void nhl(String message) {
-        System.out.print(Colors.FG_YELLOW + message + Colors.FG_RESET);
+        print(Colors.FG_YELLOW + message + Colors.FG_RESET);
     }
 
     /**
@@ -68,7 +155,7 @@ public class Output {
      * @param message the String to write
      */
     public static void nwarn(String message) {
-        System.out.print(Colors.FG_RED + message + Colors.FG_RESET);
+        print(Colors.FG_RED + message + Colors.FG_RESET);
     }
 
     /**
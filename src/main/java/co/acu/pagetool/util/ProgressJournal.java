@@ -0,0 +1,153 @@
+package co.acu.pagetool.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An append-only log of the pages completed by a run, so that an interrupted run can be resumed without updating
+ * the same pages again.
+ * <p>
+ * Each completed page is written as one line: <code>S</code> (succeeded) or <code>F</code> (failed), a tab and the
+ * path. Lines are synced to disk in batches, so that a crash loses at most the last batch; a partially written last
+ * line is ignored when the journal is loaded.
+ *
+ * @author Gregory Kaczmarczyk
+ */
+public class ProgressJournal implements Closeable {
+
+    public static final int DEFAULT_SYNC_RECORDS = 100;
+    public static final long DEFAULT_SYNC_MILLIS = 1000;
+
+    private static final char SUCCEEDED = 'S';
+    private static final char FAILED = 'F';
+
+    private final FileChannel channel;
+    private final Writer writer;
+    private final Set<String> completed = new HashSet<>();
+    private final int syncRecords;
+    private final long syncMillis;
+    private int unsynced = 0;
+    private long lastSync = System.currentTimeMillis();
+
+    public ProgressJournal(Path file, boolean resume) throws IOException {
+        this(file, resume, DEFAULT_SYNC_RECORDS, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * Opens the journal for writing.
+     *
+     * @param file        The journal file
+     * @param resume      If true, load the pages completed by previous runs and append to the journal; otherwise
+     *                    start a new journal
+     * @param syncRecords Sync the journal to disk after this many records
+     * @param syncMillis  Sync the journal to disk when a record is written this many milliseconds after the last sync
+     * @throws IOException If the journal cannot be read or opened
+     */
+    public ProgressJournal(Path file, boolean resume, int syncRecords, long syncMillis) throws IOException {
+        this.syncRecords = syncRecords;
+        this.syncMillis = syncMillis;
+        long end = resume && Files.exists(file) ? load(file) : 0;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Cut off a partially written last line, so that the first new record starts on a line of its own
+        channel.truncate(end);
+        channel.position(end);
+        this.writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the complete lines of the journal. The last line may have been cut off within a multibyte character, so
+     * only the bytes up to the last line break are decoded.
+     * @return The length of the complete lines in bytes
+     */
+    private long load(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(new String(content, 0, end - 1, StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 2 && line.charAt(1) == '\t') {
+                    String path = line.substring(2);
+                    // The last outcome of a page counts, so a page that failed again after succeeding is retried
+                    if (line.charAt(0) == SUCCEEDED) {
+                        completed.add(path);
+                    } else if (line.charAt(0) == FAILED) {
+                        completed.remove(path);
+                    }
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Check whether a page was completed successfully by a previous run
+     * @param path The path of the page
+     * @return True if the page can be skipped
+     */
+    public synchronized boolean isCompleted(String path) {
+        return completed.contains(path);
+    }
+
+    /**
+     * Get the number of pages completed successfully by previous runs
+     * @return The number of completed pages loaded from the journal
+     */
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Appends the outcome of a page to the journal.
+     * @param path    The path of the page
+     * @param success True if the page was updated successfully
+     * @throws IOException If the journal cannot be written, so that the run stops instead of losing its progress
+     */
+    public synchronized void record(String path, boolean success) throws IOException {
+        writer.write(success ? SUCCEEDED : FAILED);
+        writer.write('\t');
+        writer.write(path);
+        writer.write('\n');
+        unsynced++;
+        if (unsynced >= syncRecords || System.currentTimeMillis() - lastSync >= syncMillis) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes all buffered records and forces them to disk
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        writer.flush();
+        channel.force(false);
+        unsynced = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            writer.close();
+        }
+    }
+
+}
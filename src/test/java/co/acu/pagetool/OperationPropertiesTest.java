@@ -122,6 +122,33 @@ class OperationPropertiesTest {
         }
     }
 
+    @Test
+    void testSetExactMatch_SearchValues() {
+        operationProperties.setExactMatch(true);
+        operationProperties.setSearchValue(new String[]{"cq:tags=news", "title=%Press%", "jcr:title~=^News"});
+        ArrayList<Property> result = operationProperties.getMatchingProperties();
+
+        assertTrue(result.get(0).isMulti(), "Search values should be multi-valued");
+        assertTrue(result.get(0).isExactMatch(), "Search values should be matched exactly");
+        assertFalse(result.get(1).isExactMatch(), "Values with % should be matched as substrings");
+        assertFalse(result.get(2).isMulti(), "Regular expressions should stay single-valued");
+
+        operationProperties.setExactMatch(false);
+        assertFalse(result.get(0).isExactMatch(), "Search values should be matched as substrings by default");
+    }
+
+    @Test
+    void testSetExactMatch_MatchingProperties() throws InvalidPropertyException {
+        // Same order as the command line: the flag is set before -m is parsed
+        operationProperties.setExactMatch(true);
+        operationProperties.setMatchingProperties(new String[]{"cq:tags=[a,b]", "title=[%Press%]"});
+        ArrayList<Property> result = operationProperties.getMatchingProperties();
+
+        assertTrue(result.get(0).isMulti(), "Array values should be multi-valued");
+        assertTrue(result.get(0).isExactMatch(), "Array values should be matched exactly");
+        assertFalse(result.get(1).isExactMatch(), "Values with % should be matched as substrings");
+    }
+
     @Test
     void testSetCopyFromProperties_Valid() {
         operationProperties.setCopyFromProperties(new String[]{"prop1", "prop2"});
@@ -167,12 +194,72 @@ class OperationPropertiesTest {
                 "Should throw InvalidPropertyException for invalid node");
     }
 
+    @Test
+    void testSetMatchingProperties_Regex() throws InvalidPropertyException {
+        operationProperties.setMatchingProperties(new String[]{"title~=^News"});
+        Property result = operationProperties.getMatchingProperties().get(0);
+
+        assertTrue(result.isRegex(), "Matching property should be a regular expression");
+        assertEquals("title", result.getName(), "Name should exclude the ~");
+    }
+
+    @Test
+    void testSetUpdateProperties_RegexRejected() {
+        InvalidPropertyException exception = assertThrows(InvalidPropertyException.class,
+                () -> operationProperties.setUpdateProperties(new String[]{"title~=x"}));
+        assertEquals("Regular expressions (~=) can only be used to match properties with -m or -f. (property: title~=x)",
+                exception.getMessage(), "Update property should not be a regular expression");
+        assertNull(operationProperties.getUpdateProperties(), "No update property should be set");
+    }
+
+    @Test
+    void testSetPropertyValueReplacement_RegexRejected() {
+        assertThrows(InvalidPropertyException.class,
+                () -> operationProperties.setPropertyValueReplacement(new String[]{"title~=x"}, new String[]{"y"}),
+                "Replaced property should not be a regular expression");
+    }
+
+    @Test
+    void testSetCreateNode_RegexRejected() {
+        assertThrows(InvalidPropertyException.class,
+                () -> operationProperties.setCreateNode(new String[]{"child~=nt:unstructured"}),
+                "Created node should not be a regular expression");
+    }
+
     @Test
     void testSetCqPageType() {
         operationProperties.setCqPageType(true);
         assertTrue(operationProperties.isCqPageType(), "CqPageType should be true");
     }
 
+    @Test
+    void testGetReadProperties() throws Exception {
+        operationProperties.setPropertyCopy(true);
+        operationProperties.setCopyFromProperties(new String[]{"par/image", "title"});
+        operationProperties.setMatchingProperties(new String[]{"tags=[a]", "title=x"});
+        operationProperties.setUpdateProperties(new String[]{"tags=[b]", "title=y"});
+
+        assertEquals(Arrays.asList("par/image", "title", "tags"), operationProperties.getReadProperties(),
+                "Copy sources and conditionally updated multi-value properties should be read");
+    }
+
+    @Test
+    void testGetReadProperties_NoReads() throws Exception {
+        operationProperties.setUpdateProperties(new String[]{"title=y"});
+        assertTrue(operationProperties.getReadProperties().isEmpty(), "Simple updates should not read any property");
+    }
+
+    @Test
+    void testGetReadProperties_SkipUnchanged() throws Exception {
+        operationProperties.setSkipUnchanged(true);
+        operationProperties.setUpdateProperties(new String[]{"title=y"});
+        operationProperties.setDeleteProperties(new String[]{"obsolete"});
+        operationProperties.setCreateNode(new String[]{"child=nt:unstructured"});
+
+        assertEquals(Arrays.asList("title", "obsolete", "child/jcr:primaryType"), operationProperties.getReadProperties(),
+                "All written properties should be read to compare them");
+    }
+
     @Test
     void testGetters_NullInitialState() {
         assertNull(operationProperties.getMatchingProperties(), "Matching properties should be null initially");
@@ -0,0 +1,265 @@
+package co.acu.pagetool;
+
+import co.acu.pagetool.crx.NodeFilter;
+import co.acu.pagetool.crx.Property;
+import co.acu.pagetool.crx.QueryUrl;
+import co.acu.pagetool.crx.SlingClient;
+import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultSet;
+import co.acu.pagetool.util.ProgressJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PageToolTest {
+
+    @Mock private SlingClient slingClient;
+    @Mock private SlingClient workerClient;
+    @Mock private OperationProperties properties;
+
+    private PageTool pageTool;
+
+    @BeforeEach
+    void setUp() {
+        PageToolApp.verbose = false;
+        PageToolApp.dryRun = false;
+        pageTool = new PageTool("/content/site", slingClient);
+        pageTool.setProperties(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PageToolApp.dryRun = false;
+    }
+
+    private static QueryResultReader hits(int count) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"success\":true,\"results\":" + count + ",\"total\":" + count + ",\"hits\":[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"jcr:path\":\"/content/site/page").append(i).append("\"}");
+        }
+        sb.append("]}");
+        return new QueryResultReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static QueryResultReader hits(String... paths) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"success\":true,\"results\":" + paths.length + ",\"total\":" + paths.length + ",\"hits\":[");
+        for (int i = 0; i < paths.length; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"jcr:path\":\"").append(paths[i]).append("\"}");
+        }
+        sb.append("]}");
+        return new QueryResultReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    @Test
+    void testExecuteOperation_MaxDepthQueriesEachLevelFlat() throws Exception {
+        when(slingClient.createNodeFilter()).thenReturn(new NodeFilter(null, null, true, true, null));
+        when(slingClient.newWorker()).thenReturn(workerClient);
+        when(workerClient.getChildPaths("/content/site")).thenReturn(List.of("/content/site/jcr:content", "/content/site/a"));
+        when(workerClient.streamQuery("/content/site", QueryUrl.PathScope.CHILDREN)).thenReturn(hits("/content/site/jcr:content"));
+        when(workerClient.streamQuery("/content/site", QueryUrl.PathScope.CHILD_PAGE_CONTENT)).thenReturn(hits("/content/site/a"));
+        when(workerClient.streamQuery("/content/site/a", QueryUrl.PathScope.CHILD_PAGE_CONTENT)).thenReturn(hits("/content/site/a/b"));
+        when(properties.isCqPageType()).thenReturn(true);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+        pageTool.setMaxDepth(2);
+
+        pageTool.executeOperation();
+
+        verify(slingClient).updatePage("/content/site/jcr:content");
+        verify(slingClient).updatePage("/content/site/a/jcr:content");
+        verify(slingClient).updatePage("/content/site/a/b/jcr:content");
+        verify(workerClient, never()).getChildPaths("/content/site/a");
+        verify(slingClient, never()).streamQuery(anyString());
+        assertTrue(pageTool.isCompleted());
+    }
+
+    @Test
+    void testExecuteOperation_MaxDepthLeavesOutDeeperContentNodesMatchedByName() throws Exception {
+        when(slingClient.createNodeFilter()).thenReturn(new NodeFilter(null, List.of("jcr:content"), true, true, null));
+        when(properties.getMatchingNodes()).thenReturn(new ArrayList<>(List.of("jcr:content")));
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits("/content/site/a/jcr:content",
+                "/content/site/a/b/jcr:content", "/content/site/a/b/c/jcr:content"));
+        when(properties.isCqPageType()).thenReturn(true);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+        pageTool.setMaxDepth(2);
+
+        pageTool.executeOperation();
+
+        verify(slingClient).updatePage("/content/site/a/jcr:content");
+        verify(slingClient).updatePage("/content/site/a/b/jcr:content");
+        verify(slingClient, never()).updatePage("/content/site/a/b/c/jcr:content");
+        verify(slingClient, times(1)).createNodeFilter();
+    }
+
+    @Test
+    void testExecuteOperation_FlatQueriesDirectChildren() throws Exception {
+        when(slingClient.createNodeFilter()).thenReturn(new NodeFilter(null, List.of("hero"), false, false, null));
+        when(slingClient.streamQuery("/content/site", QueryUrl.PathScope.CHILDREN)).thenReturn(hits("/content/site/hero"));
+        when(properties.isSearchOnly()).thenReturn(true);
+        pageTool.setMaxDepth(1);
+
+        pageTool.executeOperation();
+
+        verify(slingClient, never()).streamQuery("/content/site");
+        assertTrue(pageTool.isCompleted());
+    }
+
+    @Test
+    void testExecuteOperation_CountOnly() throws Exception {
+        ResultSet count = new ResultSet();
+        count.setTotal(5000);
+        count.setMore(true);
+        when(slingClient.countHits("/content/site", QueryUrl.PathScope.SUBTREE, 5000)).thenReturn(count);
+        pageTool.setCount(5000);
+
+        pageTool.executeOperation();
+
+        verify(slingClient, never()).streamQuery(anyString());
+        assertTrue(pageTool.isCompleted());
+    }
+
+    @Test
+    void testExecuteOperation_Sequential() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(3));
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+
+        pageTool.executeOperation();
+
+        verify(slingClient, times(3)).updatePage(startsWith("/content/site/page"));
+        verify(slingClient, never()).newWorker();
+        assertEquals(3, pageTool.getSucceededCount(), "All pages should succeed");
+        assertEquals(0, pageTool.getFailedCount(), "No page should fail");
+    }
+
+    @Test
+    void testExecuteOperation_ConcurrentProcessesEveryPage() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(20));
+        when(slingClient.newWorker()).thenReturn(workerClient);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+        pageTool.setThreads(4);
+
+        pageTool.executeOperation();
+
+        verify(slingClient, times(3)).newWorker();
+        for (int i = 0; i < 20; i++) {
+            String pagePath = "/content/site/page" + i;
+            verify(slingClient, atMost(1)).updatePage(pagePath);
+            verify(workerClient, atMost(1)).updatePage(pagePath);
+        }
+        assertEquals(20, pageTool.getSucceededCount(), "All pages should succeed");
+        assertEquals(0, pageTool.getFailedCount(), "No page should fail");
+    }
+
+    @Test
+    void testExecuteOperation_ConcurrentKeepsOperationOrder() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(1));
+        when(slingClient.newWorker()).thenReturn(workerClient);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+        when(properties.getDeleteProperties()).thenReturn(new ArrayList<>(Collections.singletonList("old")));
+        pageTool.setThreads(2);
+
+        pageTool.executeOperation();
+
+        InOrder inOrder = inOrder(slingClient);
+        inOrder.verify(slingClient).updatePage("/content/site/page0");
+        inOrder.verify(slingClient).deleteProperties("/content/site/page0");
+    }
+
+    @Test
+    void testExecuteOperation_CountsFailures() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(2));
+        when(properties.getPropertyValueReplacement()).thenReturn(new Property("title", new String[]{"a", "b"}));
+        doThrow(new SlingClientException("Unable to retrieve value for property: title"))
+                .when(slingClient).replacePropertyValue("/content/site/page0");
+
+        pageTool.executeOperation();
+
+        assertEquals(1, pageTool.getSucceededCount(), "One page should succeed");
+        assertEquals(1, pageTool.getFailedCount(), "One page should fail");
+    }
+
+    @Test
+    void testExecuteOperation_Batches() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(5));
+        when(slingClient.commitPages(anyList())).thenReturn(Collections.emptySet());
+        when(slingClient.commitPages(List.of("/content/site/page0", "/content/site/page1")))
+                .thenReturn(Set.of("/content/site/page1"));
+        pageTool.setBatchSize(2);
+
+        pageTool.executeOperation();
+
+        verify(slingClient).commitPages(List.of("/content/site/page0", "/content/site/page1"));
+        verify(slingClient).commitPages(List.of("/content/site/page2", "/content/site/page3"));
+        verify(slingClient).commitPages(List.of("/content/site/page4"));
+        verify(slingClient, never()).updatePage(anyString());
+        assertEquals(4, pageTool.getSucceededCount(), "Pages of successful batches should succeed");
+        assertEquals(1, pageTool.getFailedCount(), "The page reported by the client should fail");
+    }
+
+    @Test
+    void testExecuteOperation_CountsUnchangedPages() throws Exception {
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(2));
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+        // page0 sends a request, page1 does not
+        when(slingClient.getPostCount()).thenReturn(0, 1, 1, 1);
+        when(slingClient.getSkippedCount()).thenReturn(0, 0, 0, 1);
+
+        pageTool.executeOperation();
+
+        assertEquals(1, pageTool.getUpdatedCount(), "Page with a request should be updated");
+        assertEquals(1, pageTool.getUnchangedCount(), "Page without a request should be unchanged");
+        assertEquals(1, pageTool.getSkippedCount(), "Skipped writes should be summed");
+    }
+
+    @Test
+    void testExecuteOperation_DryRunSkipsUpdates() throws Exception {
+        PageToolApp.dryRun = true;
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(2));
+
+        pageTool.executeOperation();
+
+        verify(slingClient, never()).updatePage(anyString());
+        assertEquals(0, pageTool.getSucceededCount() + pageTool.getFailedCount(), "No page should be processed");
+    }
+
+    @Test
+    void testExecuteOperation_ResumeSkipsCompletedPages(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("journal.log");
+        Files.writeString(file, "S\t/content/site/page0\nF\t/content/site/page1\n", StandardCharsets.UTF_8);
+        when(slingClient.streamQuery("/content/site")).thenReturn(hits(3));
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(Collections.singletonList(new Property("title", "x"))));
+
+        try (ProgressJournal journal = new ProgressJournal(file, true)) {
+            pageTool.setJournal(journal);
+            pageTool.executeOperation();
+        }
+
+        verify(slingClient, never()).updatePage("/content/site/page0");
+        verify(slingClient).updatePage("/content/site/page1");
+        verify(slingClient).updatePage("/content/site/page2");
+        assertEquals(2, pageTool.getSucceededCount(), "Only the remaining pages should be processed");
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).endsWith("S\t/content/site/page1\nS\t/content/site/page2\n"),
+                "Outcomes should be appended to the journal");
+    }
+
+}
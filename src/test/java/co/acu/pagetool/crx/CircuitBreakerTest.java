@@ -0,0 +1,76 @@
+package co.acu.pagetool.crx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static void requests(CircuitBreaker breaker, int count, boolean failed) throws IOException {
+        for (int i = 0; i < count; i++) {
+            breaker.record(breaker.acquire(), failed);
+        }
+    }
+
+    @Test
+    void testRecord_OpensAtThreshold() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(50, 4, 0);
+
+        requests(breaker, 3, false);
+        requests(breaker, 1, true);
+        assertEquals(0, breaker.getOpenCount(), "One failure in four should not open the breaker");
+
+        requests(breaker, 1, true);
+        assertEquals(1, breaker.getOpenCount(), "Two failures in the last four should open the breaker");
+    }
+
+    @Test
+    void testProbe_ClosesOnSuccess() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(50, 2, 0);
+        requests(breaker, 2, true);
+
+        assertTrue(breaker.acquire(), "First request after the pause should be the probe");
+        breaker.record(true, false);
+
+        assertFalse(breaker.acquire(), "Closed breaker should not probe");
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    void testProbe_ReopensOnFailure() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(50, 2, 0);
+        requests(breaker, 2, true);
+
+        breaker.record(breaker.acquire(), true);
+
+        assertEquals(2, breaker.getOpenCount(), "Failed probe should open the breaker again");
+        assertTrue(breaker.acquire(), "Next request should probe again");
+    }
+
+    @Test
+    void testAcquire_WaitsForProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(50, 1, 0);
+        requests(breaker, 1, true);
+        assertTrue(breaker.acquire());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                breaker.record(breaker.acquire(), false);
+                acquired.countDown();
+            } catch (IOException ignored) {
+                // Fails the assertion below
+            }
+        });
+        waiting.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "Requests should wait while the probe is in flight");
+        breaker.record(true, false);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS), "Requests should resume after a successful probe");
+    }
+
+}
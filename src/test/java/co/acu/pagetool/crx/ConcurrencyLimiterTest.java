@@ -0,0 +1,98 @@
+package co.acu.pagetool.crx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Completes a full round of requests with the given latency
+     */
+    private static void round(ConcurrencyLimiter limiter, long latencyMillis, boolean rejected) throws IOException {
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(System.nanoTime() - latencyMillis * MILLIS, rejected);
+        }
+    }
+
+    @Test
+    void testStableLatency_IncreasesLimit() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 3);
+
+        round(limiter, 20, false);
+        round(limiter, 20, false);
+        assertEquals(3, limiter.getLimit());
+
+        round(limiter, 20, false);
+        assertEquals(3, limiter.getLimit(), "Limit should not exceed the maximum");
+        assertEquals(3, limiter.getPeakLimit());
+    }
+
+    @Test
+    void testRejectedRequests_ReduceLimit() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 8);
+
+        round(limiter, 20, true);
+        assertEquals(6, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            round(limiter, 20, true);
+        }
+        assertEquals(1, limiter.getLimit(), "Limit should not drop below 1");
+    }
+
+    @Test
+    void testRisingLatency_ReducesLimit() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 8);
+
+        round(limiter, 20, false);
+        assertEquals(5, limiter.getLimit());
+        round(limiter, 200, false);
+        assertEquals(3, limiter.getLimit(), "Latency above the tolerance should reduce the limit");
+    }
+
+    @Test
+    void testAcquire_WaitsForLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1);
+        long start = limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                limiter.release(limiter.acquire(), false);
+                acquired.countDown();
+            } catch (IOException ignored) {
+                // Fails the assertion below
+            }
+        });
+        waiting.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "Second request should wait");
+        limiter.release(start, false);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS), "Second request should start after the first");
+    }
+
+    @Test
+    void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(-1, histogram.getPercentile(95));
+        assertEquals("no requests", histogram.toString());
+
+        for (int i = 0; i < 19; i++) {
+            histogram.record(20 * MILLIS);
+        }
+        histogram.record(20000 * MILLIS);
+
+        assertEquals(20, histogram.getCount());
+        assertEquals(25, histogram.getPercentile(95));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+        assertEquals("<=25 ms: 19, >10000 ms: 1", histogram.toString());
+    }
+
+}
@@ -0,0 +1,49 @@
+package co.acu.pagetool.crx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostInventoryTest {
+
+    @Test
+    void parseReadsHostsAndSkipsCommentsAndEmptyLines() {
+        HostInventory inventory = HostInventory.parse(Arrays.asList(
+                "# authors and publishers",
+                "name=author host=author.example.com port=4502 user=admin password=secret",
+                "",
+                "  name=publish1   host=publish1.example.com port=443 secure=true  "));
+
+        List<HostInventory.Host> hosts = inventory.getHosts();
+        assertEquals(2, hosts.size());
+        assertEquals("author", hosts.get(0).getName());
+        assertEquals("author.example.com", hosts.get(0).getConnection().getHostname());
+        assertEquals("4502", hosts.get(0).getConnection().getPort());
+        assertEquals("secret", hosts.get(0).getConnection().getPassword());
+        assertEquals("publish1", hosts.get(1).getName());
+        assertTrue(hosts.get(1).getConnection().isSecure());
+        assertFalse(hosts.get(0).getConnection().isSecure());
+    }
+
+    @Test
+    void nameDefaultsToHostAndPort() {
+        HostInventory inventory = HostInventory.parse(Arrays.asList("host=aem.example.com port=4503"));
+
+        assertEquals("aem.example.com:4503", inventory.getHosts().get(0).getName());
+    }
+
+    @Test
+    void invalidLinesAreRejectedWithTheirLineNumber() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> HostInventory.parse(Arrays.asList("name=a host=a", "name=b hostname=b")));
+        assertTrue(e.getMessage().contains("line 2"));
+
+        assertThrows(IllegalArgumentException.class, () -> HostInventory.parse(Arrays.asList("name=a port=abc")));
+        assertThrows(IllegalArgumentException.class, () -> HostInventory.parse(Arrays.asList("name=a host=a", "name=a host=b")));
+        assertThrows(IllegalArgumentException.class, () -> HostInventory.parse(Arrays.asList("# no hosts")));
+    }
+
+}
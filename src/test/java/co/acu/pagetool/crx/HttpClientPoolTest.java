@@ -0,0 +1,155 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpClientPoolTest {
+
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() {
+        PageToolApp.bypassSSL = false;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Starts a server that issues a login token for admin:admin and counts the logins
+     */
+    private CrxConnection startLoginServer(AtomicInteger logins) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(HttpClientPool.LOGIN_PATH, exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            if (body.contains("j_username=admin") && body.contains("j_password=admin")) {
+                exchange.getResponseHeaders().add("Set-Cookie", "login-token=token" + logins.incrementAndGet() + "; Path=/");
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(403, -1);
+            }
+            exchange.close();
+        });
+        server.createContext("/content", exchange -> {
+            String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+            boolean basic = exchange.getRequestHeaders().containsKey("Authorization");
+            exchange.sendResponseHeaders(cookie != null && cookie.contains("login-token=token") && !basic ? 200 : 401, -1);
+            exchange.close();
+        });
+        server.start();
+        return new CrxConnection("admin", "admin", "localhost", String.valueOf(server.getAddress().getPort()), false);
+    }
+
+    private int get(HttpClientPool pool, String path) throws IOException {
+        try (CloseableHttpResponse response = pool.getHttpClient().execute(pool.getHttpHost(), new HttpGet(path), pool.createClientContext())) {
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    @Test
+    void testLogin_SendsTokenInsteadOfBasicAuth() throws Exception {
+        AtomicInteger logins = new AtomicInteger();
+        try (HttpClientPool pool = new HttpClientPool(startLoginServer(logins))) {
+            pool.setTokenAuth(true);
+            pool.login();
+
+            assertEquals(200, get(pool, "/content/page.json"), "Requests should send the login token");
+            assertEquals(200, get(pool, "/content/page.json"));
+            assertEquals(1, logins.get(), "The token should be requested once");
+            assertNull(pool.createClientContext().getAuthCache(), "Basic auth should not be sent");
+        }
+    }
+
+    @Test
+    void testRefreshLogin_OnlyOncePerGeneration() throws Exception {
+        AtomicInteger logins = new AtomicInteger();
+        try (HttpClientPool pool = new HttpClientPool(startLoginServer(logins))) {
+            pool.setTokenAuth(true);
+            pool.login();
+            long generation = pool.getLoginGeneration();
+
+            pool.refreshLogin(generation);
+            pool.refreshLogin(generation);
+
+            assertEquals(2, logins.get(), "A stale token should only be replaced once");
+            assertEquals(generation + 1, pool.getLoginGeneration());
+        }
+    }
+
+    @Test
+    void testLogin_InvalidCredentials() throws Exception {
+        CrxConnection conn = startLoginServer(new AtomicInteger());
+        try (HttpClientPool pool = new HttpClientPool(new CrxConnection("admin", "wrong", "localhost", conn.getPort(), false))) {
+            pool.setTokenAuth(true);
+            IOException e = assertThrows(IOException.class, pool::login);
+            assertTrue(e.getMessage().contains("status code: 403"), "Failed login should report the status");
+        }
+    }
+
+    @Test
+    void testConstructor_HostFromConnection() throws Exception {
+        CrxConnection conn = new CrxConnection("user1", "pass1", "author.example.com", "8443", true);
+        try (HttpClientPool pool = new HttpClientPool(conn)) {
+            assertEquals("author.example.com", pool.getHttpHost().getHostName(), "Host name should come from the connection");
+            assertEquals(8443, pool.getHttpHost().getPort(), "Port should come from the connection");
+            assertEquals("https", pool.getHttpHost().getSchemeName(), "Secure connection should use https");
+        }
+    }
+
+    @Test
+    void testConstructor_BypassSSL() throws Exception {
+        PageToolApp.bypassSSL = true;
+        try (HttpClientPool pool = new HttpClientPool(new CrxConnection("admin", "admin", "localhost", "8443", true))) {
+            assertNotNull(pool.getHttpClient(), "Client should be created with a trust-all SSL context");
+        }
+    }
+
+    @Test
+    void testGetHttpClient_SharedAndCounted() throws Exception {
+        try (HttpClientPool pool = new HttpClientPool(new CrxConnection())) {
+            assertSame(pool.getHttpClient(), pool.getHttpClient(), "The same client should be returned for every request");
+            assertEquals(2, pool.getRequestCount(), "Each client use should be counted as a request");
+            assertEquals(0, pool.getConnectCount(), "No connection should be opened without executing a request");
+            assertEquals(2, pool.getReuseCount(), "Reuse count should be requests minus opened connections");
+        }
+    }
+
+    @Test
+    void testCreateClientContext_SharedAuthCache() throws Exception {
+        try (HttpClientPool pool = new HttpClientPool(new CrxConnection())) {
+            HttpClientContext first = pool.createClientContext();
+            HttpClientContext second = pool.createClientContext();
+            assertNotSame(first, second, "Each request should get its own context");
+            assertSame(first.getAuthCache(), second.getAuthCache(), "The auth cache should be shared across requests");
+            assertNotNull(first.getAuthCache().get(pool.getHttpHost()), "Preemptive basic auth should be cached for the host");
+        }
+    }
+
+    @Test
+    void testConstructor_NullCrxConnection() {
+        Exception exception = assertThrows(NullPointerException.class, () -> new HttpClientPool(null));
+        assertEquals("CrxConnection must not be null", exception.getMessage(), "Constructor should throw NPE for null connection");
+    }
+
+}
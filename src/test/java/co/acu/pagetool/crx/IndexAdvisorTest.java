@@ -0,0 +1,95 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.OperationProperties;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexAdvisorTest {
+
+    @Test
+    void testToXPath_PropertyCriteria() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/site", List.of(new Property("status", "it's done"),
+                new Property("par/legacy", ""), new Property("cq:tags", new String[]{"news"})), null, true, false, null);
+
+        assertEquals("/jcr:root/content/site//element(*, cq:PageContent)[@status = 'it''s done' and par/@legacy"
+                + " and jcr:like(@cq:tags, '%news%')]", advisor.toXPath());
+    }
+
+    @Test
+    void testToXPath_NodeNameWithWildcards() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/site/", null, List.of("hero*"), true, false, null);
+
+        assertEquals("/jcr:root/content/site//element(*, cq:Page)[jcr:like(fn:name(), 'hero%')]", advisor.toXPath());
+        assertTrue(advisor.hasIndexableCriteria());
+    }
+
+    @Test
+    void testToXPath_AnyOfSeveralCriteria() {
+        OperationProperties opProps = new OperationProperties();
+        opProps.setMatchAny(true);
+        IndexAdvisor advisor = new IndexAdvisor("/content/site", List.of(new Property("status", "done"), new Property("legacy", "")),
+                List.of("hero", "teaser"), false, false, opProps);
+
+        assertEquals("/jcr:root/content/site//*[(@status = 'done' or @legacy) and (fn:name() = 'hero' or fn:name() = 'teaser')]", advisor.toXPath());
+    }
+
+    @Test
+    void testToXPath_EncodesNames() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/my site/2024", List.of(new Property("2col/cq:title", "x"),
+                new Property(":hidden", ""), new Property("a_x0020_b", "")), null, false, false, null);
+
+        assertEquals("/jcr:root/content/my_x0020_site/_x0032_024//*[_x0032_col/@cq:title = 'x' and @_x003A_hidden"
+                + " and @a_x005F_x0020_b]", advisor.toXPath());
+        assertEquals("2col/cq:title", advisor.createIndexDefinition().getAsJsonObject("indexRules").getAsJsonObject("nt:base")
+                .getAsJsonObject("properties").getAsJsonObject("2col_cq_title").get("name").getAsString(),
+                "The index should name the property as it is stored");
+    }
+
+    @Test
+    void testCreateIndexDefinition_DistinctPropertyNames() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/site", List.of(new Property("jcr:title", ""),
+                new Property("jcr_title", "")), null, false, false, null);
+
+        JsonObject properties = advisor.createIndexDefinition().getAsJsonObject("indexRules").getAsJsonObject("nt:base")
+                .getAsJsonObject("properties");
+        assertEquals("jcr:title", properties.getAsJsonObject("jcr_title").get("name").getAsString());
+        assertEquals("jcr_title", properties.getAsJsonObject("jcr_title_2").get("name").getAsString(),
+                "Properties with the same definition name should not replace each other");
+    }
+
+    @Test
+    void testToXPath_PathOnly() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/site", null, null, false, false, null);
+
+        assertEquals("/jcr:root/content/site//*", advisor.toXPath());
+        assertFalse(advisor.hasIndexableCriteria());
+    }
+
+    @Test
+    void testCreateIndexDefinition() {
+        IndexAdvisor advisor = new IndexAdvisor("/content/site", List.of(new Property("cq:tags", "news"),
+                new Property("par/legacy", "")), List.of("hero"), true, false, null);
+
+        JsonObject definition = advisor.createIndexDefinition();
+        assertEquals("oak:QueryIndexDefinition", definition.get("jcr:primaryType").getAsString());
+        assertEquals("lucene", definition.get("type").getAsString());
+        assertEquals("/content/site", definition.getAsJsonArray("includedPaths").get(0).getAsString());
+        JsonObject rule = definition.getAsJsonObject("indexRules").getAsJsonObject("cq:PageContent");
+        assertTrue(rule.get("indexNodeName").getAsBoolean());
+        JsonObject properties = rule.getAsJsonObject("properties");
+        assertEquals("cq:tags", properties.getAsJsonObject("cq_tags").get("name").getAsString());
+        assertEquals("par/legacy", properties.getAsJsonObject("par_legacy").get("name").getAsString());
+        assertTrue(properties.getAsJsonObject("par_legacy").get("propertyIndex").getAsBoolean());
+    }
+
+    @Test
+    void testIsTraversal() {
+        assertTrue(IndexAdvisor.isTraversal("[cq:PageContent] as [a] /* traverse \"/content/site//*\" where [a].[status] = 'done' */"));
+        assertFalse(IndexAdvisor.isTraversal("[cq:PageContent] as [a] /* lucene:pagetool-custom-1(/oak:index/pagetool-custom-1) status:done */"));
+    }
+
+}
@@ -0,0 +1,148 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.exception.SlingClientException;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaHttpTransportTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private CrxConnection conn;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PageToolApp.bypassSSL = false;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // Echoes the method, the authentication and the request body
+        server.createContext("/content", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+            }
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+            byte[] response = (exchange.getRequestMethod() + "|" + auth + "|" + cookie + "|" + body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.createContext("/compressed", exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            if (gzip) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody()) {
+                out.write("{\"jcr:primaryType\":\"cq:Page\"}".repeat(50).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        conn = new CrxConnection("admin", "secret", "localhost", String.valueOf(server.getAddress().getPort()), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PageToolApp.bypassSSL = false;
+        server.stop(0);
+    }
+
+    private static String read(HttpTransport.Response response) throws Exception {
+        try (response; InputStream in = response.getBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testSend_GetWithBasicAuth() throws Exception {
+        JavaHttpTransport transport = new JavaHttpTransport(conn, null);
+
+        HttpTransport.Response response = transport.send(HttpTransport.GET, baseUrl + "/content/page.json", null);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("text/plain;charset=utf-8", response.getHeader("Content-Type"));
+        String expectedAuth = "Basic " + Base64.getEncoder().encodeToString("admin:secret".getBytes(StandardCharsets.UTF_8));
+        assertEquals("GET|" + expectedAuth + "|null|", read(response));
+        assertEquals("HTTP requests: 1, over HTTP/2: 0", transport.getStatistics());
+    }
+
+    @Test
+    void testSend_PostFormParameters() throws Exception {
+        JavaHttpTransport transport = new JavaHttpTransport(conn, null);
+
+        HttpTransport.Response response = transport.send(HttpTransport.POST, baseUrl + "/content/page",
+                Arrays.asList(new BasicNameValuePair("title", "a b"), new BasicNameValuePair("tags@Delete", "")));
+
+        assertTrue(read(response).endsWith("|title=a+b&tags%40Delete="), "Parameters should be form encoded");
+    }
+
+    @Test
+    void testSendAsync_ManyRequestsInFlight() throws Exception {
+        JavaHttpTransport transport = new JavaHttpTransport(conn, null);
+        List<CompletableFuture<HttpTransport.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(transport.sendAsync(HttpTransport.GET, baseUrl + "/content/page" + i + ".json", null));
+        }
+
+        for (CompletableFuture<HttpTransport.Response> future : futures) {
+            assertTrue(read(future.get()).startsWith("GET|"));
+        }
+    }
+
+    @Test
+    void testSend_LoginTokenInsteadOfBasicAuth() throws Exception {
+        try (HttpClientPool pool = new HttpClientPool(conn)) {
+            pool.setTokenAuth(true);
+            JavaHttpTransport transport = new JavaHttpTransport(conn, pool);
+
+            String response = read(transport.send(HttpTransport.GET, baseUrl + "/content/page.json", null));
+
+            assertEquals("GET|null|null|", response, "No credentials should be sent before the login");
+        }
+    }
+
+    @Test
+    void testSend_DecodesCompressedResponse() throws Exception {
+        try (HttpClientPool pool = new HttpClientPool(conn)) {
+            JavaHttpTransport transport = new JavaHttpTransport(conn, pool);
+
+            String response = read(transport.send(HttpTransport.GET, baseUrl + "/compressed/page.json", null));
+
+            assertEquals("{\"jcr:primaryType\":\"cq:Page\"}".repeat(50), response);
+            ResponseDecoder decoder = pool.getResponseDecoder();
+            assertEquals(1, decoder.getCompressedCount(), "Response should be compressed");
+            assertTrue(decoder.getWireBytes() < decoder.getDecodedBytes(), "Fewer bytes should be received than decoded");
+        }
+    }
+
+    @Test
+    void testConstructor_RefusesBypassSSL() {
+        PageToolApp.bypassSSL = true;
+
+        assertThrows(SlingClientException.class, () -> new JavaHttpTransport(conn, null),
+                "Host name verification cannot be turned off for this client alone");
+        assertNull(System.getProperty("jdk.internal.httpclient.disableHostnameVerification"), "No JVM-wide setting should be changed");
+    }
+
+}
@@ -0,0 +1,112 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.OperationProperties;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeFilterTest {
+
+    private static JsonObject node(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    @Test
+    void testMatches_ValueExistsAndLike() {
+        NodeFilter filter = new NodeFilter(List.of(new Property("status", "done"), new Property("legacy", ""),
+                new Property("tags", new String[]{"news"})), null, false, false, null);
+
+        assertTrue(filter.matches("page", node("{\"status\":\"done\",\"legacy\":true,\"tags\":[\"a\",\"site:news/local\"]}")));
+        assertFalse(filter.matches("page", node("{\"status\":\"draft\",\"legacy\":true,\"tags\":[\"news\"]}")), "Values should be compared exactly");
+        assertFalse(filter.matches("page", node("{\"status\":\"done\",\"tags\":[\"news\"]}")), "A missing property should not match");
+        assertFalse(filter.matches("page", node("{\"status\":\"done\",\"legacy\":true,\"tags\":[\"sports\"]}")), "Multiple values should be matched like %value%");
+    }
+
+    @Test
+    void testMatches_ExactValues() {
+        Property tags = new Property("cq:tags", new String[]{"site:news", "site:press"});
+        tags.setExactMatch(true);
+        NodeFilter filter = new NodeFilter(List.of(tags), null, false, false, null);
+
+        assertTrue(filter.matches("page", node("{\"cq:tags\":[\"site:sports\",\"site:press\"]}")));
+        assertFalse(filter.matches("page", node("{\"cq:tags\":[\"site:news/local\"]}")), "Values should not be matched as substrings");
+    }
+
+    @Test
+    void testMatches_AnyNodeNameAndAnyProperty() {
+        OperationProperties opProps = new OperationProperties();
+        opProps.setMatchAny(true);
+        NodeFilter filter = new NodeFilter(List.of(new Property("status", "done"), new Property("legacy", "")),
+                List.of("hero*", "teaser"), false, false, opProps);
+
+        assertTrue(filter.matches("teaser", node("{\"legacy\":true}")));
+        assertTrue(filter.matches("hero_image", node("{\"status\":\"done\"}")));
+        assertFalse(filter.matches("title", node("{\"status\":\"done\"}")), "The node name should still match");
+        assertFalse(filter.matches("teaser", node("{\"status\":\"draft\"}")), "Any property should match");
+    }
+
+    @Test
+    void testMatches_Regex() {
+        Property regex = new Property("cq:tags", "^site:news/");
+        regex.setRegex(true);
+        NodeFilter filter = new NodeFilter(List.of(regex), null, false, false, null);
+
+        assertTrue(filter.matches("page", node("{\"cq:tags\":[\"site:sports\",\"site:news/local\"]}")), "Any value should match");
+        assertFalse(filter.matches("page", node("{\"cq:tags\":[\"global:site:news/\"]}")));
+        assertFalse(filter.matches("page", node("{}")), "A missing property should not match");
+    }
+
+    @Test
+    void testMatches_AnyValueOfMultiValuedProperty() {
+        NodeFilter filter = new NodeFilter(List.of(new Property("category", "b")), null, false, false, null);
+
+        assertTrue(filter.matches("page", node("{\"category\":[\"a\",\"b\"]}")));
+        assertFalse(filter.matches("page", node("{\"category\":[\"ab\"]}")));
+    }
+
+    @Test
+    void testMatches_NestedPropertyAndDepth() {
+        NodeFilter filter = new NodeFilter(List.of(new Property("par/text/format", "html")), null, false, false, null);
+
+        assertEquals(2, filter.getPropertyDepth());
+        assertTrue(filter.matches("page", node("{\"par\":{\"text\":{\"format\":\"html\"}}}")));
+        assertFalse(filter.matches("page", node("{\"par\":{\"format\":\"html\"}}")));
+    }
+
+    @Test
+    void testMatches_NodeNameWithWildcards() {
+        NodeFilter filter = new NodeFilter(null, List.of("hero*"), false, false, null);
+
+        assertTrue(filter.matches("hero_image", node("{}")));
+        assertFalse(filter.matches("teaser", node("{}")));
+    }
+
+    @Test
+    void testMatches_PageType() {
+        NodeFilter contentFilter = new NodeFilter(List.of(new Property("status", "done")), null, true, false, null);
+        NodeFilter pageFilter = new NodeFilter(null, null, true, false, null);
+
+        assertEquals("cq:PageContent", contentFilter.getType(), "Matching properties should find page content nodes");
+        assertEquals("cq:Page", pageFilter.getType());
+        assertTrue(contentFilter.matches("jcr:content", node("{\"jcr:primaryType\":\"cq:PageContent\",\"status\":\"done\"}")));
+        assertFalse(contentFilter.matches("par", node("{\"jcr:primaryType\":\"nt:unstructured\",\"status\":\"done\"}")));
+    }
+
+    @Test
+    void testMatches_PropertyCopyFilter() {
+        OperationProperties opProps = new OperationProperties();
+        opProps.setCopyFromProperties(new String[]{"source"});
+        NodeFilter propertyCopy = new NodeFilter(new ArrayList<>(List.of(new Property("other", "x"))), null, false, true, opProps);
+        NodeFilter nodeCopy = new NodeFilter(null, null, false, false, opProps);
+
+        assertTrue(propertyCopy.matches("jcr:content", node("{\"source\":\"value\"}")), "Only the copied property should be required");
+        assertTrue(nodeCopy.matches("source", node("{}")), "The copied node should be matched by name");
+        assertFalse(nodeCopy.matches("target", node("{}")));
+    }
+
+}
@@ -0,0 +1,54 @@
+package co.acu.pagetool.crx;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSnapshotCacheTest {
+
+    @Test
+    void testGet_CountsHitsAndMisses() {
+        NodeSnapshotCache cache = new NodeSnapshotCache(10);
+        JsonObject node = new JsonObject();
+        assertNull(cache.get("/content/a", 0), "Unknown node should be a miss");
+        cache.put("/content/a", 1, node);
+
+        assertSame(node, cache.get("/content/a", 1));
+        assertSame(node, cache.get("/content/a", 0), "A deeper snapshot serves shallower properties");
+        assertNull(cache.get("/content/a", 2), "A shallower snapshot cannot serve deeper properties");
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void testPut_EvictsLeastRecentlyUsed() {
+        NodeSnapshotCache cache = new NodeSnapshotCache(2);
+        cache.put("/content/a", 0, new JsonObject());
+        cache.put("/content/b", 0, new JsonObject());
+        cache.get("/content/a", 0);
+        cache.put("/content/c", 0, new JsonObject());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("/content/a", 0), "Recently used node should be kept");
+        assertNull(cache.get("/content/b", 0), "Least recently used node should be evicted");
+    }
+
+    @Test
+    void testNewWorker_SharesCounters() {
+        NodeSnapshotCache cache = new NodeSnapshotCache(2);
+        cache.put("/content/a", 0, new JsonObject());
+        NodeSnapshotCache worker = cache.newWorker();
+
+        assertNull(worker.get("/content/a", 0), "Workers should not share snapshots");
+        cache.get("/content/a", 0);
+        assertEquals(1, worker.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testConstructor_InvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new NodeSnapshotCache(0));
+    }
+
+}
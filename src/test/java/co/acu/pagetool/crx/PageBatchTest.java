@@ -0,0 +1,101 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.NameValuePair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageBatchTest {
+
+    private static PageMutation update(String name, String value) {
+        PageMutation mutation = new PageMutation();
+        mutation.set(name, value);
+        return mutation;
+    }
+
+    private static List<String> toStrings(List<NameValuePair> params) {
+        return params.stream().map(p -> p.getName() + "=" + p.getValue()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testGetParameters_RelativeToCommonAncestor() {
+        PageBatch batch = new PageBatch();
+        batch.add("/content/site/en/a", "/content/site/en/a/jcr:content", update("title", "A"));
+        batch.add("/content/site/en/b/c", "/content/site/en/b/c/jcr:content", update("title", "C"));
+
+        assertEquals("/content/site/en", batch.getCommonAncestor(), "Ancestor should be the deepest common node");
+        assertEquals(List.of("a/jcr:content/title=A", "b/c/jcr:content/title=C"), toStrings(batch.getParameters()));
+    }
+
+    @Test
+    void testGetParameters_AncestorIsTarget() {
+        PageBatch batch = new PageBatch();
+        batch.add("/content/site/en", "/content/site/en", update("title", "En"));
+        batch.add("/content/site/en/a", "/content/site/en/a", update("title", "A"));
+
+        assertEquals("/content/site/en", batch.getCommonAncestor());
+        assertEquals(List.of("title=En", "a/title=A"), toStrings(batch.getParameters()));
+    }
+
+    @Test
+    void testGetCommonAncestor() {
+        assertEquals("/content/site", PageBatch.getCommonAncestor("/content/site/a", "/content/site/b"));
+        assertEquals("/content", PageBatch.getCommonAncestor("/content/site", "/content/site2"), "Ancestor should end at a node boundary");
+        assertEquals("/content/site", PageBatch.getCommonAncestor("/content/site", "/content/site/a"));
+        assertEquals("/", PageBatch.getCommonAncestor("/content/a", "/conf/b"));
+    }
+
+    @Test
+    void testFits_ParameterBudget() {
+        PageBatch batch = new PageBatch(PageBatch.DEFAULT_MAX_BYTES, 3);
+        assertTrue(batch.fits("/content/a", "/content/a", update("title", "A")), "An empty batch should accept any page");
+        batch.add("/content/a", "/content/a", update("title", "A"));
+        assertTrue(batch.fits("/content/b", "/content/b", update("title", "B")));
+        batch.add("/content/b", "/content/b", update("title", "B"));
+
+        assertFalse(batch.fits("/content/c", "/content/c", update("title", "C")), "One parameter is reserved for the request");
+        assertFalse(batch.fits("/content/a", "/content/a", update("title", "A")), "A page can only be added once");
+    }
+
+    @Test
+    void testFits_ByteBudgetIncludesPrefixes() {
+        PageBatch batch = new PageBatch(40, PageBatch.DEFAULT_MAX_PARAMETERS);
+        batch.add("/content/site/a", "/content/site/a", update("title", "A"));
+
+        // a%2Ftitle=A&b%2Ftitle=B& = 24 bytes
+        assertTrue(batch.fits("/content/site/b", "/content/site/b", update("title", "B")));
+        // site%2Fa%2Ftitle=A&other%2Fb%2Fc%2Ftitle=B& = 43 bytes
+        assertFalse(batch.fits("/content/other/b/c", "/content/other/b/c", update("title", "B")),
+                "A shallower ancestor makes the prefixes of all pages longer");
+    }
+
+    @Test
+    void testFindPage_MostSpecificPath() {
+        PageBatch batch = new PageBatch();
+        batch.add("/content/site/a", "/content/site/a", update("title", "A"));
+        batch.add("/content/site/a/b", "/content/site/a/b", update("title", "B"));
+        batch.add("/content/site/ab", "/content/site/ab", update("title", "AB"));
+
+        assertEquals("/content/site/a/b", batch.findPage("javax.jcr.nodetype.ConstraintViolationException: /content/site/a/b/title"));
+        assertEquals("/content/site/ab", batch.findPage("Unable to save /content/site/ab"));
+        assertEquals("/content/site/a", batch.findPage("Item /content/site/a is locked"));
+        assertNull(batch.findPage("Unknown error"));
+    }
+
+    @Test
+    void testWithout() {
+        PageBatch batch = new PageBatch();
+        batch.add("/content/site/a", "/content/site/a", update("title", "A"));
+        batch.add("/content/other/b", "/content/other/b", update("title", "B"));
+        batch.add("/content/other/c", "/content/other/c", update("title", "C"));
+
+        PageBatch remaining = batch.without("/content/site/a");
+
+        assertEquals(List.of("/content/other/b", "/content/other/c"), remaining.getPagePaths());
+        assertEquals("/content/other", remaining.getCommonAncestor(), "Ancestor should be recalculated");
+    }
+
+}
@@ -0,0 +1,37 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.NameValuePair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageMutationTest {
+
+    private static List<String> toStrings(List<NameValuePair> params) {
+        return params.stream().map(p -> p.getName() + "=" + p.getValue()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testGetParameters_DeletesFirst() {
+        PageMutation mutation = new PageMutation();
+        mutation.set("title", "New");
+        mutation.delete("title");
+        mutation.setMulti("tags", "a", "b");
+        mutation.createNode("par/newNode", "nt:unstructured");
+
+        assertEquals(List.of("title@Delete=true", "title=New", "tags@TypeHint=String[]", "tags=a", "tags=b", "par/newNode/jcr:primaryType=nt:unstructured"),
+                toStrings(mutation.getParameters()), "Deletions should be sent before all other changes");
+    }
+
+    @Test
+    void testIsEmpty() {
+        PageMutation mutation = new PageMutation();
+        assertTrue(mutation.isEmpty(), "New mutation should be empty");
+        mutation.delete("prop");
+        assertFalse(mutation.isEmpty(), "Mutation with a deletion should not be empty");
+    }
+
+}
@@ -0,0 +1,107 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.result.ResultPage;
+import co.acu.pagetool.result.ResultSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PagedQueryTest {
+
+    @Mock private SlingClient slingClient;
+    @Mock private SlingClient fetchClient;
+
+    private final String path = "/content/site";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PageToolApp.verbose = false;
+        lenient().when(slingClient.newWorker()).thenReturn(fetchClient);
+    }
+
+    private static ResultSet window(String... paths) {
+        ArrayList<ResultPage> hits = new ArrayList<>();
+        for (String p : paths) {
+            ResultPage hit = new ResultPage();
+            hit.setJcrPath(p);
+            hits.add(hit);
+        }
+        ResultSet resultSet = new ResultSet();
+        resultSet.setHits(hits);
+        resultSet.setResults(hits.size());
+        return resultSet;
+    }
+
+    private static List<String> drain(PagedQuery query) {
+        List<String> paths = new ArrayList<>();
+        while (query.hasNext()) {
+            paths.add(query.next().getJcrPath());
+        }
+        return paths;
+    }
+
+    @Test
+    void testIterate_AllWindows() throws Exception {
+        when(slingClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 0)).thenReturn(window("/a", "/b"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 2)).thenReturn(window("/c", "/d"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 4)).thenReturn(window("/e"));
+
+        try (PagedQuery query = new PagedQuery(slingClient, path, 2, false)) {
+            assertEquals(List.of("/a", "/b", "/c", "/d", "/e"), drain(query), "All windows should be returned in order");
+        }
+        verify(fetchClient, never()).queryWindow(path, QueryUrl.PathScope.SUBTREE, 6);
+    }
+
+    @Test
+    void testIterate_SkipsHitsShiftedFromPreviousWindow() throws Exception {
+        when(slingClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 0)).thenReturn(window("/a", "/b"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 2)).thenReturn(window("/b", "/c"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 4)).thenReturn(window());
+
+        try (PagedQuery query = new PagedQuery(slingClient, path, 2, false)) {
+            assertEquals(List.of("/a", "/b", "/c"), drain(query), "A hit repeated in the next window should be skipped");
+        }
+    }
+
+    @Test
+    void testIterate_FetchAllBeforeFirstHit() throws Exception {
+        when(slingClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 0)).thenReturn(window("/a", "/b"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 2)).thenReturn(window("/c"));
+
+        try (PagedQuery query = new PagedQuery(slingClient, path, 2, true)) {
+            verify(fetchClient).queryWindow(path, QueryUrl.PathScope.SUBTREE, 2);
+            assertEquals(List.of("/a", "/b", "/c"), drain(query), "All hits should be returned");
+        }
+    }
+
+    @Test
+    void testIterate_FailedWindowThrows() throws Exception {
+        when(slingClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 0)).thenReturn(window("/a", "/b"));
+        when(fetchClient.queryWindow(path, QueryUrl.PathScope.SUBTREE, 2)).thenThrow(new IOException("Query failed at offset 2 (status code: 500)"));
+
+        try (PagedQuery query = new PagedQuery(slingClient, path, 2, false)) {
+            query.next();
+            query.next();
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, query::hasNext, "A failed window should not end the iteration silently");
+            assertEquals("Query failed at offset 2 (status code: 500)", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void testConstructor_InvalidPageSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PagedQuery(slingClient, path, 0, false));
+    }
+
+}
@@ -0,0 +1,132 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.PageToolApp;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionedQueryTest {
+
+    @Mock private SlingClient slingClient;
+    @Mock private SlingClient worker;
+
+    private final String path = "/content/site";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PageToolApp.verbose = false;
+        when(slingClient.newWorker()).thenReturn(worker);
+    }
+
+    private static QueryResultReader hits(String... paths) throws IOException {
+        StringBuilder json = new StringBuilder("{\"success\":true,\"results\":" + paths.length + ",\"total\":" + paths.length + ",\"hits\":[");
+        for (int i = 0; i < paths.length; i++) {
+            json.append(i > 0 ? "," : "").append("{\"jcr:path\":\"").append(paths[i]).append("\"}");
+        }
+        json.append("]}");
+        return new QueryResultReader(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static List<String> drain(PartitionedQuery query) {
+        List<String> paths = new ArrayList<>();
+        while (query.hasNext()) {
+            paths.add(query.next().getJcrPath());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Test
+    void testIterate_QueriesEachChildWithItsSubtree() throws Exception {
+        when(worker.getChildPaths(path)).thenReturn(List.of(path + "/en", path + "/de"));
+        when(worker.streamQuery(path + "/en", QueryUrl.PathScope.SELF_AND_SUBTREE)).thenReturn(hits(path + "/en", path + "/en/about"));
+        when(worker.streamQuery(path + "/de", QueryUrl.PathScope.SELF_AND_SUBTREE)).thenReturn(hits(path + "/de/contact"));
+
+        try (PartitionedQuery query = new PartitionedQuery(slingClient, path, 1, 2, 0, false)) {
+            assertEquals(List.of(path + "/de/contact", path + "/en", path + "/en/about"), drain(query), "Hits of all partitions should be merged");
+            assertEquals(2, query.getPartitionCount());
+        }
+        verify(worker, never()).streamQuery(eq(path), any());
+    }
+
+    @Test
+    void testIterate_DeeperPartitionsIncludeNodesAboveThemOnce() throws Exception {
+        when(worker.getChildPaths(path)).thenReturn(List.of(path + "/en", path + "/de"));
+        when(worker.getChildPaths(path + "/en")).thenReturn(List.of(path + "/en/about"));
+        when(worker.getChildPaths(path + "/de")).thenReturn(Collections.emptyList());
+        when(worker.streamQuery(path, QueryUrl.PathScope.CHILDREN)).thenReturn(hits(path + "/en", path + "/de"));
+        when(worker.streamQuery(path + "/en/about", QueryUrl.PathScope.SELF_AND_SUBTREE)).thenReturn(hits(path + "/en/about", path + "/en/about", path + "/en/about/team"));
+
+        try (PartitionedQuery query = new PartitionedQuery(slingClient, path, 2, 3, 0, false)) {
+            assertEquals(List.of(path + "/de", path + "/en", path + "/en/about", path + "/en/about/team"), drain(query),
+                    "Nodes above the partitions should be found by flat queries, and each path returned once");
+        }
+        verify(worker, never()).streamQuery(path + "/en", QueryUrl.PathScope.CHILDREN);
+    }
+
+    @Test
+    void testLimitedTo_QueriesLevelsAboveTheLimitFlat() throws Exception {
+        when(worker.getChildPaths(path)).thenReturn(List.of(path + "/en"));
+        when(worker.streamQuery(path, QueryUrl.PathScope.CHILDREN)).thenReturn(hits(path + "/en"));
+        when(worker.streamQuery(path + "/en", QueryUrl.PathScope.CHILDREN)).thenReturn(hits(path + "/en/about"));
+
+        try (PartitionedQuery query = PartitionedQuery.limitedTo(2, false, slingClient, path, 2, 0, false)) {
+            assertEquals(List.of(path + "/en", path + "/en/about"), drain(query), "Nodes down to the limit should be found by flat queries");
+        }
+        verify(worker, never()).getChildPaths(path + "/en");
+        verify(worker, never()).streamQuery(anyString(), eq(QueryUrl.PathScope.SELF_AND_SUBTREE));
+    }
+
+    @Test
+    void testLimitedTo_PageContentOfChildPages() throws Exception {
+        String childPages = "{\"success\":true,\"results\":1,\"total\":1,\"hits\":[{\"jcr:path\":\"" + path + "/en\",\"jcr:content\":{\"title\":\"English\"}}]}";
+        when(worker.streamQuery(path, QueryUrl.PathScope.CHILDREN)).thenReturn(hits(path + "/jcr:content"));
+        when(worker.streamQuery(path, QueryUrl.PathScope.CHILD_PAGE_CONTENT)).thenReturn(
+                new QueryResultReader(new ByteArrayInputStream(childPages.getBytes(StandardCharsets.UTF_8)), null));
+
+        List<ResultPage> hits = new ArrayList<>();
+        try (PartitionedQuery query = PartitionedQuery.limitedTo(1, true, slingClient, path, 1, 0, false)) {
+            query.forEachRemaining(hits::add);
+        }
+        hits.sort((a, b) -> a.getJcrPath().compareTo(b.getJcrPath()));
+        assertEquals(2, hits.size());
+        assertEquals(path + "/en/jcr:content", hits.get(0).getJcrPath(), "A child page should stand for its content node");
+        assertEquals("English", hits.get(0).getProperties().get("title").getAsString(), "The content properties should be kept");
+        assertEquals(path + "/jcr:content", hits.get(1).getJcrPath(), "The content node of the root page should be included");
+        verify(worker, never()).getChildPaths(anyString());
+    }
+
+    @Test
+    void testIterate_FailedPartitionThrows() throws Exception {
+        when(worker.getChildPaths(path)).thenReturn(List.of(path + "/en"));
+        when(worker.streamQuery(path + "/en", QueryUrl.PathScope.SELF_AND_SUBTREE)).thenThrow(new IOException("Failed to access URL (status code: 500)"));
+
+        try (PartitionedQuery query = new PartitionedQuery(slingClient, path, 1, 1, 0, false)) {
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, query::hasNext, "A failed partition should not end the iteration silently");
+            assertEquals("Failed to access URL (status code: 500)", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void testConstructor_InvalidDepth() {
+        reset(slingClient);
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedQuery(slingClient, path, 0, 1, 0, false));
+    }
+
+}
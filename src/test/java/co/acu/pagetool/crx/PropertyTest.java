@@ -47,6 +47,16 @@ class PropertyTest {
         assertFalse(prop.isMulti(), "Should not be multi-valued");
     }
 
+    @Test
+    void testGetProperty_Regex() throws InvalidPropertyException {
+        Property prop = Property.getProperty("title ~= ^News\\b");
+        assertEquals("title", prop.getName());
+        assertEquals("^News\\b", prop.getValue());
+        assertTrue(prop.isRegex(), "Should be a regular expression");
+        assertFalse(Property.getProperty("title=a~=b").isRegex(), "~= in the value should not make a regular expression");
+        assertThrows(InvalidPropertyException.class, () -> Property.getProperty("title~=[unclosed"));
+    }
+
     @Test
     void testGetProperty_NullInput() throws InvalidPropertyException {
         Property prop = Property.getProperty(null);
@@ -0,0 +1,66 @@
+package co.acu.pagetool.crx;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlanTest {
+
+    private static Property regex(String name, String value) {
+        Property property = new Property(name, value);
+        property.setRegex(true);
+        return property;
+    }
+
+    @Test
+    void testPlan_RegexIsAlwaysLocal() {
+        Property status = new Property("status", "done");
+        Property title = regex("jcr:title", "^News");
+        QueryPlan plan = new QueryPlan(List.of(status, title), false);
+
+        assertEquals(List.of(status), plan.getServerProperties());
+        assertEquals(List.of(title), plan.getLocalProperties());
+        assertEquals(List.of("jcr:title"), plan.getLocalPropertyNames());
+    }
+
+    @Test
+    void testPlan_LikeIsLocalOnlyIfRequested() {
+        Property tags = new Property("cq:tags", new String[]{"news"});
+        Property legacy = new Property("legacy", "");
+
+        QueryPlan serverPlan = new QueryPlan(List.of(tags, legacy), false);
+        assertEquals(List.of(tags, legacy), serverPlan.getServerProperties());
+        assertFalse(serverPlan.hasLocalProperties());
+        assertNull(serverPlan.createLocalFilter());
+
+        QueryPlan localPlan = new QueryPlan(List.of(tags, legacy), true);
+        assertEquals(List.of(legacy), localPlan.getServerProperties(), "Existence checks can use an index");
+        assertEquals(List.of(tags), localPlan.getLocalProperties());
+        assertTrue(localPlan.createLocalFilter().matches("jcr:content",
+                JsonParser.parseString("{\"cq:tags\":[\"site:news/local\"]}").getAsJsonObject()));
+    }
+
+    @Test
+    void testPlan_AnyCriterionIsAllLocalIfOneIs() {
+        Property status = new Property("status", "done");
+        Property title = regex("jcr:title", "^News");
+        QueryPlan plan = new QueryPlan(List.of(status, title), false, true);
+
+        assertTrue(plan.getServerProperties().isEmpty(), "OR-combined criteria cannot be split");
+        assertEquals(List.of(status, title), plan.getLocalProperties());
+        assertTrue(plan.createLocalFilter().matches("jcr:content",
+                JsonParser.parseString("{\"status\":\"done\",\"jcr:title\":\"Old\"}").getAsJsonObject()));
+    }
+
+    @Test
+    void testPlan_NoProperties() {
+        QueryPlan plan = new QueryPlan(null, true);
+
+        assertNull(plan.getServerProperties());
+        assertFalse(plan.hasLocalProperties());
+    }
+
+}
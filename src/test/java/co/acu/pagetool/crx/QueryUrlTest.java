@@ -78,6 +78,58 @@ class QueryUrlTest {
         assertEquals(expected, result, "Query URL with multi-valued property should match");
     }
 
+    @Test
+    void testBuildUrl_QueryWithExactMultiValuedProperty() {
+        setupConnStubs();
+        Property single = new Property("maSortingTag", new String[]{"test1"});
+        single.setExactMatch(true);
+        Property multiple = new Property("cq:tags", new String[]{"a b", "c"});
+        multiple.setExactMatch(true);
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10&1_property=maSortingTag&1_property.value=test1"
+                + "&2_property=cq:tags&2_property.1_value=a+b&2_property.2_value=c";
+        String result = queryUrl.buildUrl("/content/test", List.of(single, multiple), null, true, false, null, false, null);
+        assertEquals(expected, result, "Exact multi-valued matches should not use like");
+    }
+
+    @Test
+    void testBuildCountUrl() {
+        setupConnStubs();
+        List<String> nodes = List.of("hero");
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=0&p.guessTotal=5000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10&nodename=hero";
+        String result = queryUrl.buildCountUrl("/content/test", QueryUrl.PathScope.SUBTREE, null, nodes, false, false, null, 5000);
+        assertEquals(expected, result, "Count URL should not fetch hits");
+    }
+
+    @Test
+    void testBuildUrl_GuessTotal() {
+        setupConnStubs();
+        queryUrl.setGuessTotal(true);
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.guessTotal=true&p.hits=selective&p.properties=jcr:path&p.nodedepth=10&nodename=hero";
+        String result = queryUrl.copy().buildUrl("/content/test", null, List.of("hero"), false, false, null);
+        assertEquals(expected, result, "Query URL should only estimate the total");
+    }
+
+    @Test
+    void testBuildUrl_QueryWithSeveralNodes() {
+        setupConnStubs();
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10"
+                + "&group.p.or=true&group.1_nodename=hero&group.2_nodename=teaser*";
+        String result = queryUrl.buildUrl("/content/test", null, List.of("hero", "teaser*"), true, false, null, false, null);
+        assertEquals(expected, result, "Several node names should be OR-combined in a group");
+    }
+
+    @Test
+    void testBuildUrl_QueryWithAnyPropertyAndSeveralNodes() {
+        setupConnStubs();
+        when(opProps.isMatchAny()).thenReturn(true);
+        List<Property> properties = List.of(new Property("status", "done"), new Property("legacy", ""));
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10"
+                + "&1_group.p.or=true&1_group.1_property=status&1_group.1_property.value=done&1_group.2_property=legacy&1_group.2_property.operation=exists"
+                + "&2_group.p.or=true&2_group.1_nodename=hero&2_group.2_nodename=teaser";
+        String result = queryUrl.buildUrl("/content/test", properties, List.of("hero", "teaser"), true, false, null, false, opProps);
+        assertEquals(expected, result, "Properties and node names should be OR-combined in separate groups");
+    }
+
     @Test
     void testBuildUrl_QueryWithNode() {
         setupConnStubs();
@@ -131,6 +183,25 @@ class QueryUrlTest {
         assertEquals(expected, result, "Query URL with nested property copy should include property filter");
     }
 
+    @Test
+    void testBuildUrl_QuerySelectsReadProperties() {
+        setupConnStubs();
+        when(opProps.getReadProperties()).thenReturn(List.of("bgPageImage", "par/subpar/prop1", "par/title"));
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.hits=selective&p.properties=jcr:path%20bgPageImage%20par&p.nodedepth=2";
+        String result = queryUrl.buildUrl("/content/test", null, null, true, false, null, false, opProps);
+        assertEquals(expected, result, "Query URL should select the read properties with the depth of the deepest one");
+    }
+
+    @Test
+    void testBuildUrl_QuerySelectsFilterProperties() {
+        setupConnStubs();
+        when(opProps.getReadProperties()).thenReturn(List.of("bgPageImage"));
+        queryUrl.setFilterProperties(List.of("cq:tags", "bgPageImage"));
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=1000&p.hits=selective&p.properties=jcr:path%20bgPageImage%20cq%3Atags&p.nodedepth=0";
+        String result = queryUrl.buildUrl("/content/test", null, null, true, false, null, false, opProps);
+        assertEquals(expected, result, "Query URL should select the properties matched on the hits once");
+    }
+
     @Test
     void testBuildUrl_UpdateSimplePath() {
         setupConnStubs();
@@ -210,6 +281,91 @@ class QueryUrlTest {
         assertEquals(expected, result, "Fourth overload should build update URL with copy property");
     }
 
+    @Test
+    void testBuildUrl_PagedWindow() {
+        setupConnStubs();
+        queryUrl.setPageSize(500);
+        String path = "/content/test";
+        List<String> nodes = new ArrayList<>(Collections.singletonList("newNode"));
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/test&p.limit=500&p.offset=1500&orderby=path&p.hits=selective&p.properties=jcr:path&p.nodedepth=10&nodename=newNode";
+        String result = queryUrl.buildUrl(path, null, nodes, false, false, null, 1500);
+        assertEquals(expected, result, "Paged query URL should include the window and a stable sort order");
+    }
+
+    @Test
+    void testCopy_KeepsSettings() {
+        setupConnStubs();
+        queryUrl.setPageSize(200);
+        queryUrl.buildUrl("/content/test", null, null, true, false, null);
+        QueryUrl copy = queryUrl.copy();
+        assertEquals(200, copy.getPageSize(), "Copy should keep the page size");
+        assertEquals("http://localhost:4502/content/test/jcr:content.json", copy.buildUrl("/content/test", ""), "Copy should keep the page type of the last query");
+    }
+
+    @Test
+    void testGetNodePath_CqPage() throws Exception {
+        setPrivateField("isCqPageType", true);
+        assertEquals("/content/test/jcr:content", queryUrl.getNodePath("/content/test"), "Pages should be updated on their content node");
+        assertEquals("/content/test/jcr:content", queryUrl.getNodePath("/content/test/jcr:content"), "Content node should not be appended twice");
+        setPrivateField("isCqPageType", false);
+        assertEquals("/content/test", queryUrl.getNodePath("/content/test"), "Nodes should be updated directly");
+    }
+
+    @Test
+    void testBuildNodeUrl_IgnoresPageType() throws Exception {
+        setupConnStubs();
+        setPrivateField("isCqPageType", true);
+        assertEquals("http://localhost:4502/content/site.json", queryUrl.buildNodeUrl("/content/site"), "Node URL should not point to the content node");
+    }
+
+    @Test
+    void testBuildNodeUrl_WithDepth() {
+        setupConnStubs();
+        assertEquals("http://localhost:4502/content/site/jcr:content.2.json", queryUrl.buildNodeUrl("/content/site/jcr:content", 2));
+        assertEquals("http://localhost:4502/content/site/jcr:content.json", queryUrl.buildNodeUrl("/content/site/jcr:content", 0));
+    }
+
+    @Test
+    void testBuildUrl_PathScope() {
+        setupConnStubs();
+        String path = "/content/site/en";
+        assertEquals("http://localhost:4502/bin/querybuilder.json?path=/content/site/en&path.self=true&p.limit=1000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10",
+                queryUrl.buildUrl(path, QueryUrl.PathScope.SELF_AND_SUBTREE, null, null, false, false, null, 0), "A partition should include its root node");
+        assertEquals("http://localhost:4502/bin/querybuilder.json?path=/content/site/en&path.flat=true&p.limit=1000&p.hits=selective&p.properties=jcr:path&p.nodedepth=10",
+                queryUrl.buildUrl(path, QueryUrl.PathScope.CHILDREN, null, null, false, false, null, 0), "Only direct children should be searched");
+        assertEquals(queryUrl.buildUrl(path, null, null, false, false, null),
+                queryUrl.buildUrl(path, QueryUrl.PathScope.SUBTREE, null, null, false, false, null, 0), "The subtree scope should not change the query");
+    }
+
+    @Test
+    void testBuildUrl_ChildPageContentScope() {
+        setupConnStubs();
+        when(opProps.getReadProperties()).thenReturn(List.of("title", "par/text"));
+        String expected = "http://localhost:4502/bin/querybuilder.json?path=/content/site/en&path.flat=true&p.limit=1000&p.hits=selective&p.properties=jcr:path%20jcr%3Acontent&p.nodedepth=2"
+                + "&1_property=jcr:content/status&1_property.value=done&type=cq:Page";
+        String result = queryUrl.buildUrl("/content/site/en", QueryUrl.PathScope.CHILD_PAGE_CONTENT,
+                List.of(new Property("status", "done")), null, true, true, opProps, 0);
+        assertEquals(expected, result, "Child pages should be queried with the criteria relative to their content node");
+    }
+
+    @Test
+    void testBuildChildrenUrl() {
+        setupConnStubs();
+        assertEquals("http://localhost:4502/bin/querybuilder.json?path=/content/dam&path.flat=true&p.limit=1000&p.offset=2000&orderby=path&p.hits=full&p.nodedepth=0",
+                queryUrl.buildChildrenUrl("/content/dam", 2000), "Children should be listed with all their properties, one window at a time");
+    }
+
+    @Test
+    void testBuildExplainUrl() {
+        setupConnStubs();
+        String base = "http://localhost:4502/libs/granite/operations/content/diagnosistools/queryPerformance.explain.json"
+                + "?statement=%2Fjcr%3Aroot%2Fcontent%2F%2F*&language=xpath";
+        assertEquals(base + "&executionTime=false&resultCount=false", queryUrl.buildExplainUrl("/jcr:root/content//*", false),
+                "The plan should be explained without executing the query");
+        assertEquals(base + "&executionTime=true&resultCount=true", queryUrl.buildExplainUrl("/jcr:root/content//*", true),
+                "The query should only be executed when requested");
+    }
+
     @Test
     void testConstructor_NullCrxConnection() {
         Exception exception = assertThrows(NullPointerException.class, () -> new QueryUrl(null));
@@ -0,0 +1,46 @@
+package co.acu.pagetool.crx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testReserve_AllowsBurstThenRate() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(10, 2, now::get);
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(SECOND / 10, limiter.reserve(), "Third request should wait for the next token");
+        assertEquals(2 * SECOND / 10, limiter.reserve(), "Waiting requests should queue up");
+        assertEquals(300, limiter.getWaitMillis());
+    }
+
+    @Test
+    void testReserve_RefillsUpToBurst() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(10, 2, now::get);
+        limiter.reserve();
+        limiter.reserve();
+
+        now.addAndGet(10 * SECOND);
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertTrue(limiter.reserve() > 0, "Bucket should not hold more than the burst");
+    }
+
+    @Test
+    void testConstructor_RejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(1, 0));
+    }
+
+}
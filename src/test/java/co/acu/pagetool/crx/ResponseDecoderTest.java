@@ -0,0 +1,76 @@
+package co.acu.pagetool.crx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseDecoderTest {
+
+    private static final String JSON = "{\"hits\":[" + "{\"jcr:path\":\"/content/site/page\"},".repeat(100) + "{}]}";
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testDecode_Gzip() throws IOException {
+        ResponseDecoder decoder = new ResponseDecoder();
+        byte[] compressed = gzip(JSON);
+
+        assertEquals(JSON, read(decoder.decode(new ByteArrayInputStream(compressed), "gzip")));
+        assertEquals(compressed.length, decoder.getWireBytes(), "Compressed bytes should be counted on the wire");
+        assertEquals(JSON.length(), decoder.getDecodedBytes(), "Decompressed bytes should be counted as decoded");
+        assertEquals(1, decoder.getCompressedCount());
+    }
+
+    @Test
+    void testDecode_Deflate() throws IOException {
+        ResponseDecoder decoder = new ResponseDecoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(JSON.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(JSON, read(decoder.decode(new ByteArrayInputStream(out.toByteArray()), "Deflate")));
+        assertTrue(decoder.getWireBytes() < decoder.getDecodedBytes());
+    }
+
+    @Test
+    void testDecode_Uncompressed() throws IOException {
+        ResponseDecoder decoder = new ResponseDecoder();
+
+        assertEquals(JSON, read(decoder.decode(new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)), null)));
+        assertEquals(JSON.length(), decoder.getWireBytes());
+        assertEquals(JSON.length(), decoder.getDecodedBytes());
+        assertEquals(0, decoder.getCompressedCount());
+    }
+
+    @Test
+    void testDecode_EmptyCompressedBody() throws IOException {
+        assertEquals("", read(new ResponseDecoder().decode(new ByteArrayInputStream(new byte[0]), "gzip")));
+    }
+
+    @Test
+    void testDecode_UnsupportedEncoding() {
+        assertThrows(IOException.class, () -> new ResponseDecoder().decode(new ByteArrayInputStream(new byte[]{1}), "br"));
+    }
+
+}
@@ -0,0 +1,61 @@
+package co.acu.pagetool.crx;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, 100, 1000);
+
+    @Test
+    void testShouldRetry_TransientStatus() {
+        assertTrue(policy.shouldRetry(0, 503, true));
+        assertTrue(policy.shouldRetry(2, 429, true));
+        assertFalse(policy.shouldRetry(3, 503, true), "Retries should be limited");
+        assertFalse(policy.shouldRetry(0, 500, true), "Server errors should not be retried");
+        assertFalse(policy.shouldRetry(0, 404, true));
+    }
+
+    @Test
+    void testShouldRetry_NonIdempotentOnlyWhenNotApplied() {
+        assertTrue(policy.shouldRetry(0, 503, false), "503 means the request was not processed");
+        assertFalse(policy.shouldRetry(0, 504, false), "Request may have been processed behind the gateway");
+        assertTrue(policy.shouldRetry(0, new ConnectException("Connection refused"), false));
+        assertTrue(policy.shouldRetry(0, new ConnectTimeoutException("Connect timed out"), false));
+        assertFalse(policy.shouldRetry(0, new SocketTimeoutException("Read timed out"), false));
+    }
+
+    @Test
+    void testShouldRetry_IOException() {
+        assertTrue(policy.shouldRetry(0, new SocketTimeoutException("Read timed out"), true));
+        assertTrue(policy.shouldRetry(0, new IOException("Connection reset"), true));
+        assertFalse(policy.shouldRetry(0, new InterruptedIOException("Interrupted"), true), "Interruptions should stop the run");
+    }
+
+    @Test
+    void testGetDelay_ExponentialWithJitter() {
+        for (int i = 0; i < 20; i++) {
+            long first = policy.getDelay(0, -1);
+            assertTrue(first >= 50 && first <= 100, "First delay should be between half and the full base delay");
+            long third = policy.getDelay(2, -1);
+            assertTrue(third >= 200 && third <= 400, "Delay should double with each attempt");
+            long capped = policy.getDelay(10, -1);
+            assertTrue(capped >= 500 && capped <= 1000, "Delay should be capped");
+        }
+    }
+
+    @Test
+    void testGetDelay_RetryAfter() {
+        RetryPolicy slow = new RetryPolicy(3, 100, 60000);
+        assertTrue(slow.getDelay(0, 5) >= 5000, "Retry-After should be respected");
+        assertTrue(policy.getDelay(0, 5) <= 1000, "Retry-After should be capped by the maximum delay");
+    }
+
+}
@@ -3,18 +3,36 @@ package co.acu.pagetool.crx;
 import co.acu.pagetool.OperationProperties;
 import co.acu.pagetool.PageToolApp;
 import co.acu.pagetool.exception.SlingClientException;
+import co.acu.pagetool.result.QueryResultReader;
+import co.acu.pagetool.result.ResultPage;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HttpContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -27,7 +45,6 @@ class SlingClientTest {
     @Mock private QueryUrl queryUrl;
     @Mock private OperationProperties properties;
     @Mock private Property prop;
-    @Mock private CloseableHttpClient httpClient;
 
     @Spy @InjectMocks private SlingClient slingClient;
 
@@ -46,9 +63,18 @@ class SlingClientTest {
         field.set(slingClient, value);
     }
 
+    private SlingClient clientResponding(String responseText) throws IOException {
+        HttpTransport transport = mock(HttpTransport.class);
+        HttpClientPool pool = mock(HttpClientPool.class);
+        when(pool.getTransport()).thenReturn(transport);
+        HttpTransport.Response response = transportResponse(200, responseText);
+        when(transport.send(eq(HttpTransport.GET), contains("querybuilder.json"), isNull())).thenReturn(response);
+        return new SlingClient(conn, properties, queryUrl, pool);
+    }
+
     @Test
-    void testQueryPages_Success() throws Exception {
-        String responseText = "{\"total\": 2, \"results\": []}";
+    void testStreamQuery_Success() throws Exception {
+        String responseText = "{\"total\": 2, \"results\": 0, \"hits\": []}";
         when(properties.isPropertyCopy()).thenReturn(false);
         when(properties.isCqPageType()).thenReturn(false);
         when(properties.getMatchingNodes()).thenReturn(new ArrayList<>());
@@ -59,20 +85,17 @@ class SlingClientTest {
         doReturn("http://localhost:4502/bin/querybuilder.json?path=/content/testPage")
                 .when(queryUrl).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
 
-        doReturn(responseText).when(slingClient).executeGet(anyString());
-        when(slingClient.getLastStatusCode()).thenReturn(200);
-        when(slingClient.getLastResponseText()).thenReturn(responseText);
-
-        slingClient.queryPages(path);
+        SlingClient client = clientResponding(responseText);
 
-        assertEquals(200, slingClient.getLastStatusCode(), "Status code should be 200");
-        assertEquals(responseText, slingClient.getLastResponseText(), "Response text should match");
-        verify(slingClient, times(1)).executeGet(contains("querybuilder.json"));
+        try (QueryResultReader hits = client.streamQuery(path)) {
+            assertEquals(2, hits.getResultSet().getTotal(), "Total should be read from the response");
+        }
+        assertEquals(200, client.getLastStatusCode(), "Status code should be 200");
         verify(queryUrl, times(1)).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
     }
 
     @Test
-    void testQueryPages_WithDeleteProperties() throws Exception {
+    void testStreamQuery_WithDeleteProperties() throws Exception {
         String responseText = "{\"total\": 1, \"hits\": [{\"jcr:path\": \"/content/testPage/jcr:content\"}]}";
         when(properties.isPropertyCopy()).thenReturn(false);
         when(properties.isCqPageType()).thenReturn(false);
@@ -82,21 +105,18 @@ class SlingClientTest {
         doReturn("http://localhost:4502/bin/querybuilder.json?path=/content/testPage&property=prop1")
                 .when(queryUrl).buildUrl(eq(path), any(), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
 
-        doReturn(responseText).when(slingClient).executeGet(anyString());
-        when(slingClient.getLastStatusCode()).thenReturn(200);
-        when(slingClient.getLastResponseText()).thenReturn(responseText);
+        SlingClient client = clientResponding(responseText);
 
-        slingClient.queryPages(path);
-
-        assertEquals(200, slingClient.getLastStatusCode(), "Status code should be 200");
-        assertEquals(responseText, slingClient.getLastResponseText(), "Response text should match");
-        verify(slingClient, times(1)).executeGet(contains("querybuilder.json"));
+        try (QueryResultReader hits = client.streamQuery(path)) {
+            assertEquals(1, hits.getResultSet().getTotal(), "Total should be read from the response");
+        }
+        assertEquals(200, client.getLastStatusCode(), "Status code should be 200");
         verify(queryUrl, times(1)).buildUrl(eq(path), any(), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
     }
 
 
     @Test
-    void testQueryPages_WithMatchingProperties() throws Exception {
+    void testStreamQuery_WithMatchingProperties() throws Exception {
         String responseText = "{\"total\": 1, \"hits\": [{\"jcr:path\": \"/content/testPage/jcr:content\"}]}";
         when(properties.isPropertyCopy()).thenReturn(false);
         when(properties.isCqPageType()).thenReturn(false);
@@ -110,20 +130,17 @@ class SlingClientTest {
         doReturn("http://localhost:4502/bin/querybuilder.json?path=/content/testPage&property=maSortingTag&property.value=test1")
                 .when(queryUrl).buildUrl(eq(path), eq(matchingProperties), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
 
-        doReturn(responseText).when(slingClient).executeGet(anyString());
-        when(slingClient.getLastStatusCode()).thenReturn(200);
-        when(slingClient.getLastResponseText()).thenReturn(responseText);
+        SlingClient client = clientResponding(responseText);
 
-        slingClient.queryPages(path);
-
-        assertEquals(200, slingClient.getLastStatusCode(), "Status code should be 200");
-        assertEquals(responseText, slingClient.getLastResponseText(), "Response text should match");
-        verify(slingClient, times(1)).executeGet(contains("querybuilder.json"));
+        try (QueryResultReader hits = client.streamQuery(path)) {
+            assertEquals(1, hits.getResultSet().getTotal(), "Total should be read from the response");
+        }
+        assertEquals(200, client.getLastStatusCode(), "Status code should be 200");
         verify(queryUrl, times(1)).buildUrl(eq(path), eq(matchingProperties), eq(new ArrayList<>()), eq(false), eq(false), eq(properties));
     }
 
     @Test
-    void testQueryPages_WithPropertyCopy() throws Exception {
+    void testStreamQuery_WithPropertyCopy() throws Exception {
         String responseText = "{\"total\": 1, \"hits\": [{\"jcr:path\": \"/content/testPage/jcr:content\"}]}";
         when(properties.isPropertyCopy()).thenReturn(true);
         when(properties.isCqPageType()).thenReturn(false);
@@ -135,20 +152,17 @@ class SlingClientTest {
         doReturn("http://localhost:4502/bin/querybuilder.json?path=/content/testPage&property=bgPageImage&property.operation=exists")
                 .when(queryUrl).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(false), eq(true), eq(properties));
 
-        doReturn(responseText).when(slingClient).executeGet(anyString());
-        when(slingClient.getLastStatusCode()).thenReturn(200);
-        when(slingClient.getLastResponseText()).thenReturn(responseText);
-
-        slingClient.queryPages(path);
+        SlingClient client = clientResponding(responseText);
 
-        assertEquals(200, slingClient.getLastStatusCode(), "Status code should be 200");
-        assertEquals(responseText, slingClient.getLastResponseText(), "Response text should match");
-        verify(slingClient, times(1)).executeGet(contains("querybuilder.json"));
+        try (QueryResultReader hits = client.streamQuery(path)) {
+            assertEquals(1, hits.getResultSet().getTotal(), "Total should be read from the response");
+        }
+        assertEquals(200, client.getLastStatusCode(), "Status code should be 200");
         verify(queryUrl, times(1)).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(false), eq(true), eq(properties));
     }
 
     @Test
-    void testQueryPages_WithPropertyCopyAndCqPageType() throws Exception {
+    void testStreamQuery_WithPropertyCopyAndCqPageType() throws Exception {
         String responseText = "{\"total\": 1, \"hits\": [{\"jcr:path\": \"/content/testPage/jcr:content\"}]}";
         when(properties.isPropertyCopy()).thenReturn(true);
         when(properties.isCqPageType()).thenReturn(true);
@@ -160,15 +174,12 @@ class SlingClientTest {
         doReturn("http://localhost:4502/bin/querybuilder.json?path=/content/testPage&property=bgPageImage&property.operation=exists&type=cq:Page")
                 .when(queryUrl).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(true), eq(true), eq(properties));
 
-        doReturn(responseText).when(slingClient).executeGet(anyString());
-        when(slingClient.getLastStatusCode()).thenReturn(200);
-        when(slingClient.getLastResponseText()).thenReturn(responseText);
-
-        slingClient.queryPages(path);
+        SlingClient client = clientResponding(responseText);
 
-        assertEquals(200, slingClient.getLastStatusCode(), "Status code should be 200");
-        assertEquals(responseText, slingClient.getLastResponseText(), "Response text should match");
-        verify(slingClient, times(1)).executeGet(contains("querybuilder.json"));
+        try (QueryResultReader hits = client.streamQuery(path)) {
+            assertEquals(1, hits.getResultSet().getTotal(), "Total should be read from the response");
+        }
+        assertEquals(200, client.getLastStatusCode(), "Status code should be 200");
         verify(queryUrl, times(1)).buildUrl(eq(path), eq(null), eq(new ArrayList<>()), eq(true), eq(true), eq(properties));
     }
 
@@ -190,6 +201,85 @@ class SlingClientTest {
         verify(queryUrl, times(1)).buildUrl("/content/testPage", "");
     }
 
+    @Test
+    void testGetPropertyValue_FromHit() throws Exception {
+        ResultPage hit = new ResultPage();
+        hit.setJcrPath(path);
+        hit.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/testPage\", \"tags\": [\"a\", \"b\"], \"par\": {\"title\": \"T\"}}").getAsJsonObject());
+        slingClient.setHits(List.of(hit));
+
+        assertEquals("a,b", slingClient.getPropertyValue(path, "tags"), "Multiple values should be joined");
+        assertEquals("T", slingClient.getPropertyValue(path, "par/title"), "Nested values should be read from the hit");
+        verify(slingClient, never()).executeGet(anyString());
+    }
+
+    @Test
+    void testGetPropertyValue_MissingFromHitFallsBack() throws Exception {
+        ResultPage hit = new ResultPage();
+        hit.setJcrPath(path);
+        hit.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/testPage\", \"tags\": [\"a\"]}").getAsJsonObject());
+        slingClient.setHits(List.of(hit));
+        when(queryUrl.buildUrl("/content/testPage", "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doReturn("{\"bgPageImage\": \"image.jpg\"}").when(slingClient).executeGet(anyString());
+
+        assertEquals("image.jpg", slingClient.getPropertyValue(path, "bgPageImage"), "Missing values should be requested");
+        verify(slingClient, times(1)).executeGet("http://localhost:4502/content/testPage.json");
+    }
+
+    @Test
+    void testGetPropertyValue_FromSnapshot() throws Exception {
+        slingClient.setSnapshotCache(new NodeSnapshotCache(10));
+        when(properties.getReadProperties()).thenReturn(List.of("title", "par/subpar/prop1"));
+        when(queryUrl.buildNodeUrl(path, 2)).thenReturn("http://localhost:4502/content/testPage.2.json");
+        doAnswer(invocation -> {
+            setPrivateField("lastStatusCode", 200);
+            return "{\"title\": \"T\", \"par\": {\"subpar\": {\"prop1\": \"nestedValue\"}}}";
+        }).when(slingClient).executeGet(anyString());
+
+        assertEquals("T", slingClient.getPropertyValue(path, "title"));
+        assertEquals("nestedValue", slingClient.getPropertyValue(path, "par/subpar/prop1"));
+        assertNull(slingClient.getPropertyValue(path, "missing"), "Missing properties should not be requested again");
+
+        verify(slingClient, times(1)).executeGet("http://localhost:4502/content/testPage.2.json");
+        assertEquals(2, slingClient.getSnapshotCache().getHitCount());
+        assertEquals(1, slingClient.getSnapshotCache().getMissCount());
+    }
+
+    @Test
+    void testGetPropertyValue_SnapshotRefetchedAfterChange() throws Exception {
+        slingClient.setSnapshotCache(new NodeSnapshotCache(10));
+        when(queryUrl.buildNodeUrl(path, 0)).thenReturn("http://localhost:4502/content/testPage.json");
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        when(properties.getPropertyValueReplacement()).thenReturn(new Property("title", new String[]{"Old", "New"}));
+        doAnswer(invocation -> {
+            setPrivateField("lastStatusCode", 200);
+            return "{\"title\": \"Old Title\"}";
+        }).when(slingClient).executeGet(anyString());
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        slingClient.replacePropertyValue(path);
+        slingClient.getPropertyValue(path, "title");
+
+        verify(slingClient, times(2)).executeGet("http://localhost:4502/content/testPage.json");
+    }
+
+    @Test
+    void testGetPropertyValue_SnapshotUnavailableFallsBack() throws Exception {
+        slingClient.setSnapshotCache(new NodeSnapshotCache(10));
+        when(queryUrl.buildNodeUrl(path, 0)).thenReturn("http://localhost:4502/content/testPage.json");
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage/prop.json");
+        doAnswer(invocation -> {
+            setPrivateField("lastStatusCode", 300);
+            return "[\"/content/testPage.1.json\"]";
+        }).doAnswer(invocation -> {
+            setPrivateField("lastStatusCode", 200);
+            return "{\"bgPageImage\": \"image.jpg\"}";
+        }).when(slingClient).executeGet(anyString());
+
+        assertEquals("image.jpg", slingClient.getPropertyValue(path, "bgPageImage"), "Property should be requested directly");
+        assertEquals(0, slingClient.getSnapshotCache().size(), "Failed snapshot should not be cached");
+    }
+
     @Test
     void testGetPropertyValue_NestedProperty() throws Exception {
         String propertyJson = "{\"par\": {\"subpar\": {\"prop1\": \"nestedValue\"}}}";
@@ -228,11 +318,7 @@ class SlingClientTest {
 
     @Test
     void testCopyProperties_PropertyCopySuccess() throws Exception {
-        when(conn.getHostname()).thenReturn("localhost");
-        when(conn.getPort()).thenReturn("4502");
         when(conn.isSecure()).thenReturn(false);
-        when(conn.getUsername()).thenReturn("admin");
-        when(conn.getPassword()).thenReturn("admin");
         when(properties.getCopyFromProperties()).thenReturn(new ArrayList<>(List.of("bgPageImage")));
         when(properties.getCopyToProperties()).thenReturn(new ArrayList<>(List.of("newBgImage")));
         when(queryUrl.buildUrl("/content/testPage", "")).thenReturn("http://localhost:4502/content/testPage.json");
@@ -265,11 +351,7 @@ class SlingClientTest {
 
     @Test
     void testCopyProperties_PropertyCopyNestedSuccess() throws Exception {
-        when(conn.getHostname()).thenReturn("localhost");
-        when(conn.getPort()).thenReturn("4502");
         when(conn.isSecure()).thenReturn(false);
-        when(conn.getUsername()).thenReturn("admin");
-        when(conn.getPassword()).thenReturn("admin");
         when(properties.getCopyFromProperties()).thenReturn(new ArrayList<>(List.of("par/subpar/prop1")));
         when(properties.getCopyToProperties()).thenReturn(new ArrayList<>(List.of("par/subpar/prop2")));
         when(queryUrl.buildUrl("/content/testPage", "par/subpar")).thenReturn("http://localhost:4502/content/testPage/par/subpar.json");
@@ -302,11 +384,6 @@ class SlingClientTest {
 
     @Test
     void testCopyProperties_PropertyCopyNoSourceProperty() throws Exception {
-        when(conn.getHostname()).thenReturn("localhost");
-        when(conn.getPort()).thenReturn("4502");
-        when(conn.isSecure()).thenReturn(false);
-        when(conn.getUsername()).thenReturn("admin");
-        when(conn.getPassword()).thenReturn("admin");
         when(properties.getCopyFromProperties()).thenReturn(new ArrayList<>(List.of("bgPageImage")));
         when(properties.getCopyToProperties()).thenReturn(new ArrayList<>(List.of("newBgImage")));
         when(queryUrl.buildUrl("/content/testPage", "")).thenReturn("http://localhost:4502/content/testPage.json");
@@ -328,11 +405,7 @@ class SlingClientTest {
 
     @Test
     void testCopyProperties_InvalidTargetPath() throws Exception {
-        when(conn.getHostname()).thenReturn("localhost");
-        when(conn.getPort()).thenReturn("4502");
         when(conn.isSecure()).thenReturn(false);
-        when(conn.getUsername()).thenReturn("admin");
-        when(conn.getPassword()).thenReturn("admin");
         when(properties.getCopyFromProperties()).thenReturn(new ArrayList<>(List.of("bgPageImage")));
         when(properties.getCopyToProperties()).thenReturn(new ArrayList<>(List.of("newBgImage")));
         when(queryUrl.buildUrl("/content/testPage", "")).thenReturn("/content/testPage.json");
@@ -415,6 +488,208 @@ class SlingClientTest {
         verify(queryUrl, times(1)).buildUrl(eq(path), any());
     }
 
+    @Test
+    void testCommitPage_SingleRequest() throws Exception {
+        Property replacement = new Property("title", new String[]{"Old", "New"});
+        when(properties.getDeleteProperties()).thenReturn(new ArrayList<>(List.of("obsolete")));
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(properties.isPropertyCopy()).thenReturn(true);
+        when(properties.getCopyFromProperties()).thenReturn(new ArrayList<>(List.of("bgPageImage")));
+        when(properties.getCopyToProperties()).thenReturn(new ArrayList<>(List.of("newBgImage")));
+        when(properties.getPropertyValueReplacement()).thenReturn(replacement);
+        when(properties.getCreateNode()).thenReturn(new Property("newNode", "nt:unstructured"));
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doReturn("{\"bgPageImage\": \"image.jpg\", \"title\": \"Old Title\"}").when(slingClient).executeGet(anyString());
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        slingClient.commitPage(path);
+
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/testPage.json"), argThat(params ->
+                params.size() == 5
+                        && params.get(0).getName().equals("obsolete@Delete")
+                        && params.stream().anyMatch(p -> p.getName().equals("status") && p.getValue().equals("done"))
+                        && params.stream().anyMatch(p -> p.getName().equals("newBgImage") && p.getValue().equals("image.jpg"))
+                        && params.stream().anyMatch(p -> p.getName().equals("title") && p.getValue().equals("New Title"))
+                        && params.stream().anyMatch(p -> p.getName().equals("newNode/jcr:primaryType") && p.getValue().equals("nt:unstructured"))));
+    }
+
+    @Test
+    void testCommitPage_ReplacementMissingStillCommits() throws Exception {
+        Property replacement = new Property("title", new String[]{"Old", "New"});
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(properties.getPropertyValueReplacement()).thenReturn(replacement);
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doReturn("{}").when(slingClient).executeGet(anyString());
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        assertThrows(SlingClientException.class, () -> slingClient.commitPage(path), "Missing replacement value should be reported");
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/testPage.json"),
+                argThat(params -> params.size() == 1 && params.get(0).getName().equals("status")));
+    }
+
+    @Test
+    void testCommitPages_SingleRequestToAncestor() throws Exception {
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(queryUrl.getNodePath(anyString())).thenAnswer(inv -> inv.getArgument(0) + "/jcr:content");
+        when(queryUrl.buildNodeUrl("/content/site")).thenReturn("http://localhost:4502/content/site.json");
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        Set<String> failed = slingClient.commitPages(List.of("/content/site/a", "/content/site/b"));
+
+        assertTrue(failed.isEmpty(), "No page should fail");
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/site.json"), argThat(params ->
+                params.size() == 3
+                        && params.get(0).getName().equals("a/jcr:content/status")
+                        && params.get(1).getName().equals("b/jcr:content/status")
+                        && params.get(2).getName().equals(":http-equiv-accept")));
+    }
+
+    @Test
+    void testCommitPages_FailedPageFromResponse() throws Exception {
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(queryUrl.getNodePath(anyString())).thenAnswer(inv -> inv.getArgument(0));
+        when(queryUrl.buildNodeUrl("/content/site")).thenReturn("http://localhost:4502/content/site.json");
+        when(queryUrl.buildNodeUrl("/content/site/c")).thenReturn("http://localhost:4502/content/site/c.json");
+        doAnswer(inv -> {
+            setPrivateField("lastResponseText", "{\"status.code\":500,\"error\":{\"class\":\"javax.jcr.lock.LockException\",\"message\":\"Node /content/site/b is locked\"}}");
+            setPrivateField("failureCount", slingClient.getFailureCount() + 1);
+            return null;
+        }).when(slingClient).executePost(eq("http://localhost:4502/content/site.json"), anyList());
+        doNothing().when(slingClient).executePost(eq("http://localhost:4502/content/site/c.json"), anyList());
+
+        Set<String> failed = slingClient.commitPages(List.of("/content/site/b", "/content/site/c/d", "/content/site/c/e"));
+
+        assertEquals(Set.of("/content/site/b"), failed, "Only the page named in the error should fail");
+        assertEquals(1, slingClient.getFailureCount(), "Only the failed page should be counted");
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/site/c.json"), argThat(params ->
+                params.size() == 3 && params.get(0).getName().equals("d/status") && params.get(1).getName().equals("e/status")));
+    }
+
+    @Test
+    void testCommitPages_FallsBackToSingleRequests() throws Exception {
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(queryUrl.getNodePath(anyString())).thenAnswer(inv -> inv.getArgument(0));
+        when(queryUrl.buildNodeUrl("/content/site")).thenReturn("http://localhost:4502/content/site.json");
+        when(queryUrl.buildUrl(anyString(), eq(""))).thenAnswer(inv -> "http://localhost:4502" + inv.getArgument(0) + ".json");
+        doAnswer(inv -> {
+            setPrivateField("lastResponseText", "{\"status.code\":500,\"error\":{\"message\":\"Repository error\"}}");
+            setPrivateField("failureCount", slingClient.getFailureCount() + 1);
+            return null;
+        }).when(slingClient).executePost(eq("http://localhost:4502/content/site.json"), anyList());
+        doNothing().when(slingClient).executePost(eq("http://localhost:4502/content/site/a.json"), anyList());
+        doAnswer(inv -> {
+            setPrivateField("failureCount", slingClient.getFailureCount() + 1);
+            return null;
+        }).when(slingClient).executePost(eq("http://localhost:4502/content/site/b.json"), anyList());
+
+        Set<String> failed = slingClient.commitPages(List.of("/content/site/a", "/content/site/b"));
+
+        assertEquals(Set.of("/content/site/b"), failed, "Pages should be retried with their own requests");
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/site/a.json"), anyList());
+    }
+
+    @Test
+    void testUpdatePage_SkipsUnchangedValues() throws Exception {
+        ResultPage hit = new ResultPage();
+        hit.setJcrPath(path);
+        hit.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/testPage\", \"status\": \"done\", \"tags\": [\"a\", \"b\"], \"title\": \"Old\"}").getAsJsonObject());
+        slingClient.setHits(List.of(hit));
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(
+                new Property("status", "done"), new Property("tags", new String[]{"a", "b"}), new Property("title", "New"))));
+        when(queryUrl.buildUrl(eq(false), eq(path), anyList())).thenReturn("http://localhost:4502/content/testPage.json");
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        slingClient.updatePage(path);
+
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/testPage.json"),
+                argThat(params -> params.size() == 1 && params.get(0).getName().equals("title")));
+        assertEquals(2, slingClient.getSkippedCount(), "Unchanged properties should be skipped");
+    }
+
+    @Test
+    void testUpdatePage_AllUnchangedSkipsRequest() throws Exception {
+        ResultPage hit = new ResultPage();
+        hit.setJcrPath(path);
+        hit.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/testPage\", \"status\": \"done\"}").getAsJsonObject());
+        slingClient.setHits(List.of(hit));
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+
+        slingClient.updatePage(path);
+
+        verify(slingClient, never()).executePost(anyString(), anyList());
+    }
+
+    @Test
+    void testDeleteProperties_MissingPropertySkipsRequest() throws Exception {
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getDeleteProperties()).thenReturn(new ArrayList<>(List.of("title")));
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doAnswer(inv -> {
+            setPrivateField("lastStatusCode", 200);
+            return "{\"jcr:primaryType\": \"nt:unstructured\"}";
+        }).when(slingClient).executeGet("http://localhost:4502/content/testPage.json");
+
+        slingClient.deleteProperties(path);
+
+        verify(slingClient, never()).executePost(anyString(), anyList());
+        assertEquals(1, slingClient.getSkippedCount());
+    }
+
+    @Test
+    void testDeleteProperties_ReadErrorStillDeletes() throws Exception {
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getDeleteProperties()).thenReturn(new ArrayList<>(List.of("title")));
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doAnswer(inv -> {
+            setPrivateField("lastStatusCode", 500);
+            return "Internal Server Error";
+        }).when(slingClient).executeGet("http://localhost:4502/content/testPage.json");
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        slingClient.deleteProperties(path);
+
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/testPage.json"),
+                argThat(params -> params.size() == 1 && params.get(0).getName().equals("title@Delete")));
+        assertEquals(0, slingClient.getSkippedCount(), "A property that cannot be read should not be skipped");
+    }
+
+    @Test
+    void testReplacePropertyValue_NoOccurrenceSkipsRequest() throws Exception {
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getPropertyValueReplacement()).thenReturn(new Property("title", new String[]{"Old", "New"}));
+        when(queryUrl.buildUrl(path, "")).thenReturn("http://localhost:4502/content/testPage.json");
+        doReturn("{\"title\": \"New Title\"}").when(slingClient).executeGet(anyString());
+
+        slingClient.replacePropertyValue(path);
+
+        verify(slingClient, never()).executePost(anyString(), anyList());
+        assertEquals(1, slingClient.getSkippedCount());
+    }
+
+    @Test
+    void testCommitPages_CountsUnchangedPages() throws Exception {
+        ResultPage unchanged = new ResultPage();
+        unchanged.setJcrPath("/content/site/a");
+        unchanged.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/site/a\", \"status\": \"done\"}").getAsJsonObject());
+        ResultPage changed = new ResultPage();
+        changed.setJcrPath("/content/site/b");
+        changed.setProperties(JsonParser.parseString("{\"jcr:path\": \"/content/site/b\", \"status\": \"new\"}").getAsJsonObject());
+        slingClient.setHits(List.of(unchanged, changed));
+        when(properties.isSkipUnchanged()).thenReturn(true);
+        when(properties.getUpdateProperties()).thenReturn(new ArrayList<>(List.of(new Property("status", "done"))));
+        when(queryUrl.getNodePath("/content/site/b")).thenReturn("/content/site/b");
+        when(queryUrl.buildUrl("/content/site/b", "")).thenReturn("http://localhost:4502/content/site/b.json");
+        doNothing().when(slingClient).executePost(anyString(), anyList());
+
+        Set<String> failed = slingClient.commitPages(List.of("/content/site/a", "/content/site/b"));
+
+        assertTrue(failed.isEmpty());
+        assertEquals(1, slingClient.getUnchangedCount(), "Page with the planned value should be unchanged");
+        verify(slingClient, times(1)).executePost(eq("http://localhost:4502/content/site/b.json"), anyList());
+    }
+
     @Test
     void testReplacePropertyValue_MissingReplacement_Throws() {
         when(properties.getPropertyValueReplacement()).thenReturn(null);
@@ -428,4 +703,119 @@ class SlingClientTest {
         }
     }
 
+    private static CloseableHttpResponse response(int statusCode) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        lenient().when(response.getEntity()).thenReturn(new StringEntity("{}", "UTF-8"));
+        return response;
+    }
+
+    private SlingClient retryingClient(CloseableHttpClient httpClient) {
+        HttpClientPool pool = mock(HttpClientPool.class);
+        when(pool.getHttpClient()).thenReturn(httpClient);
+        when(pool.getHttpHost()).thenReturn(new HttpHost("localhost", 4502));
+        when(pool.createClientContext()).thenAnswer(invocation -> HttpClientContext.create());
+        when(pool.getRetryPolicy()).thenReturn(new RetryPolicy(2, 1, 1));
+        when(pool.getTransport()).thenReturn(new ApacheHttpTransport(pool));
+        return new SlingClient(conn, properties, queryUrl, pool);
+    }
+
+    @Test
+    void testExecutePost_RetriesTransientStatus() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse unavailable = response(503);
+        CloseableHttpResponse ok = response(200);
+        when(httpClient.execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class))).thenReturn(unavailable, ok);
+        SlingClient client = retryingClient(httpClient);
+
+        client.executePost("http://localhost:4502" + path, Collections.singletonList(new BasicNameValuePair("prop1", "value1")));
+
+        verify(httpClient, times(2)).execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class));
+        verify(unavailable).close();
+        assertEquals(200, client.getLastStatusCode(), "Last attempt should be reported");
+        assertEquals(0, client.getFailureCount(), "Retried request should not count as failed");
+    }
+
+    @Test
+    void testExecutePost_CopyNotRetriedAfterGatewayError() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse badGateway = response(502);
+        when(httpClient.execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class))).thenReturn(badGateway);
+        SlingClient client = retryingClient(httpClient);
+
+        client.executePost("http://localhost:4502" + path, Arrays.asList(
+                new BasicNameValuePair(":operation", "copy"), new BasicNameValuePair(":dest", path + "/copy")));
+
+        verify(httpClient, times(1)).execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class));
+        assertEquals(1, client.getFailureCount(), "Copy may have been applied, so it should fail instead of being sent again");
+    }
+
+    @Test
+    void testExecuteGet_RetriesTimeoutUntilExhausted() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        when(httpClient.execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class)))
+                .thenThrow(new SocketTimeoutException("Read timed out"));
+        SlingClient client = retryingClient(httpClient);
+
+        assertThrows(SocketTimeoutException.class, () -> client.executeGet("http://localhost:4502" + path + ".json"));
+        verify(httpClient, times(3)).execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class));
+    }
+
+    @Test
+    void testExecuteGet_LogsInAgainAfterUnauthorized() throws Exception {
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        CloseableHttpResponse unauthorized = response(401);
+        CloseableHttpResponse ok = response(200);
+        when(httpClient.execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class))).thenReturn(unauthorized, ok);
+        HttpClientPool pool = mock(HttpClientPool.class);
+        when(pool.getHttpClient()).thenReturn(httpClient);
+        when(pool.getHttpHost()).thenReturn(new HttpHost("localhost", 4502));
+        when(pool.createClientContext()).thenAnswer(invocation -> HttpClientContext.create());
+        when(pool.getTransport()).thenReturn(new ApacheHttpTransport(pool));
+        when(pool.isTokenAuth()).thenReturn(true);
+        when(pool.getLoginGeneration()).thenReturn(1L);
+        SlingClient client = new SlingClient(conn, properties, queryUrl, pool);
+
+        assertEquals("{}", client.executeGet("http://localhost:4502" + path + ".json"));
+
+        verify(pool).refreshLogin(1L);
+        assertEquals(200, client.getLastStatusCode(), "Request should be sent again with the new token");
+    }
+
+    private static HttpTransport.Response transportResponse(int statusCode, String body) throws IOException {
+        HttpTransport.Response response = mock(HttpTransport.Response.class);
+        when(response.getStatusCode()).thenReturn(statusCode);
+        lenient().when(response.getBody()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return response;
+    }
+
+    @Test
+    void testGetChildPaths_TooManyChildrenListedWithQuery() throws Exception {
+        String folder = "/content/dam/huge";
+        HttpTransport transport = mock(HttpTransport.class);
+        HttpClientPool pool = mock(HttpClientPool.class);
+        when(pool.getTransport()).thenReturn(transport);
+        when(queryUrl.buildNodeUrl(folder, 1)).thenReturn("http://localhost:4502" + folder + ".1.json");
+        when(queryUrl.buildNodeUrl(folder, 0)).thenReturn("http://localhost:4502" + folder + ".json");
+        when(queryUrl.buildChildrenUrl(folder, 0)).thenReturn("http://localhost:4502/children?offset=0");
+        when(queryUrl.buildChildrenUrl(folder, 2)).thenReturn("http://localhost:4502/children?offset=2");
+        HttpTransport.Response multipleChoices = transportResponse(300, "[\"" + folder + ".0.json\"]");
+        HttpTransport.Response node = transportResponse(200, "{\"jcr:primaryType\":\"sling:Folder\"}");
+        HttpTransport.Response first = transportResponse(200, "{\"success\":true,\"results\":2,\"total\":3,\"hits\":["
+                + "{\"jcr:path\":\"" + folder + "/a\",\"jcr:primaryType\":\"dam:Asset\"},{\"jcr:path\":\"" + folder + "/b\",\"jcr:primaryType\":\"dam:Asset\"}]}");
+        HttpTransport.Response second = transportResponse(200, "{\"success\":true,\"results\":1,\"total\":3,\"hits\":["
+                + "{\"jcr:path\":\"" + folder + "/c\",\"jcr:primaryType\":\"dam:Asset\"}]}");
+        when(transport.send(HttpTransport.GET, "http://localhost:4502" + folder + ".1.json", null)).thenReturn(multipleChoices);
+        when(transport.send(HttpTransport.GET, "http://localhost:4502" + folder + ".json", null)).thenReturn(node);
+        when(transport.send(HttpTransport.GET, "http://localhost:4502/children?offset=0", null)).thenReturn(first);
+        when(transport.send(HttpTransport.GET, "http://localhost:4502/children?offset=2", null)).thenReturn(second);
+        SlingClient client = new SlingClient(conn, properties, queryUrl, pool);
+
+        assertEquals(List.of(folder + "/a", folder + "/b", folder + "/c"), client.getChildPaths(folder),
+                "A folder that Sling refuses to render should be listed with a paged query");
+        JsonObject listed = client.getNode(folder, 1);
+        assertEquals("dam:Asset", listed.getAsJsonObject("c").get("jcr:primaryType").getAsString(), "Children should keep their properties");
+        assertFalse(listed.getAsJsonObject("c").has("jcr:path"));
+    }
+
 }
@@ -0,0 +1,161 @@
+package co.acu.pagetool.crx;
+
+import co.acu.pagetool.OperationProperties;
+import co.acu.pagetool.PageToolApp;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TreeCrawlerTest {
+
+    @Mock private SlingClient slingClient;
+    @Mock private SlingClient worker;
+
+    private final String path = "/content/site";
+    private final NodeFilter doneContent = new NodeFilter(List.of(new Property("status", "done")), null, true, false, null);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        PageToolApp.verbose = false;
+        when(slingClient.newWorker()).thenReturn(worker);
+    }
+
+    private static JsonObject node(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private void stubTree() throws IOException {
+        when(worker.getNode(path, 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:Page\","
+                + "\"jcr:content\":{\"jcr:primaryType\":\"cq:PageContent\",\"status\":\"done\"},"
+                + "\"en\":{\"jcr:primaryType\":\"cq:Page\"},\"assets\":{\"jcr:primaryType\":\"sling:Folder\"}}"));
+        when(worker.getNode(path + "/en", 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:Page\","
+                + "\"jcr:content\":{\"jcr:primaryType\":\"cq:PageContent\",\"status\":\"draft\"},"
+                + "\"about\":{\"jcr:primaryType\":\"cq:Page\"}}"));
+        lenient().when(worker.getNode(path + "/en/about", 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:Page\","
+                + "\"jcr:content\":{\"jcr:primaryType\":\"cq:PageContent\",\"status\":\"done\"}}"));
+    }
+
+    private static List<String> drain(TreeCrawler crawler) {
+        List<String> paths = new ArrayList<>();
+        while (crawler.hasNext()) {
+            paths.add(crawler.next().getJcrPath());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Test
+    void testCrawl_MatchesContentNodesOfPages() throws Exception {
+        stubTree();
+
+        try (TreeCrawler crawler = new TreeCrawler(slingClient, path, doneContent, 0, 0, Set.of("cq:Page"), 2)) {
+            assertEquals(List.of(path + "/en/about/jcr:content", path + "/jcr:content"), drain(crawler),
+                    "Only content nodes with the matching value should be returned");
+            assertEquals(3, crawler.getVisitedCount());
+        }
+        verify(worker, never()).getNode(eq(path + "/assets"), anyInt());
+    }
+
+    @Test
+    void testCrawl_StopsAtMaxDepth() throws Exception {
+        stubTree();
+
+        try (TreeCrawler crawler = new TreeCrawler(slingClient, path, doneContent, 0, 1, Set.of("cq:Page"), 1)) {
+            assertEquals(List.of(path + "/jcr:content"), drain(crawler));
+        }
+        verify(worker, never()).getNode(eq(path + "/en/about"), anyInt());
+    }
+
+    @Test
+    void testCrawl_HitsIncludeTheNode() throws Exception {
+        NodeFilter hero = new NodeFilter(null, List.of("hero"), false, false, null);
+        when(worker.getNode(path, 2)).thenReturn(node("{\"hero\":{\"title\":\"Welcome\"}}"));
+        when(worker.getNode(path + "/hero", 2)).thenReturn(node("{\"title\":\"Welcome\"}"));
+
+        try (TreeCrawler crawler = new TreeCrawler(slingClient, path, hero, 2, 0, Collections.emptySet(), 1)) {
+            assertTrue(crawler.hasNext());
+            assertEquals("Welcome", crawler.next().getProperties().get("title").getAsString(), "Hits should carry the node for reading properties");
+            assertFalse(crawler.hasNext());
+        }
+    }
+
+    @Test
+    void testCrawl_ReadsNestedContentPropertiesFromTheContentNode() throws Exception {
+        NodeFilter nestedTitle = new NodeFilter(List.of(new Property("par/title", "Welcome")), null, true, false, null);
+        when(worker.getNode(path, 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:Page\","
+                + "\"jcr:content\":{\"jcr:primaryType\":\"cq:PageContent\"},\"en\":{\"jcr:primaryType\":\"cq:Page\"}}"));
+        when(worker.getNode(path + "/jcr:content", 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:PageContent\",\"par\":{\"title\":\"Welcome\"}}"));
+        when(worker.getNode(path + "/en", 1)).thenReturn(node("{\"jcr:primaryType\":\"cq:Page\"}"));
+
+        try (TreeCrawler crawler = new TreeCrawler(slingClient, path, nestedTitle, 0, 0, Set.of("cq:Page"), 1)) {
+            assertEquals(List.of(path + "/jcr:content"), drain(crawler), "The content node should be read with its nested properties");
+        }
+        verify(worker, never()).getNode(anyString(), eq(2));
+        verify(worker, never()).getNode(eq(path + "/en/jcr:content"), anyInt());
+    }
+
+    @Test
+    void testCrawl_FolderWithTooManyChildrenIsListedWithQuery() throws Exception {
+        reset(slingClient);
+        String base = "http://localhost:4502";
+        String dam = "/content/dam";
+        Map<String, String> responses = Map.of(
+                base + dam + ".json", "{\"jcr:primaryType\":\"sling:Folder\"}",
+                base + "/bin/querybuilder.json?path=" + dam + "&path.flat=true&p.limit=1000&p.offset=0&orderby=path&p.hits=full&p.nodedepth=0",
+                "{\"success\":true,\"results\":2,\"total\":2,\"hits\":[{\"jcr:path\":\"" + dam + "/a\",\"jcr:primaryType\":\"dam:Asset\"},"
+                        + "{\"jcr:path\":\"" + dam + "/b\",\"jcr:primaryType\":\"dam:Asset\"}]}",
+                base + dam + "/a.1.json", "{\"jcr:primaryType\":\"dam:Asset\"}",
+                base + dam + "/b.1.json", "{\"jcr:primaryType\":\"dam:Asset\"}");
+        HttpTransport transport = mock(HttpTransport.class);
+        when(transport.send(eq(HttpTransport.GET), anyString(), isNull())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(1);
+            HttpTransport.Response response = mock(HttpTransport.Response.class);
+            // Sling refuses to render the children of the folder
+            String body = responses.getOrDefault(url, "[]");
+            when(response.getStatusCode()).thenReturn(responses.containsKey(url) ? 200 : 300);
+            when(response.getBody()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+            return response;
+        });
+        HttpClientPool pool = mock(HttpClientPool.class);
+        when(pool.getTransport()).thenReturn(transport);
+        CrxConnection conn = new CrxConnection("admin", "secret", "localhost", "4502", false);
+        SlingClient client = new SlingClient(conn, mock(OperationProperties.class), new QueryUrl(conn), pool);
+        NodeFilter named = new NodeFilter(null, List.of("b"), false, false, null);
+
+        try (TreeCrawler crawler = new TreeCrawler(client, dam, named, 0, 0, Collections.emptySet(), 1)) {
+            assertEquals(List.of(dam + "/b"), drain(crawler), "The crawl should continue below a folder that Sling refuses to render");
+        }
+    }
+
+    @Test
+    void testCrawl_FailedNodeThrows() throws Exception {
+        when(worker.getNode(path, 1)).thenThrow(new IOException("Failed to access URL (status code: 500)"));
+
+        try (TreeCrawler crawler = new TreeCrawler(slingClient, path, doneContent, 0, 0, Set.of("cq:Page"), 1)) {
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, crawler::hasNext, "A failed request should not end the crawl silently");
+            assertEquals("Failed to access URL (status code: 500)", e.getCause().getMessage());
+        }
+    }
+
+}
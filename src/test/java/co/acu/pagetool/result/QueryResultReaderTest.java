@@ -0,0 +1,86 @@
+package co.acu.pagetool.result;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultReaderTest {
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRead_FieldsAndHits() throws Exception {
+        String json = "{\"success\":true,\"results\":2,\"total\":5,\"more\":true,\"offset\":0,"
+                + "\"hits\":[{\"jcr:path\":\"/content/a\",\"jcr:title\":\"A\"},{\"jcr:path\":\"/content/b\"}]}";
+        try (QueryResultReader reader = new QueryResultReader(stream(json), null)) {
+            assertTrue(reader.getResultSet().isSuccess(), "Success should be read before the hits");
+            assertEquals(2, reader.getResultSet().getResults(), "Results should be read before the hits");
+            assertEquals(5, reader.getResultSet().getTotal(), "Total should be read before the hits");
+            assertEquals("/content/a", reader.next().getJcrPath());
+            assertEquals("/content/b", reader.next().getJcrPath());
+            assertFalse(reader.hasNext(), "There should be no more hits");
+            assertEquals(2, reader.getCount(), "Both hits should be counted");
+        }
+    }
+
+    @Test
+    void testRead_FieldsAfterHits() throws Exception {
+        String json = "{\"hits\":[{\"jcr:path\":\"/content/a\"}],\"total\":1}";
+        try (QueryResultReader reader = new QueryResultReader(stream(json), null)) {
+            assertEquals("/content/a", reader.next().getJcrPath());
+            assertFalse(reader.hasNext(), "There should be no more hits");
+            assertEquals(1, reader.getResultSet().getTotal(), "Fields after the hits should be read at the end");
+        }
+    }
+
+    @Test
+    void testRead_SelectedProperties() throws Exception {
+        String json = "{\"hits\":[{\"jcr:path\":\"/content/a\",\"tags\":[\"x\",\"y\"],\"par\":{\"prop\":\"v\"}},{\"jcr:path\":\"/content/b\"}]}";
+        try (QueryResultReader reader = new QueryResultReader(stream(json), null)) {
+            ResultPage first = reader.next();
+            assertEquals(2, first.getProperties().getAsJsonArray("tags").size(), "Selected properties should be kept");
+            assertEquals("v", first.getProperties().getAsJsonObject("par").get("prop").getAsString(), "Selected child nodes should be kept");
+            assertNull(reader.next().getProperties(), "A hit with only its path should have no properties");
+        }
+    }
+
+    @Test
+    void testRead_NoHits() throws Exception {
+        try (QueryResultReader reader = new QueryResultReader(stream("{\"success\":true,\"results\":0,\"total\":0,\"hits\":[]}"), null)) {
+            assertFalse(reader.hasNext(), "Empty hits should not be iterated");
+        }
+    }
+
+    @Test
+    void testRead_InvalidResponse() {
+        assertThrows(IOException.class, () -> new QueryResultReader(stream("<html>Error</html>"), null),
+                "A response that is not a JSON object should be rejected");
+    }
+
+    @Test
+    void testRead_TruncatedResponse() throws Exception {
+        try (QueryResultReader reader = new QueryResultReader(stream("{\"results\":2,\"hits\":[{\"jcr:path\":\"/content/a\"},"), null)) {
+            assertEquals("/content/a", reader.next().getJcrPath());
+            assertThrows(UncheckedIOException.class, reader::hasNext, "A truncated response should fail while reading");
+        }
+    }
+
+    @Test
+    void testClose_ClosesResource() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Closeable resource = () -> closed.set(true);
+        new QueryResultReader(stream("{\"hits\":[]}"), resource).close();
+        assertTrue(closed.get(), "The underlying resource should be closed with the reader");
+    }
+
+}
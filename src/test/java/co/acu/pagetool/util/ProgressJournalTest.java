@@ -0,0 +1,93 @@
+package co.acu.pagetool.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRecord_AppendsOutcomes() throws IOException {
+        Path file = dir.resolve("journal.log");
+        try (ProgressJournal journal = new ProgressJournal(file, false)) {
+            journal.record("/content/a", true);
+            journal.record("/content/b", false);
+        }
+
+        assertEquals(Arrays.asList("S\t/content/a", "F\t/content/b"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRecord_SyncsAfterBatch() throws IOException {
+        Path file = dir.resolve("journal.log");
+        try (ProgressJournal journal = new ProgressJournal(file, false, 2, Long.MAX_VALUE)) {
+            journal.record("/content/a", true);
+            assertEquals(0, Files.size(file), "First record should still be buffered");
+            journal.record("/content/b", true);
+            assertEquals(2, Files.readAllLines(file, StandardCharsets.UTF_8).size(), "Batch should be written");
+        }
+    }
+
+    @Test
+    void testResume_LoadsSucceededPages() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Files.writeString(file, "S\t/content/a\nF\t/content/b\nS\t/content/c\nF\t/content/c\nS\t/content/d", StandardCharsets.UTF_8);
+
+        try (ProgressJournal journal = new ProgressJournal(file, true)) {
+            assertTrue(journal.isCompleted("/content/a"));
+            assertFalse(journal.isCompleted("/content/b"), "Failed page should be retried");
+            assertFalse(journal.isCompleted("/content/c"), "Last outcome should count");
+            assertFalse(journal.isCompleted("/content/d"), "Truncated last line should be ignored");
+            assertEquals(1, journal.getCompletedCount());
+            journal.record("/content/b", true);
+        }
+
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).endsWith("S\t/content/b\n"), "Resumed run should append");
+    }
+
+    @Test
+    void testResume_DropsLineCutOffInMultibyteCharacter() throws IOException {
+        Path file = dir.resolve("journal.log");
+        byte[] complete = "S\t/content/caf\u00e9\n".getBytes(StandardCharsets.UTF_8);
+        byte[] partial = "S\t/content/\u00fcber".getBytes(StandardCharsets.UTF_8);
+        byte[] content = Arrays.copyOf(complete, complete.length + 12);
+        // Cut off after the first byte of the two-byte character
+        System.arraycopy(partial, 0, content, complete.length, 12);
+        Files.write(file, content);
+
+        try (ProgressJournal journal = new ProgressJournal(file, true)) {
+            assertTrue(journal.isCompleted("/content/caf\u00e9"));
+            assertEquals(1, journal.getCompletedCount());
+            journal.record("/content/b", true);
+        }
+
+        assertEquals(Arrays.asList("S\t/content/caf\u00e9", "S\t/content/b"), Files.readAllLines(file, StandardCharsets.UTF_8),
+                "The partial line should be replaced by the new record");
+        try (ProgressJournal journal = new ProgressJournal(file, true)) {
+            assertTrue(journal.isCompleted("/content/b"), "The new record should be recognized by the next resume");
+        }
+    }
+
+    @Test
+    void testNewJournal_TruncatesExistingFile() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Files.writeString(file, "S\t/content/a\n", StandardCharsets.UTF_8);
+
+        try (ProgressJournal journal = new ProgressJournal(file, false)) {
+            assertFalse(journal.isCompleted("/content/a"));
+        }
+
+        assertEquals(0, Files.size(file));
+    }
+
+}